@@ -10,8 +10,9 @@ public interface Alert {
 
     /**
      * Sets the current alert status.
-     * Expected to be invoked from the Event Dispatch Thread,
-     * so should not take time.
+     * Usually invoked from the Event Dispatch Thread, though it may be
+     * invoked from other threads; calls from a given CountdownModel
+     * are not made concurrently.  In any case it should not take time.
      * In general, multiple consecutive calls with the same value
      * should have no visible effect; only changes to status
      * should trigger an action.
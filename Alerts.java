@@ -2,9 +2,9 @@ package uk.ac.bristol.star.deadman;
 
 import java.io.IOException;
 import java.net.URL;
-import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -26,6 +26,8 @@ public class Alerts {
 
     /**
      * Returns an alert that sounds audible sirens.
+     * The danger sound is decoded before this method returns,
+     * so that a missing or unreadable alarm sound is reported here.
      *
      * @return  audio alert
      */
@@ -38,7 +40,12 @@ public class Alerts {
                                             2000 ) );
         soundMap.put( Status.DANGER,
                       new SoundAlert.Sound( getResource( DANGER_WAV ) ) );
-        return new SoundAlert( soundMap );
+        SoundAlert alert = new SoundAlert( soundMap );
+
+        /* Make sure the alarm sound itself is usable now, rather than
+         * finding out when it is needed. */
+        alert.preload( Status.DANGER );
+        return alert;
     }
 
     /**
@@ -61,45 +68,45 @@ public class Alerts {
     /**
      * Returns an alert that sends emails to indicated recipients
      * when status transitions to DANGER or back again.
+     * Every transition is sent immediately as a separate message.
      *
      * @param  mailer  mailer instance
      * @return   email alert
      */
-    public static Alert createEmailAlert( final Mailer mailer ) {
-        return new Alert() {
-            Status currentStatus_;
-            public void setStatus( Status status ) {
-                if ( status != currentStatus_ ) {
-                    String atTime = " at " + new Date() + ".\n";
-                    if ( status == Status.DANGER ) {
-                        send( "ALARM",
-                              "Deadman danger status triggered" + atTime );
-                    }
-                    else if ( status == null &&
-                              currentStatus_ == Status.DANGER ) {
-                        send( "Reset",
-                              "Deadman status reset to safe" + atTime );
-                    }
-                    currentStatus_ = status;
-                }
-            }
+    public static Alert createEmailAlert( Mailer mailer ) {
+        return createEmailAlert( mailer, 0, 0, 0 );
+    }
 
-            /**
-             * Sends an email message.
-             *
-             * @param  topic   short summary of message
-             *                 (included in Subject line)
-             * @param  body    content of email
-             */
-            private void send( String topic, String body ) {
-                mailer.scheduleSendMessage( topic, body );
-            }
-        };
+    /**
+     * Returns an alert that sends emails to indicated recipients
+     * when status transitions to DANGER or back again,
+     * coalescing rapid transitions into digest messages and
+     * limiting the message rate per recipient.
+     * The first ALARM is always sent immediately.
+     * See {@link EmailAlert} for details.
+     *
+     * @param  mailer  mailer instance
+     * @param  windowMillis  coalescing window in milliseconds,
+     *                       or zero for none
+     * @param  burst   maximum messages per recipient in quick succession
+     * @param  perHour  maximum messages per recipient per hour,
+     *                  or zero for no limit
+     * @return   email alert
+     */
+    public static EmailAlert createEmailAlert( Mailer mailer,
+                                               long windowMillis, int burst,
+                                               int perHour ) {
+        return new EmailAlert( mailer, windowMillis, burst, perHour,
+                               TimingWheel.getBackgroundInstance() );
     }
 
     /**
      * Returns an alert instance which multiplexes status updates
      * to an array of child alerts.
+     * An exception thrown by one child is logged,
+     * and does not prevent delivery to the others.
+     * Children that may be slow should be wrapped using
+     * {@link #createQueuedAlert createQueuedAlert}.
      *
      * @param  alerts  array of child alerts
      */
@@ -107,12 +114,44 @@ public class Alerts {
         return new Alert() {
             public void setStatus( Status status ) {
                 for ( Alert a : alerts ) {
-                    a.setStatus( status );
+                    setStatusSafely( a, status );
                 }
             }
         };
     }
 
+    /**
+     * Returns an alert that delivers status changes to a given alert
+     * asynchronously, on its own queue and worker thread,
+     * with default capacity and timeout.
+     *
+     * @param  name  channel name
+     * @param  alert  alert to wrap
+     * @return   queued alert
+     * @see   QueuedAlert
+     */
+    public static QueuedAlert createQueuedAlert( String name, Alert alert ) {
+        return new QueuedAlert( name, alert, QueuedAlert.DEFAULT_CAPACITY,
+                                QueuedAlert.DEFAULT_TIMEOUT_MILLIS );
+    }
+
+    /**
+     * Sets the status of an alert, logging rather than throwing
+     * any RuntimeException.
+     *
+     * @param  alert  alert
+     * @param  status  new status
+     */
+    public static void setStatusSafely( Alert alert, Status status ) {
+        try {
+            alert.setStatus( status );
+        }
+        catch ( RuntimeException e ) {
+            logger_.log( Level.WARNING, "Alert failed for status " + status,
+                         e );
+        }
+    }
+
     /**
      * Returns a resource URL for a resource stored in the same place
      * as this class.
@@ -0,0 +1,278 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.ErrorManager;
+import java.util.logging.Formatter;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Log handler that formats and writes records on its own thread.
+ *
+ * <p>Publishing a record just stores it in a preallocated ring buffer,
+ * so that logging from time-critical threads such as the
+ * Event Dispatch Thread does not wait for formatting or disk I/O.
+ * A single writer thread takes all the records waiting in the buffer
+ * at once, formats them, writes them, and flushes the output
+ * once per batch.
+ *
+ * <p>If the buffer is full, records below {@link Level#WARNING}
+ * are dropped, and the number dropped is reported in the log
+ * once there is room.  WARNING and SEVERE records are never dropped;
+ * their publishers wait for space instead.
+ *
+ * <p>Records are formatted after they are published, so any mutable
+ * message parameters are formatted in the state they have at that time.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class AsyncLogHandler extends Handler {
+
+    private final LogRecord[] ring_;
+    private final int mask_;
+    private final Writer out_;
+    private final Thread writer_;
+    private long head_;
+    private long tail_;
+    private long written_;
+    private long nDropped_;
+    private long nUnreported_;
+    private boolean isClosed_;
+    private boolean isFinished_;
+
+    /** Default number of records the buffer can hold. */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * Constructor.
+     *
+     * @param  out  destination stream, closed when this handler is closed
+     * @param  formatter  formatter for log records
+     * @param  capacity  minimum number of records the buffer can hold;
+     *                   rounded up to a power of two
+     */
+    public AsyncLogHandler( OutputStream out, Formatter formatter,
+                            int capacity ) {
+        int size = 2;
+        while ( size < capacity ) {
+            size <<= 1;
+        }
+        ring_ = new LogRecord[ size ];
+        mask_ = size - 1;
+        out_ = new BufferedWriter( new OutputStreamWriter( out ) );
+        setFormatter( formatter );
+        writer_ = new Thread( "Log writer" ) {
+            public void run() {
+                try {
+                    runWriter();
+                }
+                finally {
+                    synchronized ( ring_ ) {
+                        isFinished_ = true;
+                        ring_.notifyAll();
+                    }
+                }
+            }
+        };
+        writer_.setDaemon( true );
+        writer_.start();
+    }
+
+    /**
+     * Queues a record for writing.
+     * This returns without waiting unless the buffer is full
+     * and the record is at WARNING level or above.
+     *
+     * @param  record  log record
+     */
+    @Override
+    public void publish( LogRecord record ) {
+        if ( ! isLoggable( record ) ) {
+            return;
+        }
+        boolean isImportant =
+            record.getLevel().intValue() >= Level.WARNING.intValue();
+        boolean isInterrupted = false;
+        synchronized ( ring_ ) {
+            while ( tail_ - head_ >= ring_.length && ! isClosed_ ) {
+                if ( ! isImportant ) {
+                    nDropped_++;
+                    nUnreported_++;
+                    return;
+                }
+                try {
+                    ring_.wait();
+                }
+                catch ( InterruptedException e ) {
+                    isInterrupted = true;
+                }
+            }
+            if ( ! isClosed_ ) {
+                ring_[ (int) tail_ & mask_ ] = record;
+                tail_++;
+                if ( tail_ - head_ == 1 ) {
+                    ring_.notifyAll();
+                }
+            }
+        }
+        if ( isInterrupted ) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until all the records published so far have been written.
+     */
+    @Override
+    public void flush() {
+        synchronized ( ring_ ) {
+            long target = tail_;
+            while ( written_ < target && ! isFinished_ ) {
+                try {
+                    ring_.wait();
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes any records still waiting, stops the writer thread,
+     * and closes the output stream.
+     * Records published after this call are discarded.
+     */
+    @Override
+    public void close() {
+        synchronized ( ring_ ) {
+            if ( isClosed_ ) {
+                return;
+            }
+            isClosed_ = true;
+            ring_.notifyAll();
+        }
+        try {
+            writer_.join();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            out_.close();
+        }
+        catch ( IOException e ) {
+            reportError( null, e, ErrorManager.CLOSE_FAILURE );
+        }
+    }
+
+    /**
+     * Returns the total number of records dropped because the buffer
+     * was full.
+     *
+     * @return  dropped record count
+     */
+    public long getDroppedCount() {
+        synchronized ( ring_ ) {
+            return nDropped_;
+        }
+    }
+
+    /**
+     * Takes batches of records from the buffer and writes them,
+     * until this handler is closed and the buffer is empty.
+     * Called only from the writer thread.
+     */
+    private void runWriter() {
+        LogRecord[] batch = new LogRecord[ ring_.length ];
+        while ( true ) {
+            int n;
+            long nUnreported;
+            long done;
+            synchronized ( ring_ ) {
+                while ( head_ == tail_ && nUnreported_ == 0 && ! isClosed_ ) {
+                    try {
+                        ring_.wait();
+                    }
+                    catch ( InterruptedException e ) {
+                        return;
+                    }
+                }
+                n = (int) ( tail_ - head_ );
+                if ( n == 0 && nUnreported_ == 0 ) {
+                    return;
+                }
+                for ( int i = 0; i < n; i++ ) {
+                    int is = (int) ( head_ + i ) & mask_;
+                    batch[ i ] = ring_[ is ];
+                    ring_[ is ] = null;
+                }
+                head_ += n;
+                done = head_;
+                nUnreported = nUnreported_;
+                nUnreported_ = 0;
+                ring_.notifyAll();
+            }
+            writeBatch( batch, n, nUnreported );
+            synchronized ( ring_ ) {
+                written_ = done;
+                ring_.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Formats and writes a batch of records, followed by a report of
+     * any records dropped since the last batch, and flushes the output.
+     * Called only from the writer thread.
+     *
+     * @param  batch  array holding records, cleared on exit
+     * @param  n   number of records in batch
+     * @param  nUnreported  number of records dropped and not yet reported
+     */
+    private void writeBatch( LogRecord[] batch, int n, long nUnreported ) {
+        Formatter formatter = getFormatter();
+        try {
+            for ( int i = 0; i < n; i++ ) {
+                writeRecord( formatter, batch[ i ] );
+                batch[ i ] = null;
+            }
+            if ( nUnreported > 0 ) {
+                writeRecord( formatter,
+                             new LogRecord( Level.WARNING,
+                                            "Log buffer full: " + nUnreported
+                                          + " records dropped" ) );
+            }
+            out_.flush();
+        }
+        catch ( IOException e ) {
+            reportError( null, e, ErrorManager.WRITE_FAILURE );
+        }
+    }
+
+    /**
+     * Formats and writes a single record.
+     *
+     * @param  formatter  formatter
+     * @param  record  record
+     */
+    private void writeRecord( Formatter formatter, LogRecord record )
+            throws IOException {
+        String txt;
+        try {
+            txt = formatter.format( record );
+        }
+        catch ( RuntimeException e ) {
+            reportError( null, e, ErrorManager.FORMAT_FAILURE );
+            return;
+        }
+        out_.write( txt );
+    }
+}
@@ -0,0 +1,299 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Cache of decoded audio data.
+ * Each audio resource is read and decoded into PCM in the
+ * {@link AudioEngine#FORMAT engine format} at most once,
+ * the first time it is requested, and the resulting buffer is
+ * shared between all users.
+ *
+ * <p>Resources are read in bulk using NIO channels;
+ * local files are read in a single channel operation.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class AudioCache {
+
+    private final ConcurrentMap<String,Entry> entryMap_;
+
+    private static final AudioCache instance_ = new AudioCache();
+    private static final int BUFSIZ = 64 * 1024;
+    private static final Logger logger_ =
+        Logger.getLogger( AudioCache.class.getName() );
+
+    /**
+     * Constructs a new empty cache.
+     * Usually the {@link #getSharedInstance shared instance} should be used.
+     */
+    public AudioCache() {
+        entryMap_ = new ConcurrentHashMap<String,Entry>();
+    }
+
+    /**
+     * Returns the shared instance of this class.
+     *
+     * @return  shared cache
+     */
+    public static AudioCache getSharedInstance() {
+        return instance_;
+    }
+
+    /**
+     * Returns the decoded audio data for a resource, loading it if
+     * it has not been loaded before.  If loading fails, the failure
+     * is not cached, so a later call will try again.
+     *
+     * @param  url  location of audio file
+     * @return   PCM data in AudioEngine.FORMAT;
+     *           this array is shared and must not be modified
+     */
+    public byte[] getPcm( URL url ) throws IOException {
+
+        /* Key on the string form, since URL.equals may do DNS lookups. */
+        String key = url.toExternalForm();
+        Entry entry = entryMap_.get( key );
+        if ( entry == null ) {
+            Entry entry1 = new Entry( url );
+            entry = entryMap_.putIfAbsent( key, entry1 );
+            if ( entry == null ) {
+                entry = entry1;
+            }
+        }
+        return entry.getPcm();
+    }
+
+    /**
+     * Indicates whether the data for a given resource has been decoded.
+     *
+     * @param  url  location of audio file
+     * @return  true iff a call to getPcm would not need to load anything
+     */
+    public boolean isLoaded( URL url ) {
+        Entry entry = entryMap_.get( url.toExternalForm() );
+        return entry != null && entry.pcm_ != null;
+    }
+
+    /**
+     * Reads the whole content of a resource.
+     *
+     * @param  url  location
+     * @return   content
+     */
+    static byte[] readBytes( URL url ) throws IOException {
+        File file = toFile( url );
+        if ( file != null ) {
+            RandomAccessFile raf = new RandomAccessFile( file, "r" );
+            try {
+                FileChannel chan = raf.getChannel();
+                long size = chan.size();
+                if ( size > Integer.MAX_VALUE ) {
+                    throw new IOException( "Audio file too large: " + file );
+                }
+                ByteBuffer bbuf = ByteBuffer.allocate( (int) size );
+                while ( bbuf.hasRemaining() && chan.read( bbuf ) >= 0 ) {
+                }
+                return bbuf.array();
+            }
+            finally {
+                raf.close();
+            }
+        }
+        else {
+            URLConnection conn = url.openConnection();
+            int leng = conn.getContentLength();
+            ReadableByteChannel chan =
+                Channels.newChannel( conn.getInputStream() );
+            try {
+                return readFully( chan, leng );
+            }
+            finally {
+                chan.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the local file corresponding to a URL, if any.
+     *
+     * @param  url  URL
+     * @return  file, or null if the URL does not refer to a local file
+     */
+    private static File toFile( URL url ) {
+        if ( "file".equals( url.getProtocol() ) ) {
+            try {
+                return new File( url.toURI() );
+            }
+            catch ( URISyntaxException e ) {
+                return null;
+            }
+            catch ( IllegalArgumentException e ) {
+                return null;
+            }
+        }
+        else {
+            return null;
+        }
+    }
+
+    /**
+     * Reads and decodes an audio resource.
+     *
+     * @param  url  location of audio file
+     * @return   PCM data in AudioEngine.FORMAT
+     */
+    static byte[] load( URL url ) throws IOException {
+        byte[] raw = readBytes( url );
+        AudioInputStream audioIn;
+        try {
+            audioIn = AudioSystem
+                     .getAudioInputStream( new ByteArrayInputStream( raw ) );
+        }
+        catch ( UnsupportedAudioFileException e ) {
+            throw new IOException( "Unknown audio file type", e );
+        }
+        try {
+            byte[] pcm = decode( audioIn );
+            if ( pcm.length == 0 ) {
+                throw new IOException( "No audio data in " + url );
+            }
+            return pcm;
+        }
+        finally {
+            audioIn.close();
+        }
+    }
+
+    /**
+     * Reads an audio stream and converts it to PCM in the engine format.
+     *
+     * @param  audioIn  audio input stream
+     * @return   PCM data in AudioEngine.FORMAT
+     * @see   PcmConverter
+     */
+    static byte[] decode( AudioInputStream audioIn ) throws IOException {
+        audioIn = PcmConverter.toLinear( audioIn );
+        PcmConverter converter = new PcmConverter( audioIn.getFormat() );
+        byte[] raw = readAll( audioIn );
+        byte[] buf = new byte[ converter.getMaxOutputBytes( raw.length ) ];
+        int n = converter.convert( raw, 0, raw.length, buf, 0 );
+        if ( n == buf.length ) {
+            return buf;
+        }
+        byte[] pcm = new byte[ n ];
+        System.arraycopy( buf, 0, pcm, 0, n );
+        return pcm;
+    }
+
+    /**
+     * Reads all the bytes from an audio stream.
+     *
+     * @param  in  audio input stream
+     * @return   content
+     */
+    private static byte[] readAll( AudioInputStream in ) throws IOException {
+        long leng = in.getFrameLength() * in.getFormat().getFrameSize();
+        return readFully( Channels.newChannel( in ),
+                          leng > 0 && leng < Integer.MAX_VALUE ? (int) leng
+                                                               : -1 );
+    }
+
+    /**
+     * Reads all the bytes from a channel.
+     *
+     * @param  chan  channel
+     * @param  sizeHint  expected number of bytes, or -1 if not known
+     * @return   content
+     */
+    private static byte[] readFully( ReadableByteChannel chan, int sizeHint )
+            throws IOException {
+        ByteBuffer bbuf = ByteBuffer.allocate( sizeHint > 0 ? sizeHint
+                                                            : BUFSIZ );
+        while ( chan.read( bbuf ) >= 0 ) {
+            if ( ! bbuf.hasRemaining() ) {
+
+                /* Check for end of stream before growing the buffer,
+                 * since the size hint is usually exact.  The probe
+                 * must be bigger than a byte, since audio streams only
+                 * read whole frames. */
+                ByteBuffer probe = ByteBuffer.allocate( 1024 );
+                if ( chan.read( probe ) < 0 ) {
+                    break;
+                }
+                ByteBuffer b2 = ByteBuffer.allocate( bbuf.capacity() * 2
+                                                   + probe.capacity() );
+                bbuf.flip();
+                b2.put( bbuf );
+                probe.flip();
+                b2.put( probe );
+                bbuf = b2;
+            }
+        }
+        if ( bbuf.position() == bbuf.capacity() ) {
+            return bbuf.array();
+        }
+        byte[] buf = new byte[ bbuf.position() ];
+        bbuf.flip();
+        bbuf.get( buf );
+        return buf;
+    }
+
+    /**
+     * Cache entry for one resource.
+     */
+    private static class Entry {
+        private final URL url_;
+        private volatile byte[] pcm_;
+
+        /**
+         * Constructor.
+         *
+         * @param  url  location of audio file
+         */
+        Entry( URL url ) {
+            url_ = url;
+        }
+
+        /**
+         * Returns the decoded data, loading it if necessary.
+         *
+         * @return  PCM data
+         */
+        byte[] getPcm() throws IOException {
+            byte[] pcm = pcm_;
+            if ( pcm == null ) {
+                synchronized ( this ) {
+                    pcm = pcm_;
+                    if ( pcm == null ) {
+                        long t0 = System.nanoTime();
+                        pcm = load( url_ );
+                        pcm_ = pcm;
+                        logger_.info( "Loaded audio " + url_ + " ("
+                                    + pcm.length + " bytes, "
+                                    + ( System.nanoTime() - t0 ) / 1000000
+                                    + "ms)" );
+                    }
+                }
+            }
+            return pcm;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+
+/**
+ * Plays looping sounds through a single audio output line,
+ * which is opened once and kept open.
+ *
+ * <p>A dedicated thread writes the current sound to the line in
+ * small chunks, with gaps between repeats written as silence.
+ * Switching sound just tells that thread what to play next;
+ * the player thread itself flushes audio of the old sound from the line
+ * when it picks up the request, so that the flush cannot discard
+ * data of the new sound.  No lines, threads or timers are created
+ * after construction, and the new sound starts within about
+ * one chunk's duration, which is the longest the player thread
+ * can be blocked writing to the line.  The time between a switch request and
+ * the first audio data of the new sound reaching the line,
+ * or the line stopping for silence, is measured and recorded
+ * in {@link Latencies}; it should be well under {@link #MAX_SWITCH_MILLIS}.
+ * For a sound flagged as the alarm, the time from the alarm origin
+ * ({@link Latencies#markAlarm}) to its first data reaching the line
+ * is recorded too.
+ *
+ * <p>In-memory sounds are played from PCM in the engine {@link #FORMAT}.
+ * A sound that has not yet been decoded is decoded by the player thread
+ * when it is needed, which will delay the switch, so callers that care
+ * about latency should make sure that has already happened.
+ * Streaming sounds are read through a {@link PcmStream},
+ * which handles its own looping and intervals.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class AudioEngine {
+
+    /** Audio format used for all playback: 16-bit signed mono. */
+    public static final AudioFormat FORMAT =
+        new AudioFormat( 22050f, 16, 1, true, false );
+
+    /** Target maximum latency for switching sounds, in milliseconds. */
+    public static final int MAX_SWITCH_MILLIS = 20;
+
+    /** Number of frames written to the line at a time (10ms). */
+    private static final int CHUNK_FRAMES = 220;
+
+    /** Number of frames buffered in the line. */
+    private static final int LINE_BUFFER_FRAMES = 4 * CHUNK_FRAMES;
+
+    private final SourceDataLine line_;
+    private final Object lock_;
+    private final Thread player_;
+    private SoundAlert.Sound requested_;
+    private boolean isRequestAlarm_;
+    private long requestNanos_;
+    private int generation_;
+    private boolean closed_;
+    private volatile long lastSwitchNanos_;
+    private volatile long maxSwitchNanos_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( AudioEngine.class.getName() );
+
+    /**
+     * Constructs an engine using the default system output line.
+     */
+    public AudioEngine() throws IOException {
+        this( getDefaultLine() );
+    }
+
+    /**
+     * Constructs an engine using a given output line.
+     * The line is opened by this constructor.
+     *
+     * @param  line  unopened output line that supports {@link #FORMAT}
+     */
+    public AudioEngine( SourceDataLine line ) throws IOException {
+        line_ = line;
+        lock_ = new Object();
+        lastSwitchNanos_ = -1;
+        try {
+            line_.open( FORMAT, LINE_BUFFER_FRAMES * getFrameSize() );
+        }
+        catch ( LineUnavailableException e ) {
+            throw new IOException( "Audio trouble", e );
+        }
+        player_ = new Thread( "Audio engine" ) {
+            public void run() {
+                try {
+                    play();
+                }
+                catch ( InterruptedException e ) {
+                }
+                finally {
+                    line_.close();
+                }
+            }
+        };
+        player_.setDaemon( true );
+        player_.setPriority( Thread.MAX_PRIORITY );
+        player_.start();
+    }
+
+    /**
+     * Starts looping a given sound, replacing any current one.
+     * This returns immediately.
+     *
+     * @param  sound  sound to play, or null for silence
+     */
+    public void setSound( SoundAlert.Sound sound ) {
+        setSound( sound, false );
+    }
+
+    /**
+     * Starts looping a given sound, replacing any current one,
+     * optionally recording alarm latency.
+     * This returns immediately.
+     *
+     * @param  sound  sound to play, or null for silence
+     * @param  isAlarm  if true, the time since the alarm origin
+     *                  is recorded as <code>audio.alarm</code>
+     *                  when the sound reaches the line
+     */
+    public void setSound( SoundAlert.Sound sound, boolean isAlarm ) {
+        synchronized ( lock_ ) {
+            if ( sound == requested_ || closed_ ) {
+                return;
+            }
+            requested_ = sound;
+            isRequestAlarm_ = isAlarm;
+            requestNanos_ = System.nanoTime();
+            generation_++;
+            lock_.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the latency of the most recent sound switch.
+     * This is the time from the request to the first data of the new
+     * sound being accepted by the output line, or for silence
+     * to the line being stopped.
+     *
+     * @return  latency in nanoseconds, or -1 if no switch has happened
+     */
+    public long getLastSwitchNanos() {
+        return lastSwitchNanos_;
+    }
+
+    /**
+     * Returns the largest sound switch latency seen so far.
+     *
+     * @return  maximum latency in nanoseconds
+     */
+    public long getMaxSwitchNanos() {
+        return maxSwitchNanos_;
+    }
+
+    /**
+     * Stops playback and releases the output line.
+     */
+    public void close() {
+        synchronized ( lock_ ) {
+            closed_ = true;
+            lock_.notifyAll();
+        }
+        player_.interrupt();
+    }
+
+    /**
+     * Player thread loop.
+     */
+    private void play() throws InterruptedException {
+        int frameSize = getFrameSize();
+        int chunkBytes = CHUNK_FRAMES * frameSize;
+        byte[] silence = new byte[ chunkBytes ];
+        byte[] chunk = new byte[ chunkBytes ];
+        int gen = 0;
+        byte[] pcm = null;
+        PcmStream stream = null;
+        int gapBytes = 0;
+        int pos = 0;
+        int gapLeft = 0;
+        try {
+            while ( true ) {
+
+                /* See if there is a new sound to play, waiting if idle. */
+                boolean isSwitch = false;
+                boolean isAlarm = false;
+                long reqNanos = 0;
+                SoundAlert.Sound sound = null;
+                synchronized ( lock_ ) {
+                    while ( ! closed_ && gen == generation_ &&
+                            pcm == null && stream == null ) {
+                        lock_.wait();
+                    }
+                    if ( closed_ ) {
+                        return;
+                    }
+                    if ( gen != generation_ ) {
+                        gen = generation_;
+                        sound = requested_;
+                        isAlarm = isRequestAlarm_;
+                        reqNanos = requestNanos_;
+                        isSwitch = true;
+                    }
+                }
+                if ( isSwitch ) {
+                    if ( stream != null ) {
+                        stream.close();
+                        stream = null;
+                    }
+                    pcm = null;
+                    if ( sound != null ) {
+                        if ( sound.isStreaming() ) {
+                            stream = sound.openStream();
+                        }
+                        else {
+                            pcm = getPcm( sound );
+                        }
+                    }
+                    gapBytes = sound == null
+                             ? 0
+                             : (int) ( sound.getIntervalMillis() * 0.001
+                                       * FORMAT.getFrameRate() )
+                               * frameSize;
+                    pos = 0;
+                    gapLeft = 0;
+
+                    /* Discard anything queued from the previous sound. */
+                    line_.flush();
+                    if ( pcm == null && stream == null ) {
+                        line_.stop();
+                        recordSwitch( System.nanoTime() - reqNanos );
+                        if ( sound == null ) {
+                            Latencies.recordSinceReset( "audio.silent" );
+                        }
+                        continue;
+                    }
+                    line_.start();
+                }
+
+                /* Write the next chunk of sound or silence. */
+                if ( stream != null ) {
+                    int n = stream.read( chunk, 0, chunkBytes );
+                    if ( n < 0 ) {
+                        stream = null;
+                        line_.stop();
+                        continue;
+                    }
+                    line_.write( chunk, 0, n );
+                }
+                else if ( gapLeft > 0 ) {
+                    int n = Math.min( chunkBytes, gapLeft );
+                    line_.write( silence, 0, n );
+                    gapLeft -= n;
+                }
+                else {
+                    int n = Math.min( chunkBytes, pcm.length - pos );
+                    line_.write( pcm, pos, n );
+                    pos += n;
+                    if ( pos >= pcm.length ) {
+                        pos = 0;
+                        gapLeft = gapBytes;
+                    }
+                }
+                if ( isSwitch ) {
+                    recordSwitch( System.nanoTime() - reqNanos );
+                    if ( isAlarm ) {
+                        Latencies.recordSinceAlarm( "audio.alarm" );
+                    }
+                }
+            }
+        }
+        finally {
+            if ( stream != null ) {
+                stream.close();
+            }
+        }
+    }
+
+    /**
+     * Returns the audio data for a sound, logging any failure.
+     *
+     * @param  sound  sound
+     * @return  PCM data, or null if it could not be loaded
+     */
+    private static byte[] getPcm( SoundAlert.Sound sound ) {
+        try {
+            return sound.getPcm();
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.SEVERE, "Cannot sound audio alarm!", e );
+            return null;
+        }
+    }
+
+    /**
+     * Records the latency of a sound switch.
+     *
+     * @param  nanos  latency in nanoseconds
+     */
+    private void recordSwitch( long nanos ) {
+        Latencies.record( "audio.switch", nanos );
+        lastSwitchNanos_ = nanos;
+        maxSwitchNanos_ = Math.max( maxSwitchNanos_, nanos );
+        long millis = nanos / 1000000;
+        Level level = millis > MAX_SWITCH_MILLIS ? Level.WARNING : Level.FINE;
+        if ( logger_.isLoggable( level ) ) {
+            logger_.log( level, "Sound switch latency " + millis + "ms" );
+        }
+    }
+
+    /**
+     * Returns the number of bytes per frame in the engine format.
+     *
+     * @return  frame size
+     */
+    private static int getFrameSize() {
+        return FORMAT.getFrameSize();
+    }
+
+    /**
+     * Returns the system output line for the engine format.
+     *
+     * @return  unopened line
+     */
+    private static SourceDataLine getDefaultLine() throws IOException {
+        try {
+            return AudioSystem.getSourceDataLine( FORMAT );
+        }
+        catch ( LineUnavailableException e ) {
+            throw new IOException( "Audio trouble", e );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new IOException( "No audio output available", e );
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package uk.ac.bristol.star.deadman;
+
+/**
+ * Source of elapsed time used for timing countdowns.
+ * Values are only meaningful relative to each other;
+ * they have no relation to calendar time.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public interface Clock {
+
+    /**
+     * Clock based on <code>System.nanoTime</code>.
+     * This is monotonic, so is not affected by adjustments to
+     * the system wall clock.
+     */
+    public static final Clock SYSTEM = new Clock() {
+        private final long nanos0_ = System.nanoTime();
+        public long currentMillis() {
+            return ( System.nanoTime() - nanos0_ ) / 1000000;
+        }
+    };
+
+    /**
+     * Returns the current time in milliseconds.
+     * Successive calls will never return decreasing values.
+     *
+     * @return  current time in milliseconds
+     */
+    long currentMillis();
+}
@@ -1,10 +1,15 @@
 package uk.ac.bristol.star.deadman;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Map key for indexing typed values.
  * There is a default value, and value&lt;-&gt;String conversion
  * methods are provided.
  *
+ * <p>Each key has a slot index, unique within the JVM, which allows
+ * maps such as {@link ConfigMap} to store values in an array.
+ *
  * @param   <T>  type of value this key indexes
  * @author   Mark Taylor
  * @since    25 Jul 2016
@@ -14,6 +19,9 @@ public abstract class ConfigKey<T> {
     private final String name_;
     private final Class<T> clazz_;
     private final T dflt_;
+    private final int slot_;
+
+    private static final AtomicInteger nextSlot_ = new AtomicInteger();
 
     /**
      * Constructor.
@@ -26,6 +34,27 @@ public abstract class ConfigKey<T> {
         name_ = name;
         clazz_ = clazz;
         dflt_ = dflt;
+        slot_ = nextSlot_.getAndIncrement();
+    }
+
+    /**
+     * Returns this key's slot index.
+     * Slots are allocated densely from zero in order of key creation.
+     *
+     * @return  slot index
+     */
+    public int getSlot() {
+        return slot_;
+    }
+
+    /**
+     * Returns the number of slots allocated so far, which is one more
+     * than the largest slot index of any key yet created.
+     *
+     * @return  slot count
+     */
+    public static int getSlotCount() {
+        return nextSlot_.get();
     }
 
     /**
@@ -86,7 +115,7 @@ public abstract class ConfigKey<T> {
              .append( " - " )
              .append( clazz_.getSimpleName() )
              .append( " (" )
-             .append( toString( dflt_ ) )
+             .append( toString( getDefaultValue() ) )
              .append( ")" )
              .toString();
     }
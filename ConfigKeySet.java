@@ -0,0 +1,90 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable set of known configuration keys, indexed by name
+ * without regard to case.
+ * Looking up a key by name takes constant time however many keys
+ * there are.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class ConfigKeySet {
+
+    private final ConfigKey<?>[] keys_;
+    private final Map<String,ConfigKey<?>> nameMap_;
+    private ConfigKey<?>[] source_;
+
+    private static ConfigKeySet lastInstance_;
+
+    /**
+     * Constructor.
+     * If more than one key has the same name apart from case,
+     * the first one is used.
+     *
+     * @param  keys  known keys
+     */
+    public ConfigKeySet( ConfigKey<?>[] keys ) {
+        keys_ = keys.clone();
+        nameMap_ = new HashMap<String,ConfigKey<?>>( keys.length * 2 );
+        for ( ConfigKey<?> key : keys ) {
+            String fname = foldCase( key.getName() );
+            if ( ! nameMap_.containsKey( fname ) ) {
+                nameMap_.put( fname, key );
+            }
+        }
+    }
+
+    /**
+     * Returns the keys in this set.
+     *
+     * @return  keys, in the order supplied at construction
+     */
+    public ConfigKey<?>[] getKeys() {
+        return keys_.clone();
+    }
+
+    /**
+     * Returns the key with a given name, ignoring case.
+     *
+     * @param  name  key name
+     * @return  key, or null if there is none with the given name
+     */
+    public ConfigKey<?> getKey( String name ) {
+        return nameMap_.get( foldCase( name ) );
+    }
+
+    /**
+     * Returns a key set for a given array of keys.
+     * The most recently requested set is cached, so that repeated calls
+     * for the same array do not have to rebuild the index.
+     * The array must not be modified after it is first used here.
+     *
+     * @param  keys  known keys
+     * @return  key set
+     */
+    public static synchronized ConfigKeySet getInstance( ConfigKey<?>[]
+                                                         keys ) {
+        ConfigKeySet last = lastInstance_;
+        if ( last == null || last.source_ != keys ) {
+            last = new ConfigKeySet( keys );
+            last.source_ = keys;
+            lastInstance_ = last;
+        }
+        return last;
+    }
+
+    /**
+     * Returns the case-folded form of a key name.
+     *
+     * @param  name  name
+     * @return  folded name
+     */
+    private static String foldCase( String name ) {
+        return name.toLowerCase( Locale.ROOT );
+    }
+}
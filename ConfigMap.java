@@ -2,26 +2,42 @@ package uk.ac.bristol.star.deadman;
 
 import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.LinkedHashMap;
 import java.util.Properties;
 
 /**
  * Stores typed values by name.
  *
+ * <p>Values are held in an array indexed by each key's
+ * {@link ConfigKey#getSlot slot}, so retrieval is a single array access.
+ * An immutable copy suitable for sharing between threads can be
+ * obtained using {@link #snapshot}.
+ *
  * @author   Mark Taylor
  * @since    25 July 2016
  */
 public class ConfigMap {
 
-    private final Map<ConfigKey<?>,Object> map_;
+    private Object[] values_;
+
+    /** Marker for slots with no value set; null is a legitimate value. */
+    static final Object UNSET = new Object();
 
     /**
      * Constructor.
      */
     public ConfigMap() {
-        map_ = new LinkedHashMap<ConfigKey<?>,Object>();
+        this( createValues( ConfigKey.getSlotCount() ) );
+    }
+
+    /**
+     * Constructs a map with given initial contents.
+     *
+     * @param  values  value array indexed by key slot; not copied
+     */
+    ConfigMap( Object[] values ) {
+        values_ = values;
     }
 
     /**
@@ -31,7 +47,14 @@ public class ConfigMap {
      * @param  value   value
      */
     public <T> void put( ConfigKey<T> key, T value ) {
-        map_.put( key, value );
+        int slot = key.getSlot();
+        if ( slot >= values_.length ) {
+            int n0 = values_.length;
+            int n1 = Math.max( slot + 1, ConfigKey.getSlotCount() );
+            values_ = Arrays.copyOf( values_, n1 );
+            Arrays.fill( values_, n0, n1, UNSET );
+        }
+        values_[ slot ] = value;
     }
 
     /**
@@ -42,9 +65,27 @@ public class ConfigMap {
      * @return  value 
      */
     public <T> T get( ConfigKey<T> key ) {
-        return map_.containsKey( key )
-             ? key.getValueClass().cast( map_.get( key ) )
-             : key.getDefaultValue();
+        return getValue( values_, key );
+    }
+
+    /**
+     * Indicates whether a value has been put for a given key.
+     *
+     * @param  key  key
+     * @return  true iff this map has an explicit value for key
+     */
+    public boolean isSet( ConfigKey<?> key ) {
+        int slot = key.getSlot();
+        return slot < values_.length && values_[ slot ] != UNSET;
+    }
+
+    /**
+     * Returns an immutable copy of the current contents of this map.
+     *
+     * @return  snapshot
+     */
+    public ConfigSnapshot snapshot() {
+        return new ConfigSnapshot( values_.clone() );
     }
 
     /**
@@ -61,13 +102,27 @@ public class ConfigMap {
      */
     public void assign( String name, String value, ConfigKey<?>[] knownKeys )
             throws ConfigException {
-        for ( ConfigKey<?> key : knownKeys ) {
-            if ( name.equalsIgnoreCase( key.getName() ) ) {
-                putString( key, value );
-                return;
-            }
+        assign( name, value, ConfigKeySet.getInstance( knownKeys ) );
+    }
+
+    /**
+     * Attempts to put a value into the map given a string-string name-value
+     * pair and a precompiled key set.
+     *
+     * @param  name  key name
+     * @param  value   string representation of value
+     * @param  keySet   all permitted keys
+     * @throws   ConfigException  if no key with the right name is present
+     *           in the supplied key set, or if value can't be
+     *           interpreted by the key
+     */
+    public void assign( String name, String value, ConfigKeySet keySet )
+            throws ConfigException {
+        ConfigKey<?> key = keySet.getKey( name );
+        if ( key == null ) {
+            throw new ConfigException( "No known key \"" + name + "\"" );
         }
-        throw new ConfigException( "No known key \"" + name + "\"" );
+        putString( key, value );
     }
 
     /**
@@ -82,9 +137,24 @@ public class ConfigMap {
      */
     public void addProperties( Properties props, ConfigKey<?>[] knownKeys )
             throws ConfigException {
+        addProperties( props, ConfigKeySet.getInstance( knownKeys ) );
+    }
+
+    /**
+     * Adds entries to this map read from string-valued entries
+     * of a properties object, using a precompiled key set.
+     *
+     * @param  props  properties object
+     * @param  keySet   all permitted keys
+     * @throws   ConfigException  if no key with the right name is present
+     *           in the supplied key set, or if value can't be
+     *           interpreted by the key
+     */
+    public void addProperties( Properties props, ConfigKeySet keySet )
+            throws ConfigException {
         for ( String propName : props.stringPropertyNames() ) {
             String propValue = props.getProperty( propName );
-            assign( propName, propValue, knownKeys );
+            assign( propName, propValue, keySet );
         }
     }
 
@@ -102,7 +172,7 @@ public class ConfigMap {
         for ( ConfigKey<?> key : knownKeys ) {
             final boolean isDflt;
             final String valueStr;
-            if ( map_.containsKey( key ) ) {
+            if ( isSet( key ) ) {
                 isDflt = false;
                 valueStr = getString( key );
             }
@@ -154,4 +224,32 @@ public class ConfigMap {
     private static <T> String getDefaultString( ConfigKey<T> key ) {
         return key.toString( key.getDefaultValue() );
     }
+
+    /**
+     * Returns a value array with all slots unset.
+     *
+     * @param  n  array length
+     * @return  new array
+     */
+    private static Object[] createValues( int n ) {
+        Object[] values = new Object[ n ];
+        Arrays.fill( values, UNSET );
+        return values;
+    }
+
+    /**
+     * Retrieves a typed value from a slot array.
+     * Values are only ever stored by the type-safe {@link #put} method,
+     * so no runtime type check is required.
+     *
+     * @param  values  value array indexed by slot
+     * @param  key  key
+     * @return  value, or key's default if unset
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T getValue( Object[] values, ConfigKey<T> key ) {
+        int slot = key.getSlot();
+        Object value = slot < values.length ? values[ slot ] : UNSET;
+        return value == UNSET ? key.getDefaultValue() : (T) value;
+    }
 }
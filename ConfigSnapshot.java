@@ -0,0 +1,66 @@
+package uk.ac.bristol.star.deadman;
+
+/**
+ * Immutable record of the contents of a {@link ConfigMap}.
+ * Since it cannot change, a snapshot may be handed between threads
+ * and read without synchronization.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ * @see      ConfigMap#snapshot
+ */
+public class ConfigSnapshot {
+
+    private final Object[] values_;
+
+    /**
+     * Constructor.
+     *
+     * @param  values  value array indexed by key slot; not copied
+     */
+    ConfigSnapshot( Object[] values ) {
+        values_ = values;
+    }
+
+    /**
+     * Retrieves a value from this snapshot.
+     * If no entry was put, the key's default value is returned.
+     *
+     * @param   key  key
+     * @return  value
+     */
+    public <T> T get( ConfigKey<T> key ) {
+        return ConfigMap.getValue( values_, key );
+    }
+
+    /**
+     * Indicates whether a value was put for a given key.
+     *
+     * @param  key  key
+     * @return  true iff this snapshot has an explicit value for key
+     */
+    public boolean isSet( ConfigKey<?> key ) {
+        int slot = key.getSlot();
+        return slot < values_.length && values_[ slot ] != ConfigMap.UNSET;
+    }
+
+    /**
+     * Returns the string representation of the value of a given key
+     * in this snapshot.
+     *
+     * @param  key  key
+     * @return   string representation of key's (actual or default) value
+     */
+    public <T> String getString( ConfigKey<T> key ) {
+        return key.toString( get( key ) );
+    }
+
+    /**
+     * Returns a new mutable map with the same contents as this snapshot.
+     *
+     * @return  new map
+     */
+    public ConfigMap toConfigMap() {
+        return new ConfigMap( values_.clone() );
+    }
+}
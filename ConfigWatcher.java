@@ -0,0 +1,249 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches a configuration properties file and reports changes to it.
+ *
+ * <p>The file's directory is monitored by a daemon thread using a
+ * {@link java.nio.file.WatchService}.  When the file is written,
+ * the thread waits until it has been quiet for {@link #DEBOUNCE_MILLIS},
+ * so that an editor saving in several steps causes only one reload.
+ * It then reads and validates the file, applies the fixed overrides
+ * (typically from the command line) on top, and passes an immutable
+ * {@link ConfigSnapshot} to the listener on the Event Dispatch Thread.
+ * If the file is missing, cannot be read, contains unknown keys or
+ * bad values, or is unchanged, a message is logged and the listener
+ * is not called, so the running configuration stays in force.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class ConfigWatcher {
+
+    private final File file_;
+    private final ConfigKeySet keySet_;
+    private final Map<String,String> overrides_;
+    private final Listener listener_;
+    private Properties lastProps_;
+    private WatchService watchService_;
+
+    /** Quiet interval after a change before the file is reloaded. */
+    public static final long DEBOUNCE_MILLIS = 200;
+
+    private static final Logger logger_ =
+        Logger.getLogger( ConfigWatcher.class.getName() );
+
+    /**
+     * Constructor.
+     *
+     * @param  file  properties file to watch
+     * @param  keys  all permitted keys
+     * @param  overrides  name-value pairs applied after the file contents
+     *                    on every reload
+     * @param  listener  receives new configurations
+     */
+    public ConfigWatcher( File file, ConfigKey<?>[] keys,
+                          Map<String,String> overrides, Listener listener ) {
+        file_ = file.getAbsoluteFile();
+        keySet_ = ConfigKeySet.getInstance( keys );
+        overrides_ = new LinkedHashMap<String,String>( overrides );
+        listener_ = listener;
+    }
+
+    /**
+     * Starts watching the file.
+     * The current contents of the file are taken as the baseline,
+     * so only subsequent changes are reported.
+     *
+     * @throws  IOException  if the directory cannot be watched
+     */
+    public synchronized void start() throws IOException {
+        if ( watchService_ != null ) {
+            return;
+        }
+        try {
+            lastProps_ = readProperties();
+        }
+        catch ( IOException e ) {
+            lastProps_ = null;
+        }
+        final WatchService watchService =
+            FileSystems.getDefault().newWatchService();
+        Path dir = file_.getParentFile().toPath();
+        try {
+            dir.register( watchService,
+                          StandardWatchEventKinds.ENTRY_CREATE,
+                          StandardWatchEventKinds.ENTRY_MODIFY );
+        }
+        catch ( IOException e ) {
+            watchService.close();
+            throw e;
+        }
+        watchService_ = watchService;
+        Thread watcher = new Thread( "Config watcher" ) {
+            public void run() {
+                try {
+                    watch( watchService );
+                }
+                catch ( ClosedWatchServiceException e ) {
+                }
+                catch ( InterruptedException e ) {
+                }
+            }
+        };
+        watcher.setDaemon( true );
+        watcher.start();
+        logger_.info( "Watching " + file_ + " for configuration changes" );
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    public synchronized void close() {
+        if ( watchService_ != null ) {
+            try {
+                watchService_.close();
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.FINE, "Error closing watch service", e );
+            }
+            watchService_ = null;
+        }
+    }
+
+    /**
+     * Rereads the file now, and passes the result to the listener
+     * if it is valid and has changed since last time.
+     * This is normally called from the watcher thread,
+     * but may be called from any thread except the Event Dispatch Thread.
+     *
+     * @return  true iff a new configuration was passed to the listener
+     */
+    public boolean reload() {
+        long t0 = System.nanoTime();
+        final ConfigSnapshot snapshot;
+        synchronized ( this ) {
+            Properties props;
+            try {
+                props = readProperties();
+            }
+            catch ( IOException e ) {
+                logger_.warning( "Can't reload configuration from " + file_
+                               + ": " + e );
+                return false;
+            }
+            if ( props.equals( lastProps_ ) ) {
+                logger_.config( "Configuration file " + file_
+                              + " unchanged" );
+                return false;
+            }
+            ConfigMap cmap = new ConfigMap();
+            try {
+                cmap.addProperties( props, keySet_ );
+                for ( Map.Entry<String,String> entry :
+                      overrides_.entrySet() ) {
+                    cmap.assign( entry.getKey(), entry.getValue(), keySet_ );
+                }
+            }
+            catch ( ConfigException e ) {
+                logger_.warning( "Ignoring bad configuration in " + file_
+                               + ": " + e.getMessage() );
+                return false;
+            }
+            lastProps_ = props;
+            snapshot = cmap.snapshot();
+        }
+        logger_.info( "Reloaded configuration from " + file_ + " in "
+                    + ( System.nanoTime() - t0 ) / 1000 + "us" );
+        SwingUtilities.invokeLater( new Runnable() {
+            public void run() {
+                listener_.configChanged( snapshot );
+            }
+        } );
+        return true;
+    }
+
+    /**
+     * Reads the watched file as a properties object.
+     *
+     * @return  properties
+     */
+    private Properties readProperties() throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream( file_ );
+        try {
+            props.load( in );
+        }
+        finally {
+            in.close();
+        }
+        return props;
+    }
+
+    /**
+     * Waits for changes to the watched file and reloads it,
+     * until the watch service is closed.
+     *
+     * @param  watchService  watch service
+     */
+    private void watch( WatchService watchService )
+            throws InterruptedException {
+        String fname = file_.getName();
+        while ( true ) {
+            WatchKey key = watchService.take();
+            boolean isHit = false;
+            for ( WatchEvent<?> evt : key.pollEvents() ) {
+                Object context = evt.context();
+                if ( context instanceof Path &&
+                     fname.equals( ((Path) context).toString() ) ) {
+                    isHit = true;
+                }
+            }
+            key.reset();
+            if ( isHit ) {
+
+                /* Wait for the writes to settle before reloading. */
+                for ( WatchKey k;
+                      ( k = watchService.poll( DEBOUNCE_MILLIS,
+                                               TimeUnit.MILLISECONDS ) )
+                      != null; ) {
+                    k.pollEvents();
+                    k.reset();
+                }
+                reload();
+            }
+        }
+    }
+
+    /**
+     * Receives new configurations from a ConfigWatcher.
+     */
+    public interface Listener {
+
+        /**
+         * Invoked on the Event Dispatch Thread when the watched file
+         * has changed and been successfully reloaded.
+         *
+         * @param  snapshot  complete new configuration
+         */
+        void configChanged( ConfigSnapshot snapshot );
+    }
+}
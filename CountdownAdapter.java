@@ -0,0 +1,29 @@
+package uk.ac.bristol.star.deadman;
+
+/**
+ * CountdownListener implementation with methods that do nothing.
+ * Subclass this to pick up only the events you are interested in.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public abstract class CountdownAdapter implements CountdownListener {
+
+    public void textChanged( CountdownModel model, String oldText,
+                             String newText ) {
+    }
+
+    public void statusChanged( CountdownModel model, Status oldStatus,
+                               Status newStatus ) {
+    }
+
+    public void blinkChanged( CountdownModel model, boolean oldPhase,
+                              boolean newPhase ) {
+    }
+
+    public void countdownReset( CountdownModel model ) {
+    }
+
+    public void deadlineChanged( CountdownModel model ) {
+    }
+}
@@ -0,0 +1,455 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Records the state of a running countdown in a small memory-mapped file,
+ * so that if the application dies an interrupted session can be
+ * detected and resumed when it restarts.
+ *
+ * <p>The journal is updated on every reset and status transition,
+ * and whenever the deadline is moved, for instance when it is brought
+ * forward by a shorter countdown time.
+ * Updates are just writes to the mapped buffer, so they cost very little;
+ * the operating system writes them out to disk in its own time,
+ * which means they survive a crash of the JVM.
+ * The file is only explicitly forced to disk at the start and end
+ * of a session.  Records are written alternately to two slots,
+ * each with a sequence number written before and after the update,
+ * so that if the application dies part way through a write
+ * the previous complete record is used instead.
+ *
+ * <p>Each slot is large enough for the whole record; if a session's
+ * user name and contacts do not fit, the file is enlarged when the
+ * session begins, so that they are never truncated.  The number of
+ * contacts is recorded as well as their text, so that a resumed
+ * session can tell if any have been lost.
+ *
+ * <p>Because the record has to survive restarts, the deadline is
+ * stored as wall-clock time.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class CountdownJournal {
+
+    private final File file_;
+    private final CountdownListener listener_;
+    private MappedByteBuffer buf_;
+    private int slotSize_;
+    private CountdownModel model_;
+    private byte[] userBytes_;
+    private byte[] contactsBytes_;
+    private int nContact_;
+    private int resetCount_;
+    private long seq_;
+
+    private static final int MAGIC = 0x444d4a32;
+    private static final int MIN_SLOT_SIZE = 2048;
+    private static final int MAX_SLOT_SIZE = 1 << 20;
+    private static final int NSLOT = 2;
+    private static final int STATE_IDLE = 0;
+    private static final int STATE_ACTIVE = 1;
+    private static final int OFF_MAGIC = 0;
+    private static final int OFF_SEQ = 4;
+    private static final int OFF_STATE = 12;
+    private static final int OFF_STATUS = 16;
+    private static final int OFF_RESETS = 20;
+    private static final int OFF_DEADLINE = 24;
+    private static final int OFF_UPDATED = 32;
+    private static final int OFF_NCONTACT = 40;
+    private static final int OFF_USER = 44;
+    private static final Charset UTF8 = Charset.forName( "UTF-8" );
+
+    /**
+     * Constructor.  The file is created if it does not exist.
+     *
+     * @param  file  journal file
+     */
+    public CountdownJournal( File file ) throws IOException {
+        file_ = file;
+        long length = file.length();
+        int slotSize = MIN_SLOT_SIZE;
+        while ( slotSize < MAX_SLOT_SIZE && slotSize * (long) NSLOT < length ) {
+            slotSize *= 2;
+        }
+        map( slotSize, false );
+        for ( int is = 0; is < NSLOT; is++ ) {
+            int base = is * slotSize_;
+            if ( buf_.getInt( base + OFF_MAGIC ) == MAGIC ) {
+                seq_ = Math.max( seq_, buf_.getLong( base + OFF_SEQ ) );
+                seq_ = Math.max( seq_,
+                                 buf_.getLong( base + slotSize_ - 8 ) );
+            }
+        }
+        listener_ = new CountdownAdapter() {
+            @Override
+            public void countdownReset( CountdownModel model ) {
+                synchronized ( CountdownJournal.this ) {
+                    resetCount_++;
+                }
+                update();
+            }
+            @Override
+            public void statusChanged( CountdownModel model, Status oldStatus,
+                                       Status newStatus ) {
+                update();
+            }
+            @Override
+            public void deadlineChanged( CountdownModel model ) {
+                update();
+            }
+        };
+    }
+
+    /**
+     * Returns the journal file.
+     *
+     * @return  file
+     */
+    public File getFile() {
+        return file_;
+    }
+
+    /**
+     * Returns the record of a session that was still active when
+     * the journal was last written.  That means the application
+     * stopped without the session being properly ended.
+     *
+     * @return  interrupted session record, or null if there is none
+     */
+    public synchronized Record readInterrupted() {
+        int base = -1;
+        long bestSeq = -1;
+        for ( int is = 0; is < NSLOT; is++ ) {
+            int b = is * slotSize_;
+            long seq = buf_.getLong( b + OFF_SEQ );
+            if ( buf_.getInt( b + OFF_MAGIC ) == MAGIC &&
+                 seq == buf_.getLong( b + slotSize_ - 8 ) && seq > bestSeq &&
+                 getContactsOffset( b ) >= 0 ) {
+                base = b;
+                bestSeq = seq;
+            }
+        }
+        if ( base < 0 || buf_.getInt( base + OFF_STATE ) != STATE_ACTIVE ) {
+            return null;
+        }
+        int iStatus = buf_.getInt( base + OFF_STATUS );
+        Status[] statuses = Status.values();
+        Status status = iStatus >= 0 && iStatus < statuses.length
+                      ? statuses[ iStatus ]
+                      : null;
+        return new Record( readString( base + OFF_USER ),
+                           readString( getContactsOffset( base ) ),
+                           buf_.getInt( base + OFF_NCONTACT ),
+                           status, buf_.getInt( base + OFF_RESETS ),
+                           buf_.getLong( base + OFF_DEADLINE ),
+                           buf_.getLong( base + OFF_UPDATED ) );
+    }
+
+    /**
+     * Starts journalling a session.  The model is monitored until
+     * {@link #end} is called.
+     * If the journal file has to be enlarged to hold the record but
+     * that fails, an exception is thrown and the session is not
+     * journalled.
+     *
+     * @param  model  countdown model, should be running
+     * @param  userName  name of user
+     * @param  contacts  string representation of email contacts
+     * @param  nContact  number of email contacts
+     * @param  resetCount  number of resets already performed in the
+     *                     session, usually zero unless it is being resumed
+     * @throws  IOException  if the session cannot be journalled
+     */
+    public void begin( CountdownModel model, String userName,
+                       String contacts, int nContact, int resetCount )
+            throws IOException {
+        synchronized ( this ) {
+            if ( model_ != null ) {
+                model_.removeCountdownListener( listener_ );
+                model_ = null;
+            }
+            byte[] userBytes = ( userName == null ? "" : userName )
+                              .getBytes( UTF8 );
+            byte[] contactsBytes = ( contacts == null ? "" : contacts )
+                                  .getBytes( UTF8 );
+            long need = OFF_USER + 4 + userBytes.length
+                      + 4 + contactsBytes.length + 8;
+            if ( need > slotSize_ ) {
+                int slotSize = slotSize_;
+                while ( slotSize < need && slotSize < MAX_SLOT_SIZE ) {
+                    slotSize *= 2;
+                }
+                if ( slotSize < need ) {
+                    throw new IOException( "Journal record too large ("
+                                         + need + " bytes)" );
+                }
+                map( slotSize, true );
+            }
+            model_ = model;
+            userBytes_ = userBytes;
+            contactsBytes_ = contactsBytes;
+            nContact_ = nContact;
+            resetCount_ = resetCount;
+            write( STATE_ACTIVE );
+            buf_.force();
+        }
+        model.addCountdownListener( listener_ );
+    }
+
+    /**
+     * Records that the current session has been properly ended.
+     */
+    public void end() {
+        CountdownModel model;
+        synchronized ( this ) {
+            model = model_;
+            if ( model == null ) {
+                return;
+            }
+            write( STATE_IDLE );
+            buf_.force();
+            model_ = null;
+        }
+        model.removeCountdownListener( listener_ );
+    }
+
+    /**
+     * Writes the current state of the monitored model to the journal.
+     */
+    private synchronized void update() {
+        if ( model_ != null ) {
+            write( STATE_ACTIVE );
+        }
+    }
+
+    /**
+     * Maps the journal file with a given slot size.
+     * Must be called with the monitor held, or during construction.
+     *
+     * @param  slotSize  size of each slot in bytes
+     * @param  isClear  if true, any existing content is discarded,
+     *                  since it is laid out for a different slot size
+     */
+    private void map( int slotSize, boolean isClear ) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile( file_, "rw" );
+        try {
+            long size = slotSize * (long) NSLOT;
+            if ( isClear ) {
+                raf.setLength( 0 );
+            }
+            if ( raf.length() < size ) {
+                raf.setLength( size );
+            }
+            buf_ = raf.getChannel()
+                      .map( FileChannel.MapMode.READ_WRITE, 0, size );
+            slotSize_ = slotSize;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes a record to the mapped buffer.
+     * Must be called with the monitor held.
+     *
+     * @param  state  session state flag
+     */
+    private void write( int state ) {
+        long now = System.currentTimeMillis();
+        Status status = model_.getStatus();
+        long seq = ++seq_;
+        int base = (int) ( seq % NSLOT ) * slotSize_;
+        int offSeq2 = base + slotSize_ - 8;
+
+        /* Invalidate the slot, write the content, then mark it valid. */
+        buf_.putLong( offSeq2, -1 );
+        buf_.putLong( base + OFF_SEQ, seq );
+        buf_.putInt( base + OFF_MAGIC, MAGIC );
+        buf_.putInt( base + OFF_STATE, state );
+        buf_.putInt( base + OFF_STATUS,
+                     status == null ? -1 : status.ordinal() );
+        buf_.putInt( base + OFF_RESETS, resetCount_ );
+        buf_.putLong( base + OFF_DEADLINE,
+                      now + model_.getRemainingMillis() );
+        buf_.putLong( base + OFF_UPDATED, now );
+        buf_.putInt( base + OFF_NCONTACT, nContact_ );
+        int off = writeBytes( base + OFF_USER, userBytes_ );
+        writeBytes( off, contactsBytes_ );
+        buf_.putLong( offSeq2, seq );
+    }
+
+    /**
+     * Writes a length-prefixed byte array to the buffer.
+     * The caller must ensure there is room.
+     *
+     * @param  off  offset of length word
+     * @param  bytes   content
+     * @return   offset following the content
+     */
+    private int writeBytes( int off, byte[] bytes ) {
+        buf_.putInt( off, bytes.length );
+        ByteBuffer b = buf_.duplicate();
+        b.position( off + 4 );
+        b.put( bytes );
+        return off + 4 + bytes.length;
+    }
+
+    /**
+     * Returns the offset of the contacts string in a slot,
+     * checking that both strings lie within the slot.
+     *
+     * @param  base  slot offset
+     * @return  offset of contacts length word, or -1 if the slot
+     *          content is inconsistent
+     */
+    private int getContactsOffset( int base ) {
+        int end = base + slotSize_ - 8;
+        int nu = buf_.getInt( base + OFF_USER );
+        if ( nu < 0 || nu > end - base - OFF_USER - 8 ) {
+            return -1;
+        }
+        int off = base + OFF_USER + 4 + nu;
+        int nc = buf_.getInt( off );
+        return nc >= 0 && nc <= end - off - 4 ? off : -1;
+    }
+
+    /**
+     * Reads a string written by writeBytes.
+     * The caller must have checked that its length is sensible.
+     *
+     * @param  off  offset of length word
+     * @return   string
+     */
+    private String readString( int off ) {
+        byte[] bytes = new byte[ buf_.getInt( off ) ];
+        ByteBuffer b = buf_.duplicate();
+        b.position( off + 4 );
+        b.get( bytes );
+        return new String( bytes, UTF8 );
+    }
+
+    /**
+     * Describes a journalled session.
+     */
+    public static class Record {
+
+        private final String userName_;
+        private final String contacts_;
+        private final int nContact_;
+        private final Status status_;
+        private final int resetCount_;
+        private final long deadline_;
+        private final long updated_;
+
+        /**
+         * Constructor.
+         *
+         * @param  userName  user name
+         * @param  contacts  string representation of email contacts
+         * @param  nContact  number of email contacts
+         * @param  status   last recorded status
+         * @param  resetCount  number of resets in session
+         * @param  deadline   wall-clock epoch time of countdown zero point
+         * @param  updated   wall-clock epoch time of last update
+         */
+        Record( String userName, String contacts, int nContact,
+                Status status, int resetCount, long deadline,
+                long updated ) {
+            userName_ = userName;
+            contacts_ = contacts;
+            nContact_ = nContact;
+            status_ = status;
+            resetCount_ = resetCount;
+            deadline_ = deadline;
+            updated_ = updated;
+        }
+
+        /**
+         * Returns the user name.
+         *
+         * @return  user name
+         */
+        public String getUserName() {
+            return userName_;
+        }
+
+        /**
+         * Returns the string representation of the email contacts.
+         *
+         * @return  contacts string, may be empty
+         */
+        public String getContacts() {
+            return contacts_;
+        }
+
+        /**
+         * Returns the number of email contacts confirmed for the session.
+         * The contacts string should contain this many addresses.
+         *
+         * @return  contact count
+         */
+        public int getContactCount() {
+            return nContact_;
+        }
+
+        /**
+         * Returns the last recorded status.
+         *
+         * @return   status
+         */
+        public Status getStatus() {
+            return status_;
+        }
+
+        /**
+         * Returns the number of resets performed in the session.
+         *
+         * @return  reset count
+         */
+        public int getResetCount() {
+            return resetCount_;
+        }
+
+        /**
+         * Returns the wall-clock time at which the countdown
+         * reaches its zero point.
+         *
+         * @return  epoch time in milliseconds
+         */
+        public long getDeadline() {
+            return deadline_;
+        }
+
+        /**
+         * Returns the wall-clock time at which the record was last updated.
+         *
+         * @return  epoch time in milliseconds
+         */
+        public long getUpdateTime() {
+            return updated_;
+        }
+
+        /**
+         * Returns the time until the countdown zero point, as of now.
+         * If the session was already in danger status,
+         * the result is arranged to be far enough in the past
+         * that a resumed countdown goes straight to danger.
+         *
+         * @return  milliseconds until zero, may be negative
+         */
+        public long getRemainingMillis() {
+            long remaining = deadline_ - System.currentTimeMillis();
+            return status_ == Status.DANGER ? Math.min( remaining, -1000 )
+                                            : remaining;
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package uk.ac.bristol.star.deadman;
 
 import java.awt.Color;
+import java.awt.EventQueue;
 import java.awt.Font;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.BorderFactory;
 import javax.swing.JLabel;
-import javax.swing.event.ChangeEvent;
-import javax.swing.event.ChangeListener;
 
 /**
  * Visual component that displays the state of a CountdownModel.
@@ -16,15 +16,26 @@ import javax.swing.event.ChangeListener;
 public class CountdownLabel extends JLabel {
 
     private final CountdownModel model_;
+    private final AtomicBoolean isRefreshPending_;
+    private final Runnable refresher_;
 
     /**
      * Constructor.
+     * The model may be updated from any thread;
+     * this component only changes its state on the Event Dispatch Thread.
      *
      * @param  model  countdown model
      * @param  fontSize  size of counter text
      */
     public CountdownLabel( final CountdownModel model, int fontSize ) {
         model_ = model;
+        isRefreshPending_ = new AtomicBoolean();
+        refresher_ = new Runnable() {
+            public void run() {
+                isRefreshPending_.set( false );
+                applyState( model_.getState() );
+            }
+        };
         setOpaque( true );
         setFont( new Font( Font.MONOSPACED, Font.BOLD, fontSize ) );
         int g0 = (int) ( fontSize / 12 );
@@ -34,19 +45,47 @@ public class CountdownLabel extends JLabel {
             BorderFactory.createCompoundBorder(
                 BorderFactory.createLineBorder( Color.DARK_GRAY, g0 ),
                 BorderFactory.createEmptyBorder( g1, g2, g1, g2 ) ) );
-        model.addChangeListener( new ChangeListener() {
-            public void stateChanged( ChangeEvent evt ) {
-                updateCounterState();
+        model.addCountdownListener( new CountdownAdapter() {
+            @Override
+            public void textChanged( CountdownModel model, String oldText,
+                                     String newText ) {
+                refresh();
+            }
+            @Override
+            public void statusChanged( CountdownModel model, Status oldStatus,
+                                       Status newStatus ) {
+                refresh();
+            }
+            @Override
+            public void blinkChanged( CountdownModel model, boolean oldPhase,
+                                      boolean newPhase ) {
+                refresh();
             }
         } );
-        updateCounterState();
+        applyState( model.getState() );
+    }
+
+    /**
+     * Brings the visual state up to date with the model.
+     * If invoked off the Event Dispatch Thread, the update is deferred,
+     * and multiple pending updates are coalesced.
+     */
+    private void refresh() {
+        if ( EventQueue.isDispatchThread() ) {
+            applyState( model_.getState() );
+        }
+        else if ( isRefreshPending_.compareAndSet( false, true ) ) {
+            EventQueue.invokeLater( refresher_ );
+        }
     }
 
     /**
-     * Updates visual state if there may have been a change.
+     * Sets the visual state from a model state snapshot.
+     *
+     * @param  state  model state
      */
-    private void updateCounterState() {
-        setText( model_.getCountdownText() );
-        setBackground( model_.getCountdownColor() );
+    private void applyState( CountdownModel.State state ) {
+        setText( state.getText() );
+        setBackground( state.getColor() );
     }
 }
@@ -0,0 +1,64 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.EventListener;
+
+/**
+ * Listener for changes in the displayed state of a CountdownModel.
+ * Each method is only invoked when the relevant part of the state
+ * has actually changed, and is given both the old and new values.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ * @see      CountdownAdapter
+ */
+public interface CountdownListener extends EventListener {
+
+    /**
+     * Invoked when the countdown text changes.
+     *
+     * @param  model  source model
+     * @param  oldText  previous text, may be null
+     * @param  newText  new text
+     */
+    void textChanged( CountdownModel model, String oldText, String newText );
+
+    /**
+     * Invoked when the countdown status changes.
+     *
+     * @param  model  source model
+     * @param  oldStatus  previous status, may be null
+     * @param  newStatus  new status, may be null
+     */
+    void statusChanged( CountdownModel model, Status oldStatus,
+                        Status newStatus );
+
+    /**
+     * Invoked when the blink phase changes.
+     * The phase only alternates during danger status;
+     * otherwise it is false.
+     *
+     * @param  model  source model
+     * @param  oldPhase  previous blink phase
+     * @param  newPhase  new blink phase
+     */
+    void blinkChanged( CountdownModel model, boolean oldPhase,
+                       boolean newPhase );
+
+    /**
+     * Invoked when the countdown is reset to its full time.
+     * This happens whether or not any of the displayed state changes.
+     *
+     * @param  model  source model
+     */
+    void countdownReset( CountdownModel model );
+
+    /**
+     * Invoked when the deadline is moved other than by a reset,
+     * for instance when it is brought forward by a shorter countdown time,
+     * or set explicitly when a countdown is resumed.
+     * This happens whether or not any of the displayed state changes.
+     *
+     * @param  model  source model
+     */
+    void deadlineChanged( CountdownModel model );
+}
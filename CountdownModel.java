@@ -1,12 +1,10 @@
 package uk.ac.bristol.star.deadman;
 
 import java.awt.Color;
-import java.awt.event.ActionEvent;
-import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
@@ -14,33 +12,118 @@ import javax.swing.event.ChangeListener;
  * Object that counts down to zero and messages a given alert instance
  * as appropriate.  It also serves as the model for a CountdownPanel.
  *
+ * <p>Updates are driven by a {@link TimingWheel}, which is normally
+ * shared between all the models in the JVM, so that many countdowns
+ * can run without each one polling on its own timer.
+ * By default the model is event-driven: after each update it works out
+ * when the displayed state will next change (text, status or blink phase)
+ * and schedules a single wakeup for then.  Alternatively it can be
+ * set to poll at a fixed interval.
+ * All timing uses the wheel's {@link Clock}, which by default is
+ * monotonic, so that adjustments to the system wall clock do not
+ * shorten or stretch the countdown.
+ *
+ * <p>The displayed states for each second of the countdown, up to
+ * {@link #STATE_TABLE_SECONDS}, are prepared whenever the countdown
+ * times are set, and in danger status the state just alternates between
+ * two values, so that once running, updates do not allocate memory
+ * except while more than that time remains.
+ *
+ * <p>This class is thread-safe; in particular the countdown may be
+ * reset from any thread.  The displayed state is published as an
+ * immutable {@link State} object, so readers never block.
+ * Updates are serialized, but listeners and the alert are not
+ * messaged while the update lock is held, so a slow or re-entrant
+ * listener cannot hold up or deadlock the ticking thread or a reset.
+ * Notifications are queued as part of each update and delivered
+ * in order by the thread that performs the update, which is usually
+ * the wheel's dispatch thread; if another thread is already
+ * delivering notifications, that thread delivers the new ones too.
+ *
  * @author    Mark Taylor
  * @since     27 Jul 2016
  */
 public class CountdownModel {
 
     private final Alert alert_;
-    private final Timer timer_;
-    private final List<ChangeListener> listeners_;
-    private long zeroEpoch_;
-    private int resetSec_ = 30 * 60;
-    private int warningSec_ = 3 * 60;
-    private String text_;
-    private Color color_;
+    private final Clock clock_;
+    private final TimingWheel.Entry tickEntry_;
+    private final Object updateLock_;
+    private final ChangeEvent changeEvent_;
+    private final char[] textBuf_;
+    private final AtomicLong zeroEpoch_;
+    private final AtomicLong wakeupCount_;
+    private Event[] events_;
+    private long evHead_;
+    private long evTail_;
+    private boolean isNotifying_;
+    private volatile ChangeListener[] listeners_;
+    private volatile CountdownListener[] countdownListeners_;
+    private volatile State state_;
+    private State prevState_;
+    private State[] safeStates_;
+    private State[] warningStates_;
+    private int tableWarningSec_;
+    private volatile int resetSec_ = 30 * 60;
+    private volatile int warningSec_ = 3 * 60;
+    private volatile boolean isRunning_;
+    private volatile boolean isEventDriven_;
+
+    /** Update interval in milliseconds when not event-driven. */
+    public static final int POLL_MILLIS = 100;
+
+    /** Maximum number of characters written by formatMillis. */
+    public static final int MAX_TEXT_LENGTH = 26;
+
+    /** Maximum displayed time in seconds covered by the state table. */
+    public static final int STATE_TABLE_SECONDS = 60 * 60;
+
+    /** Period in milliseconds of the colour blink in danger status. */
+    private static final int BLINK_MILLIS = 200;
+    private static final int EVENT_STATE = 1;
+    private static final int EVENT_ALERT = 2;
+    private static final int EVENT_RESET = 3;
+    private static final int EVENT_DEADLINE = 4;
     private static final Logger logger_ =
         Logger.getLogger( CountdownModel.class.getName() );
 
     /**
-     * Constructor.
+     * Constructs a model driven by the shared timing wheel.
      *
      * @param  alert  object that will be notified of status updates
      */
     public CountdownModel( Alert alert ) {
+        this( alert, TimingWheel.getSharedInstance() );
+    }
+
+    /**
+     * Constructs a model driven by a given timing wheel.
+     * The wheel's dispatcher determines the thread on which
+     * updates, and hence listener and alert notifications, take place,
+     * and the wheel's clock is used for all countdown timing.
+     *
+     * @param  alert  object that will be notified of status updates
+     * @param  wheel  timing wheel that schedules updates
+     */
+    public CountdownModel( Alert alert, TimingWheel wheel ) {
         alert_ = alert;
-        listeners_ = new ArrayList<ChangeListener>();
-        timer_ = new Timer( 100, new ActionListener() {
-            public void actionPerformed( ActionEvent evt ) {
-                updateTime();
+        clock_ = wheel.getClock();
+        updateLock_ = new Object();
+        listeners_ = new ChangeListener[ 0 ];
+        countdownListeners_ = new CountdownListener[ 0 ];
+        changeEvent_ = new ChangeEvent( this );
+        textBuf_ = new char[ MAX_TEXT_LENGTH ];
+        zeroEpoch_ = new AtomicLong();
+        wakeupCount_ = new AtomicLong();
+        events_ = createEvents( 16 );
+        isEventDriven_ = true;
+        buildStateTable();
+        tickEntry_ = wheel.createEntry( new Runnable() {
+            public void run() {
+                if ( isRunning_ ) {
+                    wakeupCount_.incrementAndGet();
+                    updateTime();
+                }
             }
         } );
         resetZero();
@@ -50,15 +133,73 @@ public class CountdownModel {
      * Resets the counter and starts the countdown.
      */
     public void start() {
-        resetZero();
-        timer_.start();
+        synchronized ( updateLock_ ) {
+            isRunning_ = true;
+            reset();
+        }
+        deliverEvents();
+    }
+
+    /**
+     * Starts the countdown with a given amount of time remaining,
+     * rather than the full reset time.
+     * This can be used to resume an interrupted countdown.
+     * A negative value means the zero point has already passed,
+     * and will generally lead straight to danger status.
+     *
+     * @param  remainingMillis  milliseconds until zero
+     * @see    #getRemainingMillis
+     */
+    public void resume( long remainingMillis ) {
+        synchronized ( updateLock_ ) {
+            isRunning_ = true;
+            zeroEpoch_.set( clock_.currentMillis() + remainingMillis );
+            update();
+            queueEvent( EVENT_DEADLINE, null, null, null );
+        }
+        deliverEvents();
     }
 
     /**
      * Stops the countdown.
      */
     public void stop() {
-        timer_.stop();
+        synchronized ( updateLock_ ) {
+            isRunning_ = false;
+            tickEntry_.cancel();
+        }
+    }
+
+    /**
+     * Sets whether updates are event-driven or polled.
+     * If true, the model wakes up only when something visible changes;
+     * if false, it wakes up every {@link #POLL_MILLIS} milliseconds.
+     *
+     * @param  isEventDriven  true for event-driven updates
+     */
+    public void setEventDriven( boolean isEventDriven ) {
+        isEventDriven_ = isEventDriven;
+        updateTime();
+    }
+
+    /**
+     * Indicates whether updates are event-driven or polled.
+     *
+     * @return  true for event-driven updates
+     */
+    public boolean isEventDriven() {
+        return isEventDriven_;
+    }
+
+    /**
+     * Returns the number of timed wakeups this model has had since
+     * it was created.  This can be used to monitor how much work
+     * the countdown is doing.
+     *
+     * @return  wakeup count
+     */
+    public long getWakeupCount() {
+        return wakeupCount_.get();
     }
 
     /**
@@ -67,11 +208,15 @@ public class CountdownModel {
      * @param  resetSec   full countdown time in seconds
      */
     public void setResetSeconds( int resetSec ) {
-        resetSec_ = resetSec;
-        if ( warningSec_ > resetSec_ ) {
-            warningSec_ = resetSec_;
+        synchronized ( updateLock_ ) {
+            resetSec_ = resetSec;
+            if ( warningSec_ > resetSec ) {
+                warningSec_ = resetSec;
+            }
+            buildStateTable();
+            reset();
         }
-        resetZero();
+        deliverEvents();
     }
 
     /**
@@ -89,11 +234,15 @@ public class CountdownModel {
      * @param  warningSec  countdown time to warning in seconds
      */
     public void setWarningSeconds( int warningSec ) {
-        warningSec_ = warningSec;
-        if ( warningSec_ > resetSec_ ) {
-            resetSec_ = warningSec_;
+        synchronized ( updateLock_ ) {
+            warningSec_ = warningSec;
+            if ( warningSec > resetSec_ ) {
+                resetSec_ = warningSec;
+            }
+            buildStateTable();
+            reset();
         }
-        resetZero();
+        deliverEvents();
     }
 
     /**
@@ -105,13 +254,77 @@ public class CountdownModel {
         return warningSec_;
     }
 
+    /**
+     * Sets the countdown and warning times without resetting the counter.
+     * The current deadline is kept, except that if it is further away
+     * than the new full countdown time it is brought forward to match,
+     * in which case listeners are told that the deadline has changed.
+     * The new times apply in full from the next reset.
+     *
+     * @param  resetSec   full countdown time in seconds
+     * @param  warningSec  countdown time to warning in seconds;
+     *                     reduced to resetSec if larger
+     */
+    public void setTimes( int resetSec, int warningSec ) {
+        synchronized ( updateLock_ ) {
+            resetSec_ = resetSec;
+            warningSec_ = Math.min( warningSec, resetSec );
+            buildStateTable();
+            long maxZero = clock_.currentMillis() + resetSec * 1000L;
+            boolean isMoved = zeroEpoch_.get() > maxZero;
+            if ( isMoved ) {
+                zeroEpoch_.set( maxZero );
+            }
+            update();
+            if ( isMoved ) {
+                queueEvent( EVENT_DEADLINE, null, null, null );
+            }
+        }
+        deliverEvents();
+    }
+
     /**
      * Resets the counter.
      */
     public void resetZero() {
-        zeroEpoch_ = System.currentTimeMillis() + resetSec_ * 1000;
-        alert_.setStatus( null );
-        updateTime();
+        synchronized ( updateLock_ ) {
+            reset();
+        }
+        deliverEvents();
+    }
+
+    /**
+     * Resets the counter and queues the resulting notifications.
+     * Must be called with the update lock held.
+     */
+    private void reset() {
+        Latencies.markReset();
+        zeroEpoch_.set( clock_.currentMillis() + resetSec_ * 1000L );
+        queueEvent( EVENT_ALERT, null, null, null );
+        update();
+        queueEvent( EVENT_RESET, null, null, null );
+    }
+
+    /**
+     * Returns the number of milliseconds until the countdown
+     * reaches its zero point.  Danger status starts a little under
+     * a second after that, when the displayed time has been zero
+     * for a whole second.  The result is negative if the zero point
+     * has passed.
+     *
+     * @return   milliseconds until zero
+     */
+    public long getRemainingMillis() {
+        return zeroEpoch_.get() - clock_.currentMillis();
+    }
+
+    /**
+     * Returns a snapshot of the current displayed state.
+     *
+     * @return  immutable state object
+     */
+    public State getState() {
+        return state_;
     }
 
     /**
@@ -120,7 +333,7 @@ public class CountdownModel {
      * @return   countdown label text
      */
     public String getCountdownText() {
-        return text_;
+        return state_.text_;
     }
 
     /**
@@ -129,17 +342,56 @@ public class CountdownModel {
      * @return   countdown indicator colour
      */
     public Color getCountdownColor() {
-        return color_;
+        return state_.color_;
+    }
+
+    /**
+     * Returns the current status.
+     *
+     * @return  status, may be null
+     */
+    public Status getStatus() {
+        return state_.status_;
+    }
+
+    /**
+     * Returns the current blink phase.
+     * This alternates during danger status, and is otherwise false.
+     *
+     * @return  blink phase
+     */
+    public boolean getBlinkPhase() {
+        return state_.blinkPhase_;
+    }
+
+    /**
+     * Adds a listener that will be messaged when this counter's
+     * text, status or blink phase changes.
+     *
+     * @param   l   listener
+     */
+    public synchronized void addCountdownListener( CountdownListener l ) {
+        countdownListeners_ = addElement( countdownListeners_, l );
+    }
+
+    /**
+     * Removes a countdown listener added previously.
+     *
+     * @param   l   listener
+     */
+    public synchronized void removeCountdownListener( CountdownListener l ) {
+        countdownListeners_ = removeElement( countdownListeners_, l );
     }
 
     /**
      * Adds a listener that will be messaged if this counter's
      * countdown colour or text has changed.
+     * Listeners are not messaged if neither has changed.
      *
      * @param   l   listener
      */
-    public void addChangeListener( ChangeListener l ) {
-        listeners_.add( l );
+    public synchronized void addChangeListener( ChangeListener l ) {
+        listeners_ = addElement( listeners_, l );
     }
 
     /**
@@ -147,36 +399,301 @@ public class CountdownModel {
      *
      * @param   l   listener
      */
-    public void removeChangeListener( ChangeListener l ) {
-        listeners_.remove( l );
+    public synchronized void removeChangeListener( ChangeListener l ) {
+        listeners_ = removeElement( listeners_, l );
     }
 
     /**
-     * Updates current state for current time.
+     * Updates current state for current time, and messages listeners
+     * and the alert.
+     * In the steady state, including ticks that change the displayed text,
+     * this does not allocate any memory as long as the displayed time
+     * is within the state table; see the TickAllocCheck harness.
+     * The dispatcher that runs wheel tasks may allocate independently.
      */
     private void updateTime() {
-        long millis = zeroEpoch_ - System.currentTimeMillis() + 999;
-        text_ = formatMillis( Math.max( 0, millis ) );
+        synchronized ( updateLock_ ) {
+            update();
+        }
+        deliverEvents();
+    }
+
+    /**
+     * Updates current state for current time, and queues notifications
+     * for delivery by {@link #deliverEvents}.
+     * Must be called with the update lock held.
+     */
+    private void update() {
+        long now = clock_.currentMillis();
+        long millis = zeroEpoch_.get() - now + 999;
+        int nc = formatMillis( Math.max( 0, millis ), textBuf_, 0 );
         Status status = getStatus( millis );
-        color_ = getCountdownColor( status );
-        ChangeEvent evt = new ChangeEvent( this );
-        for ( ChangeListener l : listeners_ ) {
-            l.stateChanged( evt );
+        boolean blinkPhase = status == Status.DANGER
+                          && ( now / BLINK_MILLIS ) % 2 != 0;
+        State oldState = state_;
+        if ( oldState == null ||
+             ! oldState.matches( textBuf_, nc, status, blinkPhase ) ) {
+
+            /* Use the prepared state if there is one.  Otherwise reuse
+             * the previous state if possible; in danger status
+             * the state just alternates between two values. */
+            State state = getTableState( millis, status );
+            if ( state == null ) {
+                state = prevState_ != null &&
+                        prevState_.matches( textBuf_, nc, status,
+                                            blinkPhase )
+                      ? prevState_
+                      : new State( oldState != null &&
+                                   matches( textBuf_, nc, oldState.text_ )
+                                       ? oldState.text_
+                                       : new String( textBuf_, 0, nc ),
+                                   status, blinkPhase );
+            }
+            prevState_ = oldState;
+            state_ = state;
+            if ( status == Status.DANGER && oldState != null &&
+                 oldState.status_ != Status.DANGER ) {
+                Latencies.markAlarm();
+
+                /* Record how late the timer was, unless this is a
+                 * resumed session that starts out past zero. */
+                if ( oldState.status_ == Status.WARNING ) {
+                    Latencies.record( "countdown.detect",
+                                      -millis * 1000000L );
+                }
+            }
+            if ( oldState != null ) {
+                queueEvent( EVENT_STATE, oldState, state, null );
+            }
+        }
+        queueEvent( EVENT_ALERT, null, null, status );
+        if ( isRunning_ ) {
+            tickEntry_.schedule( isEventDriven_
+                               ? getChangeDelay( millis, status, now )
+                               : POLL_MILLIS );
         }
-        alert_.setStatus( status );
     }
 
     /**
-     * Returns the colour associated with a given status at the current time.
+     * Returns the prepared state for a given time and status.
+     * Must be called with the update lock held.
+     *
+     * @param  millis  milliseconds until zero, as used by updateTime
+     * @param  status  status for that time
+     * @return  state, or null if there is no prepared state
+     */
+    private State getTableState( long millis, Status status ) {
+        if ( millis <= 0 || status == Status.DANGER ) {
+            return null;
+        }
+        long sec = millis / 1000;
+        State[] states = status == null ? safeStates_ : warningStates_;
+        return sec < states.length ? states[ (int) sec ] : null;
+    }
+
+    /**
+     * Prepares the states for each displayed second of the countdown
+     * that is within the table range, if the countdown times
+     * have changed since this was last done.
+     * Must be called with the update lock held, or during construction.
+     */
+    private void buildStateTable() {
+        int nsec = Math.min( resetSec_, STATE_TABLE_SECONDS ) + 1;
+        int warnSec = warningSec_;
+        if ( safeStates_ != null && safeStates_.length == nsec &&
+             tableWarningSec_ == warnSec ) {
+            return;
+        }
+        State[] safeStates = new State[ nsec ];
+        State[] warningStates = new State[ nsec ];
+        char[] buf = new char[ MAX_TEXT_LENGTH ];
+        for ( int is = 0; is < nsec; is++ ) {
+            String text = new String( buf, 0, formatMillis( is * 1000L,
+                                                            buf, 0 ) );
+            if ( is >= warnSec ) {
+                safeStates[ is ] = new State( text, null, false );
+            }
+            if ( is <= warnSec ) {
+                warningStates[ is ] =
+                    new State( text, Status.WARNING, false );
+            }
+        }
+        safeStates_ = safeStates;
+        warningStates_ = warningStates;
+        tableWarningSec_ = warnSec;
+    }
+
+    /**
+     * Adds a notification to the queue of those awaiting delivery.
+     * Queue entries are reused, so this does not normally allocate memory.
+     * Must be called with the update lock held.
+     *
+     * @param  type  event type code
+     * @param  oldState  previous state, for state change events
+     * @param  newState  new state, for state change events
+     * @param  status   status, for alert events
+     */
+    private void queueEvent( int type, State oldState, State newState,
+                             Status status ) {
+        if ( evTail_ - evHead_ == events_.length ) {
+            Event[] events = createEvents( events_.length * 2 );
+            for ( long i = evHead_; i < evTail_; i++ ) {
+                Event ev = events_[ (int) i & ( events_.length - 1 ) ];
+                events[ (int) i & ( events.length - 1 ) ].set( ev.type_,
+                                                               ev.oldState_,
+                                                               ev.newState_,
+                                                               ev.status_ );
+            }
+            events_ = events;
+        }
+        events_[ (int) evTail_ & ( events_.length - 1 ) ]
+               .set( type, oldState, newState, status );
+        evTail_++;
+    }
+
+    /**
+     * Delivers queued notifications to the listeners and alert, in order.
+     * Must be called without the update lock held.
+     * If another thread is already delivering notifications,
+     * or this thread is already doing so further up the stack,
+     * this returns at once and the new notifications are delivered
+     * by that call instead.
+     */
+    private void deliverEvents() {
+        synchronized ( updateLock_ ) {
+            if ( isNotifying_ ) {
+                return;
+            }
+            isNotifying_ = true;
+        }
+        boolean isDone = false;
+        try {
+            while ( true ) {
+                int type;
+                State oldState;
+                State newState;
+                Status status;
+                synchronized ( updateLock_ ) {
+                    if ( evHead_ == evTail_ ) {
+                        isNotifying_ = false;
+                        isDone = true;
+                        return;
+                    }
+                    Event ev = events_[ (int) evHead_
+                                        & ( events_.length - 1 ) ];
+                    type = ev.type_;
+                    oldState = ev.oldState_;
+                    newState = ev.newState_;
+                    status = ev.status_;
+                    ev.set( 0, null, null, null );
+                    evHead_++;
+                }
+                try {
+                    if ( type == EVENT_STATE ) {
+                        fireStateChanged( oldState, newState );
+                    }
+                    else if ( type == EVENT_ALERT ) {
+                        alert_.setStatus( status );
+                    }
+                    else if ( type == EVENT_RESET ) {
+                        CountdownListener[] cls = countdownListeners_;
+                        for ( int il = 0; il < cls.length; il++ ) {
+                            cls[ il ].countdownReset( this );
+                        }
+                    }
+                    else if ( type == EVENT_DEADLINE ) {
+                        CountdownListener[] cls = countdownListeners_;
+                        for ( int il = 0; il < cls.length; il++ ) {
+                            cls[ il ].deadlineChanged( this );
+                        }
+                    }
+                }
+                catch ( RuntimeException e ) {
+                    logger_.log( Level.WARNING, "Countdown listener failed",
+                                 e );
+                }
+            }
+        }
+        finally {
+            if ( ! isDone ) {
+                synchronized ( updateLock_ ) {
+                    isNotifying_ = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Informs listeners about a change of state.
+     *
+     * @param  oldState  previous state
+     * @param  newState  new state
+     */
+    private void fireStateChanged( State oldState, State newState ) {
+        String oldText = oldState.text_;
+        String newText = newState.text_;
+        Status oldStatus = oldState.status_;
+        Status newStatus = newState.status_;
+        boolean oldBlink = oldState.blinkPhase_;
+        boolean newBlink = newState.blinkPhase_;
+        CountdownListener[] cls = countdownListeners_;
+        for ( int il = 0; il < cls.length; il++ ) {
+            CountdownListener l = cls[ il ];
+            if ( ! newText.equals( oldText ) ) {
+                l.textChanged( this, oldText, newText );
+            }
+            if ( newStatus != oldStatus ) {
+                l.statusChanged( this, oldStatus, newStatus );
+            }
+            if ( newBlink != oldBlink ) {
+                l.blinkChanged( this, oldBlink, newBlink );
+            }
+        }
+        ChangeListener[] ls = listeners_;
+        for ( int il = 0; il < ls.length; il++ ) {
+            ls[ il ].stateChanged( changeEvent_ );
+        }
+    }
+
+    /**
+     * Returns the time until the next change in displayed state.
+     * That is the earliest of the next change in displayed seconds,
+     * the warning threshold, the zero crossing, and the next
+     * change of blink phase.
+     *
+     * @param  millis  milliseconds until zero, as used by updateTime
+     * @param  status  current status
+     * @param  now     current time
+     * @return   delay in milliseconds until next visible change, &gt;0
+     */
+    private long getChangeDelay( long millis, Status status, long now ) {
+        long delay = Long.MAX_VALUE;
+        if ( millis >= 1000 ) {
+            delay = Math.min( delay, millis % 1000 + 1 );
+        }
+        if ( status == null ) {
+            delay = Math.min( delay, millis - 1000L * warningSec_ );
+        }
+        if ( status != Status.DANGER ) {
+            delay = Math.min( delay, millis );
+        }
+        else {
+            delay = Math.min( delay, BLINK_MILLIS - now % BLINK_MILLIS );
+        }
+        return Math.max( 1, delay );
+    }
+
+    /**
+     * Returns the colour associated with a given status and blink phase.
      *
      * @param  status  status
+     * @param  blinkPhase   blink phase
      * @return   colour
      */
-    private Color getCountdownColor( Status status ) {
+    private static Color getCountdownColor( Status status,
+                                            boolean blinkPhase ) {
         if ( status == Status.DANGER ) {
-            return ( System.currentTimeMillis() / 200 ) % 2 == 0
-                 ? Color.RED
-                 : Color.PINK;
+            return blinkPhase ? Color.PINK : Color.RED;
         }
         else if ( status == Status.WARNING ) {
             return Color.ORANGE;
@@ -204,6 +721,53 @@ public class CountdownModel {
         }
     }
 
+    /**
+     * Returns an array of new empty notification queue entries.
+     *
+     * @param  n  array length, must be a power of two
+     * @return  new array
+     */
+    private static Event[] createEvents( int n ) {
+        Event[] events = new Event[ n ];
+        for ( int i = 0; i < n; i++ ) {
+            events[ i ] = new Event();
+        }
+        return events;
+    }
+
+    /**
+     * Returns a copy of an array with an element appended.
+     *
+     * @param  array  input array
+     * @param  el   element to add
+     * @return   new array
+     */
+    private static <T> T[] addElement( T[] array, T el ) {
+        T[] array1 = Arrays.copyOf( array, array.length + 1 );
+        array1[ array.length ] = el;
+        return array1;
+    }
+
+    /**
+     * Returns a copy of an array with the first occurrence of
+     * an element removed.
+     *
+     * @param  array  input array
+     * @param  el   element to remove
+     * @return   new array, or the input array if el was not present
+     */
+    private static <T> T[] removeElement( T[] array, T el ) {
+        for ( int i = 0; i < array.length; i++ ) {
+            if ( array[ i ] == el ) {
+                T[] array1 = Arrays.copyOf( array, array.length - 1 );
+                System.arraycopy( array, i + 1, array1, i,
+                                  array.length - i - 1 );
+                return array1;
+            }
+        }
+        return array;
+    }
+
     /**
      * Formats a time in milliseconds as sexagesimal.
      *
@@ -212,23 +776,170 @@ public class CountdownModel {
      * @return  formatted string
      */
     public static String formatMillis( long positiveMillis ) {
+        char[] buf = new char[ MAX_TEXT_LENGTH ];
+        return new String( buf, 0, formatMillis( positiveMillis, buf, 0 ) );
+    }
+
+    /**
+     * Formats a time in milliseconds as sexagesimal into a supplied buffer.
+     * No memory is allocated.
+     *
+     * @param  positiveMillis   a time interval in milliseconds,
+     *                          must be positive
+     * @param  buf   buffer to receive the characters; there must be room
+     *               for {@link #MAX_TEXT_LENGTH} characters after offset
+     * @param  off   offset into buf at which to start writing
+     * @return  number of characters written
+     */
+    public static int formatMillis( long positiveMillis, char[] buf,
+                                    int off ) {
         long cSec = positiveMillis / 1000;
         long cMin = cSec / 60;
         long cHour = cMin / 60;
         int nSec = (int) ( cSec % 60 );
         int nMin = (int) ( cMin % 60 );
-        int nHour = (int) cHour;
-        String sSec = ( nSec <= 9 ? "0" : "" ) + Integer.toString( nSec );
-        String sMin = ( nMin <= 9 ? "0" : "" ) + Integer.toString( nMin );
-        String sHour = cHour > 0 ? Integer.toString( nHour ) : "";
-        StringBuffer sbuf = new StringBuffer();
-        if ( sHour.length() > 0 ) {
-            sbuf.append( sHour )
-                .append( ":" );
-        }
-        sbuf.append( sMin )
-            .append( ":" )
-            .append( sSec );
-        return sbuf.toString();
+        int ic = off;
+        if ( cHour > 0 ) {
+            int nd = 0;
+            for ( long h = cHour; h > 0; h /= 10 ) {
+                nd++;
+            }
+            long h = cHour;
+            for ( int id = nd - 1; id >= 0; id-- ) {
+                buf[ ic + id ] = (char) ( '0' + (int) ( h % 10 ) );
+                h /= 10;
+            }
+            ic += nd;
+            buf[ ic++ ] = ':';
+        }
+        buf[ ic++ ] = (char) ( '0' + nMin / 10 );
+        buf[ ic++ ] = (char) ( '0' + nMin % 10 );
+        buf[ ic++ ] = ':';
+        buf[ ic++ ] = (char) ( '0' + nSec / 10 );
+        buf[ ic++ ] = (char) ( '0' + nSec % 10 );
+        return ic - off;
+    }
+
+    /**
+     * Indicates whether the content of a character buffer is the same
+     * as a given string.
+     *
+     * @param  buf  buffer
+     * @param  nc   number of characters in buffer
+     * @param  txt  string, may be null
+     * @return  true iff txt has the same content as buf
+     */
+    private static boolean matches( char[] buf, int nc, String txt ) {
+        if ( txt == null || txt.length() != nc ) {
+            return false;
+        }
+        for ( int i = 0; i < nc; i++ ) {
+            if ( buf[ i ] != txt.charAt( i ) ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reusable notification queue entry.
+     */
+    private static class Event {
+        int type_;
+        State oldState_;
+        State newState_;
+        Status status_;
+
+        /**
+         * Sets the content of this entry.
+         *
+         * @param  type  event type code
+         * @param  oldState  previous state
+         * @param  newState  new state
+         * @param  status   status
+         */
+        void set( int type, State oldState, State newState, Status status ) {
+            type_ = type;
+            oldState_ = oldState;
+            newState_ = newState;
+            status_ = status;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the displayed state of a CountdownModel.
+     */
+    public static class State {
+
+        private final String text_;
+        private final Status status_;
+        private final boolean blinkPhase_;
+        private final Color color_;
+
+        /**
+         * Constructor.
+         *
+         * @param  text  countdown text
+         * @param  status  status
+         * @param  blinkPhase  blink phase
+         */
+        private State( String text, Status status, boolean blinkPhase ) {
+            text_ = text;
+            status_ = status;
+            blinkPhase_ = blinkPhase;
+            color_ = getCountdownColor( status, blinkPhase );
+        }
+
+        /**
+         * Returns the countdown text.
+         *
+         * @return  text
+         */
+        public String getText() {
+            return text_;
+        }
+
+        /**
+         * Returns the status.
+         *
+         * @return  status, may be null
+         */
+        public Status getStatus() {
+            return status_;
+        }
+
+        /**
+         * Returns the blink phase.
+         *
+         * @return  blink phase
+         */
+        public boolean getBlinkPhase() {
+            return blinkPhase_;
+        }
+
+        /**
+         * Returns the countdown indicator colour.
+         *
+         * @return  colour
+         */
+        public Color getColor() {
+            return color_;
+        }
+
+        /**
+         * Indicates whether this state has the given content.
+         *
+         * @param  buf  buffer containing text
+         * @param  nc   number of characters in text
+         * @param  status  status
+         * @param  blinkPhase  blink phase
+         * @return  true iff this state matches the arguments
+         */
+        boolean matches( char[] buf, int nc, Status status,
+                         boolean blinkPhase ) {
+            return status == status_
+                && blinkPhase == blinkPhase_
+                && CountdownModel.matches( buf, nc, text_ );
+        }
     }
 }
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.lang.reflect.InvocationTargetException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,6 +20,7 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.JFrame;
+import javax.swing.SwingUtilities;
 
 /**
  * Harness class for the Dead Man's Timer application.
@@ -34,6 +36,7 @@ public class Deadman {
         Logger.getLogger( Deadman.class.getName() );
 
     public static void main( String[] args ) throws IOException {
+        StartupTimer.mark( StartupTimer.MAIN );
 
         /* Configure logging. */
         Logger logger0 = Logger.getLogger( "" );
@@ -42,33 +45,19 @@ public class Deadman {
         /* Log version. */
         logger0.info( "Deadman version " + getVersion() );
 
-        /* Prepare usage message. */
-        StringBuffer ubuf = new StringBuffer()
-              .append( "\n   Usage:" )
-              .append( "\n      " )
-              .append( Deadman.class.getSimpleName() )
-              .append( " [-help]" )
-              .append( " [-writeconfig]" )
-              .append( " <name>=<value> ..." )
-              .append( "\n\n   Options:" );
         ConfigKey<?>[] keys = DmConfig.KEYS;
-        for ( ConfigKey<?> key : keys ) {
-            ubuf.append( "\n      " )
-                .append( key.toString() );
-        }
-        ubuf.append( "\n" );
-        String usage = ubuf.toString();
 
         /* Prepare config map from command-line arguments. */
         List<String> argList = new ArrayList<String>( Arrays.asList( args ) );
         Map<String,String> argMap = new LinkedHashMap<String,String>();
+        boolean isTimeStartup = false;
         for ( Iterator<String> it = argList.iterator(); it.hasNext(); ) {
             String arg = it.next();
             int ieq = arg.indexOf( '=' );
             if ( arg.startsWith( "-h" ) ||
                  arg.startsWith( "--h" ) ) {
                 it.remove();
-                System.err.println( usage );
+                System.err.println( getUsage( keys ) );
                 System.exit( 0 );
             }
             else if ( "-writeconfig".equals( arg ) ) {
@@ -78,6 +67,10 @@ public class Deadman {
                 }
                 System.exit( 0 );
             }
+            else if ( "-timestartup".equals( arg ) ) {
+                it.remove();
+                isTimeStartup = true;
+            }
             else if ( ieq > 0 ) {
                 it.remove();
                 String name = arg.substring( 0, ieq );
@@ -85,12 +78,12 @@ public class Deadman {
                 argMap.put( name, value );
             }
             else {
-                System.err.println( usage );
+                System.err.println( getUsage( keys ) );
                 System.exit( 1 );
             }
         }
         if ( argList.size() > 0 ) {
-            System.err.println( usage );
+            System.err.println( getUsage( keys ) );
             System.exit( 1 );
         }
         ConfigMap cmap = new ConfigMap();
@@ -145,14 +138,26 @@ public class Deadman {
             }
         }
 
-        /* Log configuration. */
-        logger_.info( "Initial configuration: ");
-        for ( String line : cmap.getPropertyLines( keys ) ) {
-            logger_.info( line );
+        StartupTimer.mark( StartupTimer.CONFIG );
+
+        /* Open the countdown journal, and find out whether a previous
+         * session was interrupted. */
+        CountdownJournal journal = null;
+        CountdownJournal.Record interrupted = null;
+        String journalFile = cmap.get( DmConfig.JOURNAL_FILE );
+        if ( journalFile != null && journalFile.trim().length() > 0 ) {
+            try {
+                journal = new CountdownJournal( new File( journalFile ) );
+                interrupted = journal.readInterrupted();
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING,
+                             "Can't use journal file " + journalFile, e );
+            }
         }
 
         /* Set up GUI and post window. */
-        DmPanel dmPanel = new DmPanel( cmap );
+        final DmPanel dmPanel = new DmPanel( cmap, journal );
         JFrame frm = new JFrame();
         frm.setDefaultCloseOperation( JFrame.DISPOSE_ON_CLOSE );
         Container content = frm.getContentPane();
@@ -170,6 +175,84 @@ public class Deadman {
         }
         frm.pack();
         frm.setVisible( true );
+        StartupTimer.mark( StartupTimer.WINDOW );
+
+        /* Log configuration.  This is done after the window is posted
+         * since it requires some slow-loading classes. */
+        logger_.info( "Initial configuration: ");
+        for ( String line : cmap.getPropertyLines( keys ) ) {
+            logger_.info( line );
+        }
+
+        /* If requested, just report how long startup took and exit.
+         * This can also be used for a training run to generate
+         * a class data sharing archive. */
+        if ( isTimeStartup ) {
+            try {
+                dmPanel.awaitArmed();
+            }
+            catch ( InterruptedException e ) {
+                logger_.warning( "Interrupted" );
+            }
+            catch ( InvocationTargetException e ) {
+                logger_.log( Level.WARNING, "Startup failed", e.getCause() );
+            }
+            StartupTimer.logReport();
+            System.exit( 0 );
+        }
+
+        /* Pick up where an interrupted session left off. */
+        if ( interrupted != null ) {
+            final CountdownJournal.Record rec = interrupted;
+            SwingUtilities.invokeLater( new Runnable() {
+                public void run() {
+                    dmPanel.resume( rec );
+                }
+            } );
+        }
+
+        /* Apply later edits of the config file to the running application,
+         * with the command-line arguments still taking precedence. */
+        if ( cmap.get( DmConfig.WATCH_CONFIG ).booleanValue() ) {
+            ConfigWatcher watcher =
+                    new ConfigWatcher( file, keys, argMap,
+                                       new ConfigWatcher.Listener() {
+                public void configChanged( ConfigSnapshot snapshot ) {
+                    dmPanel.reconfigure( snapshot );
+                }
+            } );
+            try {
+                watcher.start();
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING,
+                             "Can't watch config file " + file, e );
+            }
+        }
+    }
+
+    /**
+     * Returns the usage message.
+     *
+     * @param  keys  configuration keys
+     * @return  usage text
+     */
+    private static String getUsage( ConfigKey<?>[] keys ) {
+        StringBuffer ubuf = new StringBuffer()
+              .append( "\n   Usage:" )
+              .append( "\n      " )
+              .append( Deadman.class.getSimpleName() )
+              .append( " [-help]" )
+              .append( " [-writeconfig]" )
+              .append( " [-timestartup]" )
+              .append( " <name>=<value> ..." )
+              .append( "\n\n   Options:" );
+        for ( ConfigKey<?> key : keys ) {
+            ubuf.append( "\n      " )
+                .append( key.toString() );
+        }
+        ubuf.append( "\n" );
+        return ubuf.toString();
     }
 
     public static String getVersion() {
@@ -43,7 +43,7 @@ public class DmConfig {
     /** Key for whether the audio alarm is in effect. */
     public static final ConfigKey<Boolean> AUDIO;
 
-    /** Key giving SMTP server for emails. */
+    /** Key giving SMTP server for emails, as host or host:port. */
     public static final ConfigKey<String> SMTP_SERVER;
 
     /** Key giving From address for email messages. */
@@ -55,6 +55,58 @@ public class DmConfig {
     /** Key giving name of a log file. */
     public static final ConfigKey<String> LOG_FILE;
 
+    /** Key giving name of the countdown journal file. */
+    public static final ConfigKey<String> JOURNAL_FILE;
+
+    /** Key giving directory for the binary event log. */
+    public static final ConfigKey<String> EVENT_LOG_DIR;
+
+    /** Key giving number of days of event log kept before compaction. */
+    public static final ConfigKey<Integer> EVENT_KEEP_DAYS;
+
+    /** Key giving directory for spooling outgoing email. */
+    public static final ConfigKey<String> MAIL_OUTBOX;
+
+    /** Key giving how email delivery is split between recipients. */
+    public static final ConfigKey<Mailer.Fanout> MAIL_FANOUT;
+
+    /** Key giving seconds over which email status changes are coalesced. */
+    public static final ConfigKey<Integer> MAIL_WINDOW_SEC;
+
+    /** Key giving maximum burst of email messages per recipient. */
+    public static final ConfigKey<Integer> MAIL_BURST;
+
+    /** Key giving maximum email messages per recipient per hour. */
+    public static final ConfigKey<Integer> MAIL_PER_HOUR;
+
+    /** Key giving URLs to which status changes are posted as JSON. */
+    public static final ConfigKey<String[]> WEBHOOKS;
+
+    /** Key giving webhook request timeout in milliseconds. */
+    public static final ConfigKey<Integer> WEBHOOK_TIMEOUT;
+
+    /** Key giving maximum number of attempts per webhook request. */
+    public static final ConfigKey<Integer> WEBHOOK_ATTEMPTS;
+
+    /** Key giving escalation tiers, each as minutes:addresses. */
+    public static final ConfigKey<String[]> ESCALATION;
+
+    /** Key giving port for escalation acknowledgements, or 0 for none. */
+    public static final ConfigKey<Integer> ACK_PORT;
+
+    /** Key giving host or address on which acknowledgements are served,
+     *  or "*" for all interfaces. */
+    public static final ConfigKey<String> ACK_HOST;
+
+    /** Key giving seconds between alert latency reports, or 0 for none. */
+    public static final ConfigKey<Integer> LATENCY_LOG_SEC;
+
+    /** Key for whether changes to the config file are applied while running. */
+    public static final ConfigKey<Boolean> WATCH_CONFIG;
+
+    /** Key for whether subsystems are initialised after the window is up. */
+    public static final ConfigKey<Boolean> FAST_START;
+
     /**
      * Known configuration keys.
      */
@@ -68,11 +120,27 @@ public class DmConfig {
         SMTP_SERVER =
             new StringConfigKey( "smtpHost", "smtp-srv.bristol.ac.uk" ),
         SMTP_SENDER =
-            new AddressConfigKey(
-                    "mailSender",
-                    createAddress( "Deadman <astro-deadman@bristol.ac.uk>" ) ),
+            new AddressConfigKey( "mailSender",
+                                  "Deadman <astro-deadman@bristol.ac.uk>" ),
         REQUIRE_EMAIL = new BooleanConfigKey( "requireEmail", true ),
         LOG_FILE = new StringConfigKey( "log", "deadman.log" ),
+        JOURNAL_FILE = new StringConfigKey( "journal", "deadman.journal" ),
+        EVENT_LOG_DIR = new StringConfigKey( "eventLog", "deadman-events" ),
+        EVENT_KEEP_DAYS = new IntegerConfigKey( "eventKeepDays", 31 ),
+        MAIL_OUTBOX = new StringConfigKey( "mailOutbox", "deadman-outbox" ),
+        MAIL_FANOUT = new FanoutConfigKey( "mailFanout", Mailer.Fanout.NONE ),
+        MAIL_WINDOW_SEC = new IntegerConfigKey( "mailWindow", 60 ),
+        MAIL_BURST = new IntegerConfigKey( "mailBurst", 5 ),
+        MAIL_PER_HOUR = new IntegerConfigKey( "mailPerHour", 20 ),
+        WEBHOOKS = new StringsConfigKey( "webhooks", ',', new String[ 0 ] ),
+        WEBHOOK_TIMEOUT = new IntegerConfigKey( "webhookTimeout", 2000 ),
+        WEBHOOK_ATTEMPTS = new IntegerConfigKey( "webhookAttempts", 4 ),
+        ESCALATION = new StringsConfigKey( "escalation", ';', new String[ 0 ] ),
+        ACK_PORT = new IntegerConfigKey( "ackPort", 0 ),
+        ACK_HOST = new StringConfigKey( "ackHost", "localhost" ),
+        LATENCY_LOG_SEC = new IntegerConfigKey( "latencyLog", 3600 ),
+        WATCH_CONFIG = new BooleanConfigKey( "watchConfig", true ),
+        FAST_START = new BooleanConfigKey( "fastStart", true ),
     };
 
     /**
@@ -256,8 +324,27 @@ public class DmConfig {
      * ConfigKey for Address objects.
      */
     private static class AddressConfigKey extends ConfigKey<Address> {
-        AddressConfigKey( String name, Address dflt ) {
-            super( name, Address.class, dflt );
+        private final String dfltTxt_;
+        private volatile Address dfltAddr_;
+
+        /**
+         * Constructor.  The default address is only parsed when it is
+         * first required, so that the mail classes need not be loaded
+         * during class initialisation.
+         *
+         * @param  name  key name
+         * @param  dfltTxt  RFC-822-compliant default address
+         */
+        AddressConfigKey( String name, String dfltTxt ) {
+            super( name, Address.class, null );
+            dfltTxt_ = dfltTxt;
+        }
+        @Override
+        public Address getDefaultValue() {
+            if ( dfltAddr_ == null ) {
+                dfltAddr_ = createAddress( dfltTxt_ );
+            }
+            return dfltAddr_;
         }
         public Address fromString( String txt ) throws ConfigException {
             return addressFromString( txt );
@@ -350,6 +437,31 @@ public class DmConfig {
         }
     }
 
+    /**
+     * Config key for email fanout mode.
+     */
+    private static class FanoutConfigKey extends ConfigKey<Mailer.Fanout> {
+        FanoutConfigKey( String name, Mailer.Fanout dflt ) {
+            super( name, Mailer.Fanout.class, dflt );
+        }
+        public Mailer.Fanout fromString( String txt ) throws ConfigException {
+            for ( Mailer.Fanout fanout : Mailer.Fanout.values() ) {
+                if ( fanout.name().equalsIgnoreCase( txt.trim() ) ) {
+                    return fanout;
+                }
+            }
+            throw new ConfigException( "Not one of "
+                                     + Arrays.toString( Mailer.Fanout.values() )
+                                             .toLowerCase() );
+        }
+        public String toString( Mailer.Fanout value ) {
+            return value.name().toLowerCase();
+        }
+        public ConfigControl<Mailer.Fanout> createControl() {
+            return new TextFieldControl<Mailer.Fanout>( this );
+        }
+    }
+
     /**
      * Config key for an array of typed values.
      *
@@ -1,13 +1,23 @@
 package uk.ac.bristol.star.deadman;
 
 import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.Graphics;
 import java.awt.Window;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
 import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.mail.Address;
 import javax.swing.BorderFactory;
@@ -30,14 +40,38 @@ public class DmPanel extends JPanel {
     private final JTabbedPane tabber_;
     private final FormPanel initer_;
     private final CountdownModel counter_;
-    private final ExitPanel exiter_;
     private final int itIniter_;
     private final int itCounter_;
     private final int itConfiger_;
     private final int itExiter_;
     private final List<Alert> alertList_;
+    private final List<QueuedAlert> channelList_;
+    private final CountdownJournal journal_;
+    private final Mailer.Fanout fanout_;
+    private final int mailWindowSec_;
+    private final int mailBurst_;
+    private final int mailPerHour_;
+    private final List<Mailer> mailerList_;
+    private final FutureTask<Object> startupTask_;
+    private final List<String> startupErrors_;
+    private EventLog eventLog_;
+    private MailOutbox outbox_;
+    private Mailer outboxMailer_;
+    private Alert siren_;
+    private IOException sirenError_;
+    private WebhookAlert webhookAlert_;
+    private Escalator escalator_;
+    private boolean isInstalled_;
+    private boolean isPainted_;
+    private boolean isStartupReported_;
+    private ExitPanel exiter_;
+    private ResetSlider resetSlider_;
+    private volatile ConfigSnapshot config_;
     private Mailer mailer_;
+    private EmailAlert emailAlert_;
     private String userName_;
+    private String contacts_;
+    private int nContact_;
 
     private static final ConfigKey<String> USER_NAME =
         DmConfig.createStringKey( "Name", "" );
@@ -51,34 +85,60 @@ public class DmPanel extends JPanel {
         Logger.getLogger( DmPanel.class.getName() );
 
     /**
-     * Constructor.
+     * Constructs a panel with no journal.
      *
      * @param   cmap  populated configuration map for application
      */
     public DmPanel( ConfigMap cmap ) throws IOException {
+        this( cmap, null );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param   cmap  populated configuration map for application
+     * @param   journal  journal for recording countdown state so that
+     *                   it can be resumed after a crash; may be null
+     */
+    public DmPanel( ConfigMap cmap, CountdownJournal journal )
+            throws IOException {
+        journal_ = journal;
+        config_ = cmap.snapshot();
+        mailerList_ = new ArrayList<Mailer>();
 
         /* Acquire configuration items. */
-        boolean isAudio = cmap.get( DmConfig.AUDIO ).booleanValue();
-        Address[] emails = cmap.get( DmConfig.EMAILS );
         int resetSec = cmap.get( DmConfig.RESET_SEC ).intValue();
         int warningSec = cmap.get( DmConfig.WARNING_SEC ).intValue();
-        boolean alwaysOnTop = cmap.get( DmConfig.ONTOP ).booleanValue();
-        final String smtpServer = cmap.get( DmConfig.SMTP_SERVER );
-        final Address sender = cmap.get( DmConfig.SMTP_SENDER ); 
         final boolean requireEmail = cmap.get( DmConfig.REQUIRE_EMAIL );
+        fanout_ = cmap.get( DmConfig.MAIL_FANOUT );
+        mailWindowSec_ = cmap.get( DmConfig.MAIL_WINDOW_SEC ).intValue();
+        mailBurst_ = cmap.get( DmConfig.MAIL_BURST ).intValue();
+        mailPerHour_ = cmap.get( DmConfig.MAIL_PER_HOUR ).intValue();
+        boolean isFastStart = cmap.get( DmConfig.FAST_START ).booleanValue();
+        int latencyLogSec = cmap.get( DmConfig.LATENCY_LOG_SEC ).intValue();
+        Latencies.startLogging( latencyLogSec * 1000L );
+
+        /* Prepare to start the subsystems that the alerts depend on,
+         * which may be slow. */
+        final ConfigSnapshot config = config_;
+        startupErrors_ = new ArrayList<String>();
+        startupTask_ = new FutureTask<Object>( new Runnable() {
+            public void run() {
+                initSubsystems( config );
+            }
+        }, null );
 
         /* Prepare alerts according to configuration.
          * Note the alerts list can be altered later to adjust the
-         * actual alert targets. */
+         * actual alert targets; alert channels using the subsystems
+         * are added once they have started. */
         alertList_ = new ArrayList<Alert>();
-        if ( isAudio ) {
-            alertList_.add( Alerts.createSirenAlert() );
-        }
+        channelList_ = new ArrayList<QueuedAlert>();
         alertList_.add( Alerts.createLoggingAlert() );
         Alert alert = new Alert() {
             public void setStatus( Status status ) {
-                for ( Alert a : alertList_ ) {
-                    a.setStatus( status );
+                for ( int ia = 0; ia < alertList_.size(); ia++ ) {
+                    Alerts.setStatusSafely( alertList_.get( ia ), status );
                 }
             }
         };
@@ -115,23 +175,36 @@ public class DmPanel extends JPanel {
                     /* If so, perform some additional initialisation.
                      * In particular record the user name and mailer defined
                      * by this user config, since we will need it later. */
+                    awaitSubsystems();
                     String userName = initCmap.get( USER_NAME );
                     final Mailer mailer;
                     if ( emails.length > 0 ) {
-                        mailer = new Mailer( smtpServer, sender, emails,
-                                             "[deadman] ", this );
+                        mailer = createMailer( emails, this );
                         boolean sendOk = sendInitEmail( mailer, userName,
                                                         initCmap, initKeys );
                         if ( ! sendOk ) {
+                            synchronized ( mailerList_ ) {
+                                mailerList_.remove( mailer );
+                            }
+                            mailer.close();
                             return false;
                         }
-                        alertList_.add( Alerts.createEmailAlert( mailer ) );
+                        alertList_.add( channel( "email",
+                                                 createEmailAlert( mailer ) ) );
                     }
                     else {
                         mailer = null;
                     }
                     userName_ = userName;
                     mailer_ = mailer;
+                    if ( webhookAlert_ != null ) {
+                        webhookAlert_.setUserName( userName );
+                    }
+                    if ( escalator_ != null ) {
+                        escalator_.setUserName( userName );
+                    }
+                    contacts_ = mailsKey.toString( emails );
+                    nContact_ = emails.length;
                     logger_.info( "Initialised by " + userName );
                     if ( emails.length > 0 ) {
                         for ( int i = 0; i < emails.length; i++ ) {
@@ -161,25 +234,308 @@ public class DmPanel extends JPanel {
         counter_.setResetSeconds( resetSec );
         counter_.setWarningSeconds( warningSec );
 
-        /* Set up exit panel. */
-        exiter_ = new ExitPanel( new Runnable() {
-            public void run() {
-                finished();
-            }
-        } );
-
-        /* Add a reset slider control. */
-        ResetSlider rslider = new ResetSlider( counter_ );
-
-        /* Place GUI components in a tabber. */
+        /* Place GUI components in a tabber.  The Config and Exit tabs
+         * are not needed until later, so they start off empty. */
         tabber_ = new JTabbedPane();
         itIniter_ = addTab( tabber_, "Initialise", withCounter( initer_ ) );
         itCounter_ = addTab( tabber_, "Counter", countPanel );
-        itConfiger_ = addTab( tabber_, "Config", withCounter( rslider ) );
-        itExiter_ = addTab( tabber_, "Exit", withCounter( exiter_ ) );
+        itConfiger_ = addTab( tabber_, "Config", new JPanel() );
+        itExiter_ = addTab( tabber_, "Exit", new JPanel() );
         tabber_.setEnabledAt( itCounter_, false );
         tabber_.setEnabledAt( itExiter_, false );
         add( tabber_, BorderLayout.CENTER );
+
+        /* In fast-start mode, start the subsystems in the background
+         * while the user fills in the form, and fill in the other tabs
+         * once the window has been painted.  Otherwise do it all now. */
+        if ( isFastStart ) {
+            Thread starter = new Thread( "Deadman startup" ) {
+                public void run() {
+                    startupTask_.run();
+                    SwingUtilities.invokeLater( new Runnable() {
+                        public void run() {
+                            awaitSubsystems();
+                        }
+                    } );
+                }
+            };
+            starter.setDaemon( true );
+            starter.start();
+        }
+        else {
+            startupTask_.run();
+            if ( sirenError_ != null ) {
+                throw sirenError_;
+            }
+            awaitSubsystems();
+            buildLateTabs();
+        }
+    }
+
+    /**
+     * Blocks until the subsystems have started and the alerts that
+     * use them are armed.  Must not be called on the Event Dispatch Thread.
+     */
+    public void awaitArmed()
+            throws InterruptedException, InvocationTargetException {
+        SwingUtilities.invokeAndWait( new Runnable() {
+            public void run() {
+                awaitSubsystems();
+            }
+        } );
+    }
+
+    @Override
+    public void paint( Graphics g ) {
+        super.paint( g );
+        if ( ! isPainted_ ) {
+            isPainted_ = true;
+            startupMilestone( StartupTimer.FIRST_PAINT );
+            SwingUtilities.invokeLater( new Runnable() {
+                public void run() {
+                    buildLateTabs();
+                }
+            } );
+        }
+    }
+
+    /**
+     * Opens the event log and mail outbox, and prepares the alerts
+     * that depend on audio, mail or network resources.
+     * This may take a while, and in fast-start mode it runs on a
+     * background thread.  The results are left in member variables,
+     * which must only be read after {@link #awaitSubsystems}.
+     * Each subsystem is started independently, so that an unexpected
+     * failure of one is recorded and the others are still started.
+     *
+     * @param  config  application configuration
+     */
+    private void initSubsystems( ConfigSnapshot config ) {
+        String eventDir = config.get( DmConfig.EVENT_LOG_DIR );
+        final int keepDays = config.get( DmConfig.EVENT_KEEP_DAYS ).intValue();
+        String outboxDir = config.get( DmConfig.MAIL_OUTBOX );
+
+        /* Open the event log if required, and compact old segments
+         * in the background. */
+        try {
+            if ( eventDir != null && eventDir.trim().length() > 0 ) {
+                try {
+                    eventLog_ = new EventLog( new File( eventDir ) );
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.WARNING,
+                                 "Can't use event log " + eventDir, e );
+                }
+            }
+            if ( eventLog_ != null ) {
+                final EventLog eventLog = eventLog_;
+                Thread compacter = new Thread( "Event log compacter" ) {
+                    public void run() {
+                        try {
+                            eventLog.compact( keepDays );
+                        }
+                        catch ( IOException e ) {
+                            logger_.log( Level.WARNING,
+                                         "Event log compaction failed", e );
+                        }
+                    }
+                };
+                compacter.setDaemon( true );
+                compacter.start();
+            }
+        }
+        catch ( RuntimeException e ) {
+            subsystemFailed( "Event log", e );
+        }
+
+        /* Open the mail outbox if required, and start delivering
+         * anything left unsent by a previous run. */
+        try {
+            if ( outboxDir != null && outboxDir.trim().length() > 0 ) {
+                try {
+                    outbox_ = new MailOutbox( new File( outboxDir ) );
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.WARNING,
+                                 "Can't use mail outbox " + outboxDir, e );
+                }
+            }
+            if ( outbox_ != null && outbox_.getDepth() > 0 ) {
+                outboxMailer_ = createMailer( new Address[ 0 ], null );
+                outboxMailer_.flushOutbox();
+            }
+        }
+        catch ( RuntimeException e ) {
+            subsystemFailed( "Mail outbox", e );
+        }
+
+        /* Prepare the alerts.  A failure in one does not stop the others
+         * from being armed. */
+        try {
+            if ( config.get( DmConfig.AUDIO ).booleanValue() ) {
+                try {
+                    siren_ = Alerts.createSirenAlert();
+                }
+                catch ( IOException e ) {
+                    sirenError_ = e;
+                }
+            }
+        }
+        catch ( RuntimeException e ) {
+            subsystemFailed( "Audio alarm", e );
+        }
+
+        try {
+            List<URI> hookList = new ArrayList<URI>();
+            for ( String hook : config.get( DmConfig.WEBHOOKS ) ) {
+                if ( hook.trim().length() > 0 ) {
+                    URI uri = null;
+                    try {
+                        uri = new URI( hook.trim() );
+                    }
+                    catch ( URISyntaxException e ) {
+                    }
+                    if ( uri != null && uri.getScheme() != null &&
+                         uri.getScheme().toLowerCase().startsWith( "http" ) ) {
+                        hookList.add( uri );
+                    }
+                    else {
+                        logger_.warning( "Ignoring bad webhook URL " + hook );
+                    }
+                }
+            }
+            if ( hookList.size() > 0 ) {
+                webhookAlert_ =
+                    new WebhookAlert( hookList.toArray( new URI[ 0 ] ),
+                                      config.get( DmConfig.WEBHOOK_TIMEOUT )
+                                            .intValue(),
+                                      config.get( DmConfig.WEBHOOK_ATTEMPTS )
+                                            .intValue(),
+                                      TimingWheel.getBackgroundInstance() );
+            }
+        }
+        catch ( RuntimeException e ) {
+            subsystemFailed( "Webhooks", e );
+        }
+
+        try {
+            escalator_ = createEscalator( config.get( DmConfig.ESCALATION ),
+                                          config.get( DmConfig.ACK_HOST ),
+                                          config.get( DmConfig.ACK_PORT )
+                                                .intValue() );
+        }
+        catch ( RuntimeException e ) {
+            subsystemFailed( "Escalation", e );
+        }
+    }
+
+    /**
+     * Waits if necessary for the subsystems to finish starting,
+     * and adds the alert channels that use them.
+     * Subsystems that failed are reported to the user,
+     * but the others are armed regardless.
+     * Does nothing after the first call.
+     * Must be called on the Event Dispatch Thread, or during construction.
+     */
+    private void awaitSubsystems() {
+        if ( isInstalled_ ) {
+            return;
+        }
+        try {
+            startupTask_.get();
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            subsystemFailed( "Startup", e );
+        }
+        catch ( ExecutionException e ) {
+            subsystemFailed( "Startup", e.getCause() );
+        }
+        isInstalled_ = true;
+        if ( eventLog_ != null ) {
+            counter_.addCountdownListener( eventLog_
+                                          .createCountdownListener() );
+        }
+        if ( siren_ != null ) {
+            alertList_.add( channel( "siren", siren_ ) );
+        }
+        else if ( sirenError_ != null ) {
+            logger_.log( Level.SEVERE, "No audio alarm", sirenError_ );
+            JOptionPane
+           .showMessageDialog( this,
+                               new String[] {
+                                   "Audio alarm unavailable:",
+                                   sirenError_.getMessage(),
+                               },
+                               "No Audio", JOptionPane.ERROR_MESSAGE );
+        }
+        if ( webhookAlert_ != null ) {
+            alertList_.add( channel( "webhook", webhookAlert_ ) );
+        }
+        if ( escalator_ != null ) {
+            alertList_.add( channel( "escalation", escalator_ ) );
+        }
+        List<String> errors;
+        synchronized ( startupErrors_ ) {
+            errors = new ArrayList<String>( startupErrors_ );
+        }
+        if ( errors.size() > 0 ) {
+            errors.add( 0, "Some alarm subsystems failed to start:" );
+            JOptionPane
+           .showMessageDialog( this, errors.toArray( new String[ 0 ] ),
+                               "Startup Problems",
+                               JOptionPane.ERROR_MESSAGE );
+        }
+        startupMilestone( StartupTimer.ARMED );
+    }
+
+    /**
+     * Records the unexpected failure of a subsystem during startup.
+     * The failure is logged now, and reported to the user
+     * when the alerts are armed.
+     *
+     * @param  name  subsystem name
+     * @param  error  failure
+     */
+    private void subsystemFailed( String name, Throwable error ) {
+        logger_.log( Level.SEVERE, name + " failed to start", error );
+        synchronized ( startupErrors_ ) {
+            startupErrors_.add( "   " + name + ": " + error );
+        }
+    }
+
+    /**
+     * Fills in the contents of the Config and Exit tabs,
+     * if that has not already been done.
+     */
+    private void buildLateTabs() {
+        if ( exiter_ == null ) {
+            resetSlider_ = new ResetSlider( counter_ );
+            tabber_.setComponentAt( itConfiger_,
+                                    withCounter( resetSlider_ ) );
+            exiter_ = new ExitPanel( new Runnable() {
+                public void run() {
+                    finished();
+                }
+            } );
+            tabber_.setComponentAt( itExiter_, withCounter( exiter_ ) );
+        }
+    }
+
+    /**
+     * Records a startup milestone, and logs the startup timing report
+     * once the window has been painted and the alerts are armed.
+     *
+     * @param  name  milestone name
+     */
+    private void startupMilestone( String name ) {
+        StartupTimer.mark( name );
+        if ( ! isStartupReported_ &&
+             StartupTimer.isMarked( StartupTimer.FIRST_PAINT ) &&
+             StartupTimer.isMarked( StartupTimer.ARMED ) ) {
+            isStartupReported_ = true;
+            StartupTimer.logReport();
+        }
     }
 
     /**
@@ -187,6 +543,322 @@ public class DmPanel extends JPanel {
      * is about to start.
      */
     private void initialised() {
+        lockGui();
+        if ( eventLog_ != null ) {
+            eventLog_.sessionStarted( userName_ );
+        }
+        counter_.start();
+        beginJournal( 0 );
+    }
+
+    /**
+     * Resumes a session that was interrupted, for instance by a crash,
+     * instead of waiting for the user to fill in the initialisation form.
+     * The countdown carries on from where it was,
+     * or goes straight to danger status if the deadline has passed.
+     *
+     * @param  rec  journal record of interrupted session
+     */
+    public void resume( CountdownJournal.Record rec ) {
+        awaitSubsystems();
+        String userName = rec.getUserName();
+        String contacts = rec.getContacts();
+        Address[] emails = new Address[ 0 ];
+        String contactsError = null;
+        if ( contacts.trim().length() > 0 ) {
+            try {
+                emails = DmConfig.EMAILS.fromString( contacts );
+            }
+            catch ( ConfigException e ) {
+                contactsError = e.getMessage();
+                logger_.warning( "Bad journalled contacts: " + contacts );
+            }
+        }
+        long remaining = rec.getRemainingMillis();
+        logger_.warning( "Resuming interrupted session for " + userName
+                       + ( remaining > -1000
+                               ? ( " with "
+                                 + CountdownModel.formatMillis( remaining )
+                                 + " remaining" )
+                               : " in danger status" ) );
+        if ( emails.length > 0 ) {
+            Mailer mailer = createMailer( emails, this );
+            alertList_.add( channel( "email", createEmailAlert( mailer ) ) );
+            mailer_ = mailer;
+            String body = new StringBuffer()
+                .append( "Deadman application restarted at " )
+                .append( new Date() )
+                .append( " after interruption;\n" )
+                .append( "session for " )
+                .append( userName )
+                .append( " resumed.\n" )
+                .toString();
+            mailer.scheduleSendMessage( "Resumed for " + userName, body );
+        }
+        else {
+            logger_.warning( "No email contacts" );
+        }
+        userName_ = userName;
+        contacts_ = contacts;
+        if ( webhookAlert_ != null ) {
+            webhookAlert_.setUserName( userName );
+        }
+        if ( escalator_ != null ) {
+            escalator_.setUserName( userName );
+        }
+        lockGui();
+        if ( eventLog_ != null ) {
+            eventLog_.sessionStarted( userName_ );
+        }
+        nContact_ = emails.length;
+        counter_.resume( remaining );
+        beginJournal( rec.getResetCount() );
+
+        /* Make sure the user knows if the email alarm will not reach
+         * everyone it did before the interruption. */
+        int nJournalled = rec.getContactCount();
+        if ( emails.length < nJournalled ) {
+            logger_.severe( "Only " + emails.length + " of " + nJournalled
+                          + " email contacts restored for resumed session" );
+            List<String> msg = new ArrayList<String>();
+            msg.add( "Only " + emails.length + " of the " + nJournalled
+                   + " email contacts confirmed for this session"
+                   + " could be restored." );
+            if ( contactsError != null ) {
+                msg.add( contactsError );
+            }
+            msg.add( "" );
+            msg.add( "The email alarm will not reach the missing contacts." );
+            msg.add( "To correct this, exit and start a new session." );
+            JOptionPane
+           .showMessageDialog( this, msg.toArray( new String[ 0 ] ),
+                               "Email Contacts Lost",
+                               JOptionPane.ERROR_MESSAGE );
+        }
+    }
+
+    /**
+     * Starts recording the current session in the journal, if there is one.
+     * If that is not possible, the user is warned.
+     *
+     * @param  resetCount  number of resets already performed in the session
+     */
+    private void beginJournal( int resetCount ) {
+        if ( journal_ != null ) {
+            try {
+                journal_.begin( counter_, userName_, contacts_, nContact_,
+                                resetCount );
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.SEVERE, "Can't journal session", e );
+                JOptionPane
+               .showMessageDialog( this,
+                                   new String[] {
+                                       "Can't record session in journal "
+                                     + journal_.getFile() + ":",
+                                       e.getMessage(),
+                                       "",
+                                       "If the application dies, "
+                                     + "the session will not be resumed.",
+                                   },
+                                   "No Journal",
+                                   JOptionPane.WARNING_MESSAGE );
+            }
+        }
+    }
+
+    /**
+     * Applies a new application configuration to the running panel.
+     * Changes to the countdown and warning times, the SMTP server and
+     * sender address, and the latency report interval take effect
+     * immediately, without resetting or interrupting the countdown.
+     * Other changes, including to the contact addresses, which are
+     * confirmed by the user at the start of a session, are logged
+     * and apply from the next run.
+     * Must be called on the Event Dispatch Thread.
+     *
+     * @param  config  new configuration
+     */
+    public void reconfigure( ConfigSnapshot config ) {
+        ConfigSnapshot old = config_;
+        List<ConfigKey<?>> applied = new ArrayList<ConfigKey<?>>();
+        if ( isChanged( old, config, DmConfig.RESET_SEC ) ||
+             isChanged( old, config, DmConfig.WARNING_SEC ) ) {
+            counter_.setTimes( config.get( DmConfig.RESET_SEC ).intValue(),
+                               config.get( DmConfig.WARNING_SEC )
+                                     .intValue() );
+            if ( resetSlider_ != null ) {
+                resetSlider_.refresh();
+            }
+            logger_.info( "Countdown time now "
+                        + counter_.getResetSeconds() + "s, warning at "
+                        + counter_.getWarningSeconds() + "s" );
+        }
+        applied.add( DmConfig.RESET_SEC );
+        applied.add( DmConfig.WARNING_SEC );
+        synchronized ( mailerList_ ) {
+            config_ = config;
+            if ( isChanged( old, config, DmConfig.SMTP_SERVER ) ||
+                 isChanged( old, config, DmConfig.SMTP_SENDER ) ) {
+                for ( Mailer mailer : mailerList_ ) {
+                    mailer.setServer( config.get( DmConfig.SMTP_SERVER ),
+                                      config.get( DmConfig.SMTP_SENDER ) );
+                }
+            }
+        }
+        applied.add( DmConfig.SMTP_SERVER );
+        applied.add( DmConfig.SMTP_SENDER );
+        if ( isChanged( old, config, DmConfig.LATENCY_LOG_SEC ) ) {
+            Latencies.startLogging( config.get( DmConfig.LATENCY_LOG_SEC )
+                                          .intValue() * 1000L );
+        }
+        applied.add( DmConfig.LATENCY_LOG_SEC );
+        for ( ConfigKey<?> key : DmConfig.KEYS ) {
+            if ( isChanged( old, config, key ) && ! applied.contains( key ) ) {
+                logger_.info( "Configuration change to " + key.getName()
+                            + " will apply on restart" );
+            }
+        }
+    }
+
+    /**
+     * Creates a mailer using the current SMTP settings,
+     * and records it so that later changes to those settings
+     * can be applied to it.
+     * May be called from any thread.
+     *
+     * @param  recipients  recipient addresses
+     * @param  parent  parent component for error dialogues, or null
+     * @return  new mailer
+     */
+    private Mailer createMailer( Address[] recipients, Component parent ) {
+        synchronized ( mailerList_ ) {
+            ConfigSnapshot config = config_;
+            Mailer mailer =
+                new Mailer( config.get( DmConfig.SMTP_SERVER ),
+                            config.get( DmConfig.SMTP_SENDER ), recipients,
+                            "[deadman] ", parent, outbox_ );
+            mailer.setFanout( fanout_ );
+            mailerList_.add( mailer );
+            return mailer;
+        }
+    }
+
+    /**
+     * Creates the email alert for a mailer according to the configured
+     * coalescing and rate limits, and records it so that deferred
+     * messages can be flushed on exit.
+     *
+     * @param  mailer  mailer
+     * @return  email alert
+     */
+    private Alert createEmailAlert( Mailer mailer ) {
+        emailAlert_ = Alerts.createEmailAlert( mailer, mailWindowSec_ * 1000L,
+                                               mailBurst_, mailPerHour_ );
+        return emailAlert_;
+    }
+
+    /**
+     * Creates an escalator from configuration.
+     * Badly formed tiers are logged and ignored.
+     *
+     * @param  tierSpecs  tier specifications, each of the form
+     *                    minutes:addresses
+     * @param  ackHost   host name or address for acknowledgement server,
+     *                   or "*" for all interfaces
+     * @param  ackPort   port for acknowledgement server, or 0 for none
+     * @return  escalator, or null if no tiers are defined
+     */
+    private Escalator createEscalator( String[] tierSpecs, String ackHost,
+                                       int ackPort ) {
+        List<Escalator.Tier> tiers = new ArrayList<Escalator.Tier>();
+        for ( String spec : tierSpecs ) {
+            if ( spec.trim().length() == 0 ) {
+                continue;
+            }
+            int icolon = spec.indexOf( ':' );
+            try {
+                if ( icolon < 0 ) {
+                    throw new ConfigException( "No minutes:" );
+                }
+                double mins =
+                    Double.parseDouble( spec.substring( 0, icolon ).trim() );
+                Address[] addrs =
+                    DmConfig.EMAILS.fromString( spec.substring( icolon + 1 )
+                                                    .trim() );
+                Mailer mailer = createMailer( addrs, null );
+                tiers.add( new Escalator.Tier( (long) ( mins * 60 * 1000 ),
+                                               mailer ) );
+            }
+            catch ( NumberFormatException e ) {
+                logger_.warning( "Ignoring bad escalation tier " + spec );
+            }
+            catch ( ConfigException e ) {
+                logger_.warning( "Ignoring bad escalation tier " + spec
+                               + ": " + e.getMessage() );
+            }
+        }
+        if ( tiers.size() == 0 ) {
+            return null;
+        }
+        String host = ackHost == null ? "" : ackHost.trim();
+        InetSocketAddress ackAddr;
+        if ( ackPort <= 0 ) {
+            ackAddr = null;
+        }
+        else if ( "*".equals( host ) ) {
+            ackAddr = new InetSocketAddress( ackPort );
+        }
+        else {
+            ackAddr = new InetSocketAddress( host.length() > 0 ? host
+                                                               : "localhost",
+                                             ackPort );
+        }
+        try {
+            return new Escalator( tiers.toArray( new Escalator.Tier[ 0 ] ),
+                                  ackAddr,
+                                  TimingWheel.getBackgroundInstance() );
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.WARNING,
+                         "Can't listen for acknowledgements on "
+                       + ackAddr, e );
+            try {
+                return new Escalator( tiers
+                                     .toArray( new Escalator.Tier[ 0 ] ),
+                                      null,
+                                      TimingWheel.getBackgroundInstance() );
+            }
+            catch ( IOException e2 ) {
+                throw new AssertionError( e2 );
+            }
+        }
+    }
+
+    /**
+     * Prepares an alert for use as an independent alert channel.
+     * It is given its own delivery queue, so that it cannot hold up
+     * the countdown or the other alerts, and its deliveries are
+     * recorded in the event log, if there is one.
+     *
+     * @param  name  alert channel name
+     * @param  alert   alert
+     * @return  alert channel
+     */
+    private Alert channel( String name, Alert alert ) {
+        Alert logAlert = eventLog_ == null
+                       ? alert
+                       : eventLog_.createAlert( name, alert );
+        QueuedAlert qAlert = Alerts.createQueuedAlert( name, logAlert );
+        channelList_.add( qAlert );
+        return qAlert;
+    }
+
+    /**
+     * Configures the GUI for a running countdown.
+     */
+    private void lockGui() {
+        buildLateTabs();
         initer_.setEnabled( false );
         tabber_.setEnabledAt( itCounter_, true );
         tabber_.setEnabledAt( itExiter_, true );
@@ -209,7 +881,6 @@ public class DmPanel extends JPanel {
                 }
             } );
         }
-        counter_.start();
     }
 
     /**
@@ -218,7 +889,26 @@ public class DmPanel extends JPanel {
      */
     private void finished() {
         counter_.stop();
+        for ( QueuedAlert qAlert : channelList_ ) {
+            qAlert.close();
+            logger_.info( "Alert channel " + qAlert );
+        }
+        Latencies.startLogging( 0 );
+        Latencies.logReport();
+        if ( journal_ != null ) {
+            journal_.end();
+        }
+        if ( eventLog_ != null ) {
+            eventLog_.sessionEnded();
+            eventLog_.close();
+        }
         tabber_.setEnabledAt( itCounter_, false );
+        if ( emailAlert_ != null ) {
+            emailAlert_.flushAll();
+        }
+        if ( escalator_ != null ) {
+            escalator_.close();
+        }
         if ( mailer_ != null ) {
             String topic = "Exit by " + userName_;
             String body = new StringBuffer()
@@ -231,6 +921,16 @@ public class DmPanel extends JPanel {
                 .append( "\n" )
                 .toString();
             mailer_.sendMessage( topic, body );
+            mailer_.close();
+        }
+        if ( outboxMailer_ != null ) {
+            outboxMailer_.close();
+        }
+        if ( outbox_ != null && outbox_.getDepth() > 0 ) {
+            logger_.warning( "Mail outbox holds " + outbox_.getDepth()
+                           + " unsent messages, oldest "
+                           + outbox_.getOldestAgeMillis() / 1000 + "s;"
+                           + " will retry on next run" );
         }
         Window win = SwingUtilities.getWindowAncestor( this );
         win.dispose();
@@ -301,6 +1001,20 @@ public class DmPanel extends JPanel {
         return mailer.sendMessage( topic, body );
     }
 
+    /**
+     * Tests whether the value of a given key differs between
+     * two configurations.
+     *
+     * @param  c1  first configuration
+     * @param  c2  second configuration
+     * @param  key  key
+     * @return  true iff the string representations of the values differ
+     */
+    private static boolean isChanged( ConfigSnapshot c1, ConfigSnapshot c2,
+                                      ConfigKey<?> key ) {
+        return ! c1.getString( key ).equals( c2.getString( key ) );
+    }
+
     /**
      * Tests whether all of a list of keys have non-blank entries in
      * a given config map.
@@ -0,0 +1,368 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.mail.Address;
+
+/**
+ * Alert that sends email when status transitions to DANGER or back again,
+ * without flooding the recipients when the status flips repeatedly.
+ *
+ * <p>An ALARM is always sent immediately, without rate limiting,
+ * to any recipient whose last message did not already report danger.
+ * Sending a message opens a coalescing window; other transitions
+ * during the window are batched up and sent as a single digest
+ * message when it closes.
+ * In addition, each recipient has a {@link TokenBucket} limiting
+ * the rate of messages apart from those immediate ALARMs;
+ * transitions held back by the rate limit are delivered in a digest
+ * when the bucket refills.
+ *
+ * <p>With a zero window and no rate limit, every transition is sent
+ * immediately as its own message.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class EmailAlert implements Alert {
+
+    private final Mailer mailer_;
+    private final long windowMillis_;
+    private final TimingWheel wheel_;
+    private final TimingWheel.Entry flushEntry_;
+    private final Recipient[] recipients_;
+    private final List<Transition> log_;
+    private int logBase_;
+    private long windowEndMillis_;
+    private long flushMillis_;
+    private Status currentStatus_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( EmailAlert.class.getName() );
+
+    /**
+     * Constructor.
+     *
+     * @param  mailer  mailer
+     * @param  windowMillis  coalescing window in milliseconds;
+     *                       zero means no coalescing
+     * @param  burst   maximum number of messages per recipient
+     *                 sent in quick succession
+     * @param  perHour  long-term maximum number of messages per recipient
+     *                  per hour; zero or negative means no rate limit
+     * @param  wheel   timing wheel used to schedule deferred messages;
+     *                 its tasks should not run on the Event Dispatch Thread
+     */
+    public EmailAlert( Mailer mailer, long windowMillis, int burst,
+                       double perHour, TimingWheel wheel ) {
+        mailer_ = mailer;
+        windowMillis_ = Math.max( 0, windowMillis );
+        wheel_ = wheel;
+        flushEntry_ = wheel.createEntry( new Runnable() {
+            public void run() {
+                timerFlush();
+            }
+        } );
+        long now = wheel.currentMillis();
+        Address[] addrs = mailer.getRecipients();
+        recipients_ = new Recipient[ addrs.length ];
+        for ( int i = 0; i < addrs.length; i++ ) {
+            TokenBucket bucket =
+                perHour > 0
+                    ? new TokenBucket( Math.max( 1, burst ),
+                                       3600 * 1000 / perHour, now )
+                    : null;
+            recipients_[ i ] = new Recipient( addrs[ i ], bucket );
+        }
+        log_ = new ArrayList<Transition>();
+        windowEndMillis_ = Long.MIN_VALUE;
+    }
+
+    public synchronized void setStatus( Status status ) {
+        if ( status == currentStatus_ ) {
+            return;
+        }
+        Status prevStatus = currentStatus_;
+        currentStatus_ = status;
+        final boolean isAlarm;
+        if ( status == Status.DANGER ) {
+            isAlarm = true;
+        }
+        else if ( status == null && prevStatus == Status.DANGER ) {
+            isAlarm = false;
+        }
+        else {
+            return;
+        }
+        log_.add( new Transition( isAlarm, new Date() ) );
+        long now = wheel_.currentMillis();
+        if ( isAlarm && sendPending( now, Mode.ALARM ) ) {
+            windowEndMillis_ = now + windowMillis_;
+        }
+        if ( now >= windowEndMillis_ ) {
+            flush( now );
+        }
+        else {
+            scheduleFlush( windowEndMillis_ );
+        }
+    }
+
+    /**
+     * Sends all deferred transitions immediately, regardless of the
+     * coalescing window and rate limit.
+     * This may be called before exit so that nothing is left unsent.
+     */
+    public synchronized void flushAll() {
+        flushEntry_.cancel();
+        sendPending( wheel_.currentMillis(), Mode.ALL );
+    }
+
+    /**
+     * Returns the number of status transitions not yet sent to
+     * at least one recipient.
+     *
+     * @return  deferred transition count
+     */
+    public synchronized int getDeferredCount() {
+        return log_.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "email window=" + windowMillis_ / 1000 + "s"
+             + ", deferred=" + log_.size();
+    }
+
+    /**
+     * Invoked by the timer when a window closes or a rate limit
+     * may have eased.
+     */
+    private synchronized void timerFlush() {
+        long now = wheel_.currentMillis();
+        flushMillis_ = 0;
+        if ( now >= windowEndMillis_ ) {
+            flush( now );
+        }
+        else {
+            scheduleFlush( windowEndMillis_ );
+        }
+    }
+
+    /**
+     * Sends pending transitions to recipients allowed by the rate limit,
+     * opens a new window if anything was sent, and arranges to try again
+     * later for recipients that still have transitions pending.
+     * Must be called with the monitor held.
+     *
+     * @param  now  current time in milliseconds
+     */
+    private void flush( long now ) {
+        if ( sendPending( now, Mode.LIMITED ) ) {
+            windowEndMillis_ = now + windowMillis_;
+        }
+        int logEnd = logBase_ + log_.size();
+        long next = Long.MAX_VALUE;
+        for ( Recipient r : recipients_ ) {
+            if ( r.sentUpTo_ < logEnd ) {
+                next = Math.min( next,
+                                 r.bucket_ == null
+                                     ? now
+                                     : r.bucket_.getNextTokenMillis( now ) );
+            }
+        }
+        if ( next < Long.MAX_VALUE ) {
+            scheduleFlush( Math.max( next, windowEndMillis_ ) );
+        }
+    }
+
+    /**
+     * Ensures that a flush will happen no later than a given time.
+     * Must be called with the monitor held.
+     *
+     * @param  millis  wheel clock time
+     */
+    private void scheduleFlush( long millis ) {
+        if ( ! flushEntry_.isScheduled() || millis < flushMillis_ ) {
+            flushMillis_ = millis;
+            flushEntry_.scheduleAt( millis );
+        }
+    }
+
+    /**
+     * Sends messages covering all unsent transitions to some recipients.
+     * Recipients that have been sent the same transitions so far
+     * share a message.
+     * Must be called with the monitor held.
+     *
+     * @param  now  current time in milliseconds
+     * @param  mode  determines which recipients are eligible
+     * @return  true iff any message was sent
+     */
+    private boolean sendPending( long now, Mode mode ) {
+        int logEnd = logBase_ + log_.size();
+        Map<Integer,List<Recipient>> groups =
+            new LinkedHashMap<Integer,List<Recipient>>();
+        for ( Recipient r : recipients_ ) {
+            if ( r.sentUpTo_ < logEnd ) {
+                final boolean isSend;
+                if ( mode == Mode.ALARM ) {
+                    isSend = ! r.knowsDanger_;
+                    if ( isSend && r.bucket_ != null ) {
+                        r.bucket_.tryTake( now );
+                    }
+                }
+                else if ( mode == Mode.ALL ) {
+                    isSend = true;
+                }
+                else {
+                    isSend = r.bucket_ == null || r.bucket_.tryTake( now );
+                    if ( ! isSend && ! r.isLimited_ ) {
+                        logger_.info( "Email rate limit reached for "
+                                    + r.addr_ + "; deferring" );
+                    }
+                    r.isLimited_ = ! isSend;
+                }
+                if ( isSend ) {
+                    Integer key = Integer.valueOf( r.sentUpTo_ );
+                    List<Recipient> group = groups.get( key );
+                    if ( group == null ) {
+                        group = new ArrayList<Recipient>();
+                        groups.put( key, group );
+                    }
+                    group.add( r );
+                }
+            }
+        }
+        boolean isLatestAlarm = logEnd > logBase_
+                             && log_.get( log_.size() - 1 ).isAlarm_;
+        for ( Map.Entry<Integer,List<Recipient>> entry : groups.entrySet() ) {
+            List<Recipient> group = entry.getValue();
+            Address[] addrs = new Address[ group.size() ];
+            for ( int i = 0; i < addrs.length; i++ ) {
+                addrs[ i ] = group.get( i ).addr_;
+            }
+            List<Transition> trans =
+                log_.subList( entry.getKey().intValue() - logBase_,
+                              log_.size() );
+            send( trans, addrs );
+            for ( Recipient r : group ) {
+                r.sentUpTo_ = logEnd;
+                r.knowsDanger_ = isLatestAlarm;
+            }
+        }
+
+        /* Discard transitions that every recipient has been sent. */
+        int minSent = logEnd;
+        for ( Recipient r : recipients_ ) {
+            minSent = Math.min( minSent, r.sentUpTo_ );
+        }
+        log_.subList( 0, minSent - logBase_ ).clear();
+        logBase_ = minSent;
+        return groups.size() > 0;
+    }
+
+    /**
+     * Sends a message reporting a sequence of transitions.
+     *
+     * @param  trans  transitions in order, not empty
+     * @param  addrs  recipients
+     */
+    private void send( List<Transition> trans, Address[] addrs ) {
+        Transition last = trans.get( trans.size() - 1 );
+        String topic = last.isAlarm_ ? Mailer.ALARM_TOPIC : "Reset";
+        final String body;
+        if ( trans.size() == 1 ) {
+            body = last.getDescription() + " at " + last.date_ + ".\n";
+        }
+        else {
+            topic += " (" + trans.size() + " status changes)";
+            StringBuffer sbuf = new StringBuffer()
+                .append( "Deadman status changes since last message:\n" );
+            for ( Transition t : trans ) {
+                sbuf.append( "   " )
+                    .append( t.date_ )
+                    .append( ": " )
+                    .append( t.getDescription() )
+                    .append( '\n' );
+            }
+            sbuf.append( "Latest status: " )
+                .append( last.isAlarm_ ? "DANGER" : "safe" )
+                .append( '\n' );
+            body = sbuf.toString();
+        }
+        mailer_.scheduleSendMessage( topic, body, addrs );
+    }
+
+    /**
+     * Determines which recipients are sent pending transitions.
+     */
+    private enum Mode {
+
+        /**
+         * Only recipients who have not been told of a danger status,
+         * without rate limiting.
+         */
+        ALARM,
+
+        /** All recipients, subject to rate limiting. */
+        LIMITED,
+
+        /** All recipients, without rate limiting. */
+        ALL;
+    }
+
+    /**
+     * Records a transition to or from danger status.
+     */
+    private static class Transition {
+        final boolean isAlarm_;
+        final Date date_;
+
+        /**
+         * Constructor.
+         *
+         * @param  isAlarm  true for entry to DANGER, false for reset
+         * @param  date   time of transition
+         */
+        Transition( boolean isAlarm, Date date ) {
+            isAlarm_ = isAlarm;
+            date_ = date;
+        }
+
+        /**
+         * Returns a short description of this transition.
+         *
+         * @return  description
+         */
+        String getDescription() {
+            return isAlarm_ ? "Deadman danger status triggered"
+                            : "Deadman status reset to safe";
+        }
+    }
+
+    /**
+     * Records delivery state for a single recipient.
+     */
+    private static class Recipient {
+        final Address addr_;
+        final TokenBucket bucket_;
+        int sentUpTo_;
+        boolean knowsDanger_;
+        boolean isLimited_;
+
+        /**
+         * Constructor.
+         *
+         * @param  addr  recipient address
+         * @param  bucket  rate limiter, or null for no limit
+         */
+        Recipient( Address addr, TokenBucket bucket ) {
+            addr_ = addr;
+            bucket_ = bucket;
+        }
+    }
+}
@@ -0,0 +1,570 @@
+package uk.ac.bristol.star.deadman;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.logging.Logger;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+
+/**
+ * Alert that escalates an unanswered danger status to successive
+ * tiers of contacts.
+ *
+ * <p>When danger status starts, each tier is scheduled on a single
+ * {@link TimingWheel} at its own delay, and when its delay expires
+ * its contacts are emailed.  The ordinary email contacts, who are told
+ * of the alarm at once by the usual email alert, are in effect tier 1;
+ * the tiers here will normally have increasing delays.
+ * Escalation stops when the status is reset, when all remaining tiers
+ * are cancelled and those already notified are told of the reset.
+ *
+ * <p>If an acknowledgement address is supplied, a small HTTP server
+ * listens there, and each escalation message contains a link carrying
+ * a random token for the current alarm.  Following the link just shows
+ * a page with a button; only submitting that form, which is a POST
+ * request, acknowledges the alarm, so that mail scanners and browsers
+ * fetching the link in advance do not.  On acknowledgement remaining
+ * tiers are cancelled, and those already notified are told that it
+ * has been acknowledged.  Tokens from earlier alarms are not accepted.
+ * The server uses plain HTTP, so it should only be bound to an interface
+ * reachable from trusted networks.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class Escalator implements Alert {
+
+    private final Tier[] tiers_;
+    private final TimingWheel.Entry[] entries_;
+    private final HttpServer server_;
+    private final String ackBase_;
+    private final SecureRandom random_;
+    private final boolean[] notified_;
+    private volatile String userName_;
+    private Status currentStatus_;
+    private String token_;
+    private Date alarmDate_;
+    private boolean isAcked_;
+
+    /** Path of the acknowledgement endpoint. */
+    public static final String ACK_PATH = "/ack";
+
+    private static final Logger logger_ =
+        Logger.getLogger( Escalator.class.getName() );
+
+    /**
+     * Constructor.
+     *
+     * @param  tiers  escalation tiers
+     * @param  ackAddr  socket address for the acknowledgement server,
+     *                  or null for no acknowledgement
+     * @param  wheel   timing wheel used to schedule tiers;
+     *                 its tasks should not run on the Event Dispatch Thread
+     */
+    public Escalator( Tier[] tiers, InetSocketAddress ackAddr,
+                      TimingWheel wheel ) throws IOException {
+        tiers_ = tiers.clone();
+        random_ = new SecureRandom();
+        notified_ = new boolean[ tiers_.length ];
+        entries_ = new TimingWheel.Entry[ tiers_.length ];
+        for ( int it = 0; it < tiers_.length; it++ ) {
+            final int it0 = it;
+            entries_[ it ] = wheel.createEntry( new Runnable() {
+                public void run() {
+                    escalate( it0 );
+                }
+            } );
+        }
+        if ( ackAddr != null ) {
+            server_ = HttpServer.create( ackAddr, 0 );
+            server_.createContext( ACK_PATH, new HttpHandler() {
+                public void handle( HttpExchange exch ) throws IOException {
+                    handleAck( exch );
+                }
+            } );
+            server_.start();
+            InetAddress addr = server_.getAddress().getAddress();
+            String host = addr.isAnyLocalAddress()
+                        ? InetAddress.getLocalHost().getCanonicalHostName()
+                        : ackAddr.getHostString();
+            if ( addr.isLoopbackAddress() ) {
+                logger_.warning( "Acknowledgement server only reachable "
+                               + "from this machine" );
+            }
+            ackBase_ = "http://" + host + ":" + server_.getAddress().getPort()
+                     + ACK_PATH + "?token=";
+            logger_.info( "Escalation acknowledgements at " + ackBase_ );
+        }
+        else {
+            server_ = null;
+            ackBase_ = null;
+        }
+    }
+
+    /**
+     * Sets the user name reported in subsequent messages.
+     *
+     * @param  userName  user name, or null
+     */
+    public void setUserName( String userName ) {
+        userName_ = userName;
+    }
+
+    public synchronized void setStatus( Status status ) {
+        if ( status == currentStatus_ ) {
+            return;
+        }
+        currentStatus_ = status;
+        if ( status == Status.DANGER ) {
+            if ( token_ == null ) {
+                start();
+            }
+        }
+        else if ( token_ != null ) {
+            finish( "Reset",
+                    "The deadman alarm" + getUserPhrase() + " was reset\n"
+                  + "at " + new Date() + ".\n" );
+        }
+    }
+
+    /**
+     * Acknowledges the current alarm, if a given token matches it.
+     * Remaining tiers are cancelled.
+     *
+     * @param  token  acknowledgement token
+     * @param  who   description of the acknowledger, for messages
+     * @return  true iff the token identified an alarm
+     *               that was not already acknowledged
+     */
+    public synchronized boolean acknowledge( String token, String who ) {
+        if ( token_ == null || isAcked_ || ! token_.equals( token ) ) {
+            return false;
+        }
+        logger_.warning( "Alarm acknowledged by " + who );
+        isAcked_ = true;
+        cancelTiers();
+        notifyTiers( "Acknowledged",
+                     "The deadman alarm" + getUserPhrase()
+                   + " was acknowledged by " + who + "\n"
+                   + "at " + new Date() + ".\n"
+                   + "No further contacts will be notified.\n" );
+        return true;
+    }
+
+    /**
+     * Indicates whether a token identifies the current alarm
+     * and it has not yet been acknowledged.
+     *
+     * @param  token  acknowledgement token
+     * @return  true iff the token could acknowledge an alarm now
+     */
+    public synchronized boolean isPending( String token ) {
+        return token_ != null && ! isAcked_ && token_.equals( token );
+    }
+
+    /**
+     * Returns the acknowledgement URL for the current alarm.
+     *
+     * @return  URL text, or null if there is no alarm or no
+     *          acknowledgement server
+     */
+    public synchronized String getAckUrl() {
+        return ackBase_ != null && token_ != null ? ackBase_ + token_ : null;
+    }
+
+    /**
+     * Returns the number of tiers notified of the current or most
+     * recent alarm.
+     *
+     * @return  notified tier count
+     */
+    public synchronized int getNotifiedCount() {
+        int n = 0;
+        for ( boolean isNotified : notified_ ) {
+            if ( isNotified ) {
+                n++;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Cancels any pending escalation, stops the acknowledgement server,
+     * and closes the tiers' mailers.
+     */
+    public synchronized void close() {
+        cancelTiers();
+        if ( server_ != null ) {
+            server_.stop( 0 );
+        }
+        for ( Tier tier : tiers_ ) {
+            tier.getMailer().close();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "escalation tiers=" + tiers_.length
+             + ", notified=" + getNotifiedCount()
+             + ( isAcked_ ? ", acknowledged" : "" );
+    }
+
+    /**
+     * Starts escalation for a new alarm.
+     * Must be called with the monitor held.
+     */
+    private void start() {
+        byte[] buf = new byte[ 16 ];
+        random_.nextBytes( buf );
+        StringBuffer sbuf = new StringBuffer();
+        for ( byte b : buf ) {
+            sbuf.append( String.format( "%02x", b & 0xff ) );
+        }
+        token_ = sbuf.toString();
+        alarmDate_ = new Date();
+        isAcked_ = false;
+        Arrays.fill( notified_, false );
+        for ( int it = 0; it < tiers_.length; it++ ) {
+            entries_[ it ].schedule( tiers_[ it ].getDelayMillis() );
+        }
+    }
+
+    /**
+     * Ends escalation for the current alarm.
+     * Must be called with the monitor held.
+     *
+     * @param  topic  topic of message to notified tiers
+     * @param  body   body of message to notified tiers
+     */
+    private void finish( String topic, String body ) {
+        cancelTiers();
+        notifyTiers( topic, body );
+        token_ = null;
+    }
+
+    /**
+     * Cancels all pending tiers.
+     * Must be called with the monitor held.
+     */
+    private void cancelTiers() {
+        for ( TimingWheel.Entry entry : entries_ ) {
+            entry.cancel();
+        }
+    }
+
+    /**
+     * Sends a message to all tiers notified of the current alarm.
+     * Must be called with the monitor held.
+     *
+     * @param  topic  message topic
+     * @param  body   message body
+     */
+    private void notifyTiers( String topic, String body ) {
+        for ( int it = 0; it < tiers_.length; it++ ) {
+            if ( notified_[ it ] ) {
+                tiers_[ it ].getMailer().scheduleSendMessage( topic, body );
+            }
+        }
+    }
+
+    /**
+     * Invoked by the timer when a tier's delay expires.
+     *
+     * @param  it  tier index
+     */
+    private synchronized void escalate( int it ) {
+        if ( token_ == null || isAcked_ || notified_[ it ] ) {
+            return;
+        }
+        notified_[ it ] = true;
+        long mins = ( System.currentTimeMillis() - alarmDate_.getTime() )
+                  / 60000;
+        logger_.warning( "Escalating alarm to tier " + ( it + 2 ) );
+        StringBuffer sbuf = new StringBuffer()
+            .append( "The deadman alarm" )
+            .append( getUserPhrase() )
+            .append( " was triggered at " )
+            .append( alarmDate_ )
+            .append( "\nand has not been reset after " )
+            .append( mins )
+            .append( mins == 1 ? " minute" : " minutes" )
+            .append( ".\n" );
+        if ( ackBase_ != null ) {
+            sbuf.append( "\nIf you are dealing with it, acknowledge it here" )
+                .append( " to stop further escalation:\n    " )
+                .append( ackBase_ )
+                .append( token_ )
+                .append( "\n" );
+        }
+        tiers_[ it ].getMailer()
+                    .scheduleSendMessage( "ESCALATION: unanswered ALARM",
+                                          sbuf.toString() );
+    }
+
+    /**
+     * Returns a phrase identifying the user, for use in messages.
+     *
+     * @return  phrase, possibly empty
+     */
+    private String getUserPhrase() {
+        String user = userName_;
+        return user == null ? "" : ( " for " + user );
+    }
+
+    /**
+     * Handles a request to the acknowledgement endpoint.
+     * A GET request returns a confirmation form for the alarm,
+     * and a POST request from that form acknowledges it.
+     *
+     * @param  exch  HTTP exchange
+     */
+    private void handleAck( HttpExchange exch ) throws IOException {
+        String method = exch.getRequestMethod();
+        if ( "GET".equals( method ) ) {
+            String token = getToken( exch.getRequestURI().getRawQuery() );
+            if ( isPending( token ) ) {
+                sendPage( exch, 200, new StringBuffer()
+                   .append( "<p>The deadman alarm" )
+                   .append( escapeHtml( getUserPhrase() ) )
+                   .append( " has not been reset.</p>\n" )
+                   .append( "<form method=\"post\" action=\"" )
+                   .append( ACK_PATH )
+                   .append( "\">\n" )
+                   .append( "<input type=\"hidden\" name=\"token\"" )
+                   .append( " value=\"" )
+                   .append( token )
+                   .append( "\"/>\n" )
+                   .append( "<input type=\"submit\"" )
+                   .append( " value=\"Acknowledge alarm\"/>\n" )
+                   .append( "</form>\n" )
+                   .append( "<p>This stops further escalation.</p>" )
+                   .toString() );
+            }
+            else {
+                sendPage( exch, 404, "<p>No current alarm matches"
+                                   + " this link.</p>" );
+            }
+        }
+        else if ( "POST".equals( method ) ) {
+            String token = getToken( readBody( exch ) );
+            String who =
+                exch.getRemoteAddress().getAddress().getHostAddress();
+            boolean isAcked = acknowledge( token, who );
+            sendPage( exch, isAcked ? 200 : 404,
+                      isAcked ? "<p>Alarm acknowledged;"
+                              + " escalation stopped.</p>"
+                              : "<p>No current alarm matches"
+                              + " this request.</p>" );
+        }
+        else {
+            exch.getResponseHeaders().set( "Allow", "GET, POST" );
+            exch.sendResponseHeaders( 405, -1 );
+            exch.close();
+        }
+    }
+
+    /**
+     * Extracts the token parameter from a URL-encoded query or form body.
+     *
+     * @param  params  parameter string, may be null
+     * @return  token, or null if absent
+     */
+    private static String getToken( String params ) {
+        String token = null;
+        if ( params != null ) {
+            for ( String param : params.split( "&" ) ) {
+                if ( param.startsWith( "token=" ) ) {
+                    token = param.substring( 6 ).trim();
+                }
+            }
+        }
+        return token;
+    }
+
+    /**
+     * Reads a short request body as text.
+     * Bodies longer than a few kilobytes are truncated.
+     *
+     * @param  exch  HTTP exchange
+     * @return  body text
+     */
+    private static String readBody( HttpExchange exch ) throws IOException {
+        byte[] buf = new byte[ 4096 ];
+        int n = 0;
+        InputStream in = exch.getRequestBody();
+        try {
+            for ( int n1; n < buf.length &&
+                          ( n1 = in.read( buf, n, buf.length - n ) ) >= 0; ) {
+                n += n1;
+            }
+        }
+        finally {
+            in.close();
+        }
+        return new String( buf, 0, n, "UTF-8" );
+    }
+
+    /**
+     * Sends a small HTML page as the response to a request.
+     *
+     * @param  exch  HTTP exchange
+     * @param  code  HTTP response code
+     * @param  html  page body content
+     */
+    private static void sendPage( HttpExchange exch, int code, String html )
+            throws IOException {
+        String txt = "<!DOCTYPE html>\n"
+                   + "<html><head><title>Deadman alarm</title>"
+                   + "<meta name=\"robots\" content=\"noindex\"/>"
+                   + "</head>\n<body>\n" + html + "\n</body></html>\n";
+        byte[] bytes = txt.getBytes( "UTF-8" );
+        exch.getResponseHeaders().set( "Content-Type",
+                                       "text/html; charset=UTF-8" );
+        exch.getResponseHeaders().set( "Cache-Control", "no-store" );
+        exch.sendResponseHeaders( code, bytes.length );
+        OutputStream out = exch.getResponseBody();
+        try {
+            out.write( bytes );
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Escapes text for inclusion in HTML.
+     *
+     * @param  txt  plain text
+     * @return  HTML-safe text
+     */
+    private static String escapeHtml( String txt ) {
+        StringBuffer sbuf = new StringBuffer();
+        for ( int i = 0; i < txt.length(); i++ ) {
+            char c = txt.charAt( i );
+            switch ( c ) {
+                case '<':
+                    sbuf.append( "&lt;" );
+                    break;
+                case '>':
+                    sbuf.append( "&gt;" );
+                    break;
+                case '&':
+                    sbuf.append( "&amp;" );
+                    break;
+                case '"':
+                    sbuf.append( "&quot;" );
+                    break;
+                default:
+                    sbuf.append( c );
+            }
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Defines one tier of escalation contacts.
+     */
+    public static class Tier {
+        private final long delayMillis_;
+        private final Mailer mailer_;
+
+        /**
+         * Constructor.
+         *
+         * @param  delayMillis  delay after the start of danger status
+         *                      before this tier is notified
+         * @param  mailer   mailer for this tier's contacts
+         */
+        public Tier( long delayMillis, Mailer mailer ) {
+            delayMillis_ = delayMillis;
+            mailer_ = mailer;
+        }
+
+        /**
+         * Returns the delay before this tier is notified.
+         *
+         * @return  delay in milliseconds
+         */
+        public long getDelayMillis() {
+            return delayMillis_;
+        }
+
+        /**
+         * Returns the mailer for this tier's contacts.
+         *
+         * @return  mailer
+         */
+        public Mailer getMailer() {
+            return mailer_;
+        }
+    }
+
+    /**
+     * Runs an alarm with three tiers at one second intervals,
+     * writing messages to standard output instead of sending them,
+     * and acknowledges it through the endpoint after the second tier,
+     * first fetching the confirmation page as a browser would.
+     */
+    public static void main( String[] args )
+            throws IOException, InterruptedException, MessagingException {
+        Tier[] tiers = new Tier[ 3 ];
+        for ( int it = 0; it < tiers.length; it++ ) {
+            Address[] rcpts = {
+                new InternetAddress( "tier" + ( it + 2 ) + "@example.com" ),
+            };
+            Mailer mailer =
+                    new Mailer( "localhost", rcpts[ 0 ], rcpts, "", null,
+                                null ) {
+                @Override
+                public MailDelivery scheduleSendMessage( String topic,
+                                                         String body,
+                                                         Address[] to ) {
+                    System.out.println( "To: " + Arrays.toString( to )
+                                      + "\nSubject: " + topic
+                                      + "\n" + body );
+                    return null;
+                }
+            };
+            tiers[ it ] = new Tier( ( it + 1 ) * 1000, mailer );
+        }
+        Escalator esc =
+            new Escalator( tiers,
+                           new InetSocketAddress( InetAddress
+                                                 .getByName( null ), 0 ),
+                           TimingWheel.getBackgroundInstance() );
+        esc.setUserName( "Test User" );
+        esc.setStatus( Status.DANGER );
+        Thread.sleep( 2500 );
+        String ackUrl = esc.getAckUrl();
+        HttpURLConnection conn =
+            (HttpURLConnection) new URL( ackUrl ).openConnection();
+        conn.getInputStream().close();
+        System.out.println( "Page response: " + conn.getResponseCode()
+                          + ", " + esc + "\n" );
+        conn = (HttpURLConnection)
+               new URL( ackUrl.substring( 0, ackUrl.indexOf( '?' ) ) )
+              .openConnection();
+        conn.setDoOutput( true );
+        OutputStream out = conn.getOutputStream();
+        out.write( ackUrl.substring( ackUrl.indexOf( '?' ) + 1 )
+                         .getBytes( "UTF-8" ) );
+        out.close();
+        conn.getInputStream().close();
+        System.out.println( "Ack response: " + conn.getResponseCode() + "\n" );
+        Thread.sleep( 2000 );
+        System.out.println( esc );
+        esc.close();
+    }
+}
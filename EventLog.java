@@ -0,0 +1,1086 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact append-only binary log of countdown events.
+ * Session starts and ends, resets, status transitions and alert
+ * deliveries are recorded, each with a wall-clock timestamp and
+ * a monotonic timestamp from the application {@link Clock}.
+ *
+ * <p>Events are written to one segment file per (UTC) day in a
+ * log directory.  Old segments can be compacted, which rolls each
+ * day up into a single summary record held in a separate summary file
+ * and deletes the segment.  The {@link #main} method provides
+ * command-line replay and compaction.
+ *
+ * <p>If the application dies part way through writing a record,
+ * the partial record is cut off when the segment is next opened,
+ * so that later records are not appended after it.
+ * A segment for a day that already has a summary record is one
+ * whose compaction was interrupted before the segment was deleted;
+ * it is ignored by replay, and deleted by the next compaction.
+ *
+ * <p>Failures to write the log are reported through the logging system,
+ * but are otherwise ignored, so that they cannot interfere with
+ * the countdown or its alerts.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class EventLog {
+
+    private final File dir_;
+    private final Clock clock_;
+    private long segmentDay_;
+    private DataOutputStream out_;
+    private boolean writeFailed_;
+
+    private static final int MAGIC = 0x444d4556;
+    private static final int VERSION = 1;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    private static final String SEGMENT_PREFIX = "events-";
+    private static final String SEGMENT_SUFFIX = ".evl";
+    private static final String SUMMARY_FILE = "summary.evl";
+    private static final int BUFSIZ = 64 * 1024;
+    private static final Logger logger_ =
+        Logger.getLogger( EventLog.class.getName() );
+
+    /**
+     * Constructs an event log using the system clock.
+     *
+     * @param  dir  log directory, created if it does not exist
+     */
+    public EventLog( File dir ) throws IOException {
+        this( dir, Clock.SYSTEM );
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param  dir  log directory, created if it does not exist
+     * @param  clock  clock supplying monotonic timestamps
+     */
+    public EventLog( File dir, Clock clock ) throws IOException {
+        dir_ = dir;
+        clock_ = clock;
+        segmentDay_ = Long.MIN_VALUE;
+        if ( ! dir.isDirectory() && ! dir.mkdirs() ) {
+            throw new IOException( "Can't create event log directory "
+                                 + dir );
+        }
+    }
+
+    /**
+     * Returns the log directory.
+     *
+     * @return  directory
+     */
+    public File getDirectory() {
+        return dir_;
+    }
+
+    /**
+     * Records the start of a session.
+     *
+     * @param  userName  name of user responsible for the session
+     */
+    public void sessionStarted( String userName ) {
+        write( new Event( Type.SESSION_START, System.currentTimeMillis(),
+                          clock_.currentMillis(), userName, null, true,
+                          null ) );
+    }
+
+    /**
+     * Records the end of a session.
+     */
+    public void sessionEnded() {
+        write( new Event( Type.SESSION_END, System.currentTimeMillis(),
+                          clock_.currentMillis(), null, null, true, null ) );
+    }
+
+    /**
+     * Records a countdown reset.
+     */
+    public void reset() {
+        write( new Event( Type.RESET, System.currentTimeMillis(),
+                          clock_.currentMillis(), null, null, true, null ) );
+    }
+
+    /**
+     * Records a countdown status transition.
+     *
+     * @param  status  new status, may be null
+     */
+    public void statusChanged( Status status ) {
+        write( new Event( Type.STATUS, System.currentTimeMillis(),
+                          clock_.currentMillis(), null, status, true,
+                          null ) );
+    }
+
+    /**
+     * Records delivery of a status to an alert channel.
+     *
+     * @param  channel  name of alert channel
+     * @param  status   status delivered
+     * @param  ok       true if delivery succeeded
+     */
+    public void alertDelivered( String channel, Status status, boolean ok ) {
+        write( new Event( Type.ALERT, System.currentTimeMillis(),
+                          clock_.currentMillis(), channel, status, ok,
+                          null ) );
+    }
+
+    /**
+     * Returns a countdown listener that records resets and
+     * status transitions in this log.
+     *
+     * @return  new listener
+     */
+    public CountdownListener createCountdownListener() {
+        return new CountdownAdapter() {
+            @Override
+            public void countdownReset( CountdownModel model ) {
+                reset();
+            }
+            @Override
+            public void statusChanged( CountdownModel model, Status oldStatus,
+                                       Status newStatus ) {
+                EventLog.this.statusChanged( newStatus );
+            }
+        };
+    }
+
+    /**
+     * Returns an alert that passes status updates on to a given alert,
+     * and records each status transition it delivers in this log.
+     * A delivery fails if the wrapped alert throws an exception,
+     * which is logged and rethrown.
+     *
+     * @param  channel  name of alert channel
+     * @param  alert    alert to wrap
+     * @return   logging alert
+     */
+    public Alert createAlert( final String channel, final Alert alert ) {
+        return new Alert() {
+            Status currentStatus_;
+            public void setStatus( Status status ) {
+                if ( status == currentStatus_ ) {
+                    alert.setStatus( status );
+                }
+                else {
+                    currentStatus_ = status;
+                    boolean ok = false;
+                    try {
+                        alert.setStatus( status );
+                        ok = true;
+                    }
+                    finally {
+                        alertDelivered( channel, status, ok );
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Closes the currently open segment, if any.
+     * Subsequent events will reopen it.
+     */
+    public synchronized void close() {
+        if ( out_ != null ) {
+            try {
+                out_.close();
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.WARNING, "Error closing event log", e );
+            }
+            out_ = null;
+            segmentDay_ = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Passes all the events in a given time range to a handler.
+     * Summary records for compacted days are supplied first,
+     * followed by the events from uncompacted segments in order.
+     *
+     * @param  fromMillis  wall-clock epoch time of range start
+     * @param  toMillis    wall-clock epoch time of range end
+     * @param  handler   event handler
+     */
+    public void replay( long fromMillis, long toMillis, EventHandler handler )
+            throws IOException {
+        File summaryFile = new File( dir_, SUMMARY_FILE );
+        if ( summaryFile.exists() ) {
+            long fromDay = fromMillis - ( fromMillis % DAY_MILLIS );
+            readEvents( summaryFile, fromDay, toMillis, handler );
+        }
+        Set<Long> summaryDays = getSummaryDays();
+        for ( File seg : getSegments() ) {
+            long day = getSegmentDay( seg );
+            if ( day + DAY_MILLIS > fromMillis && day <= toMillis &&
+                 ! summaryDays.contains( Long.valueOf( day ) ) ) {
+                readEvents( seg, fromMillis, toMillis, handler );
+            }
+        }
+    }
+
+    /**
+     * Compacts old segments.  Each segment older than a given number of
+     * days is rolled up into a summary record, and then deleted.
+     * Segments left behind by an interrupted compaction,
+     * whose days already have summary records, are just deleted.
+     *
+     * @param  keepDays  number of days' segments to keep uncompacted
+     * @return  number of segments compacted
+     */
+    public int compact( int keepDays ) throws IOException {
+        long today = dayStart( System.currentTimeMillis() );
+        long cutoff = today - keepDays * DAY_MILLIS;
+        Set<Long> summaryDays = getSummaryDays();
+        List<File> oldSegs = new ArrayList<File>();
+        List<File> doneSegs = new ArrayList<File>();
+        for ( File seg : getSegments() ) {
+            long day = getSegmentDay( seg );
+            if ( summaryDays.contains( Long.valueOf( day ) ) ) {
+                doneSegs.add( seg );
+            }
+            else if ( day < cutoff ) {
+                oldSegs.add( seg );
+            }
+        }
+        deleteSegments( doneSegs );
+        if ( oldSegs.isEmpty() ) {
+            return doneSegs.size();
+        }
+
+        /* Accumulate summaries, including any existing ones. */
+        final Map<Long,int[]> countMap = new TreeMap<Long,int[]>();
+        EventHandler summer = new EventHandler() {
+            public void event( Event evt ) {
+                Long day = Long.valueOf( dayStart( evt.getWallMillis() ) );
+                int[] counts = countMap.get( day );
+                if ( counts == null ) {
+                    counts = new int[ Summary.NCOUNT ];
+                    countMap.put( day, counts );
+                }
+                Summary.accumulate( evt, counts );
+            }
+        };
+        File summaryFile = new File( dir_, SUMMARY_FILE );
+        if ( summaryFile.exists() ) {
+            readEvents( summaryFile, Long.MIN_VALUE, Long.MAX_VALUE, summer );
+        }
+        for ( File seg : oldSegs ) {
+            readEvents( seg, Long.MIN_VALUE, Long.MAX_VALUE, summer );
+        }
+
+        /* Write a new summary file and move it into place before
+         * removing the compacted segments, so that a failure part way
+         * through does not lose information. */
+        File tmpFile = new File( dir_, SUMMARY_FILE + ".tmp" );
+        DataOutputStream out = openOutput( tmpFile, false );
+        try {
+            for ( Map.Entry<Long,int[]> entry : countMap.entrySet() ) {
+                long day = entry.getKey().longValue();
+                writeEvent( out,
+                            new Event( Type.SUMMARY, day, 0, null, null, true,
+                                       new Summary( entry.getValue() ) ) );
+            }
+        }
+        finally {
+            out.close();
+        }
+        if ( ! tmpFile.renameTo( summaryFile ) ) {
+            summaryFile.delete();
+            if ( ! tmpFile.renameTo( summaryFile ) ) {
+                throw new IOException( "Can't rename " + tmpFile
+                                     + " to " + summaryFile );
+            }
+        }
+        deleteSegments( oldSegs );
+        logger_.info( "Compacted " + oldSegs.size() + " event log segments" );
+        return oldSegs.size() + doneSegs.size();
+    }
+
+    /**
+     * Returns the days for which the summary file holds records.
+     *
+     * @return  set of epoch times of start of UTC day
+     */
+    private Set<Long> getSummaryDays() throws IOException {
+        final Set<Long> days = new HashSet<Long>();
+        File summaryFile = new File( dir_, SUMMARY_FILE );
+        if ( summaryFile.exists() ) {
+            readEvents( summaryFile, Long.MIN_VALUE, Long.MAX_VALUE,
+                        new EventHandler() {
+                public void event( Event evt ) {
+                    days.add( Long.valueOf( evt.getWallMillis() ) );
+                }
+            } );
+        }
+        return days;
+    }
+
+    /**
+     * Deletes segments that have been compacted.
+     *
+     * @param  segs  segment files
+     */
+    private static void deleteSegments( List<File> segs ) {
+        for ( File seg : segs ) {
+            if ( ! seg.delete() ) {
+                logger_.warning( "Failed to delete compacted segment "
+                               + seg );
+            }
+        }
+    }
+
+    /**
+     * Writes an event to the current segment, opening a new one
+     * if required.
+     *
+     * @param  evt  event
+     */
+    private synchronized void write( Event evt ) {
+        long day = dayStart( evt.getWallMillis() );
+        try {
+            if ( day != segmentDay_ ) {
+                close();
+                File seg = new File( dir_, getSegmentName( day ) );
+                truncateTorn( seg );
+                out_ = openOutput( seg, true );
+                segmentDay_ = day;
+            }
+            writeEvent( out_, evt );
+            out_.flush();
+            writeFailed_ = false;
+        }
+        catch ( IOException e ) {
+
+            /* Only report the first of a run of failures. */
+            if ( ! writeFailed_ ) {
+                logger_.log( Level.WARNING, "Event log write failed", e );
+                writeFailed_ = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the segment files in the log directory, in time order.
+     *
+     * @return   segment files
+     */
+    private File[] getSegments() {
+        File[] files = dir_.listFiles();
+        List<File> segs = new ArrayList<File>();
+        if ( files != null ) {
+            for ( File f : files ) {
+                String name = f.getName();
+                if ( name.startsWith( SEGMENT_PREFIX ) &&
+                     name.endsWith( SEGMENT_SUFFIX ) &&
+                     getSegmentDay( f ) != Long.MIN_VALUE ) {
+                    segs.add( f );
+                }
+            }
+        }
+        File[] segArray = segs.toArray( new File[ 0 ] );
+        Arrays.sort( segArray );
+        return segArray;
+    }
+
+    /**
+     * Returns the name of the segment file holding events for a given day.
+     *
+     * @param  day  epoch time of start of UTC day
+     * @return  filename
+     */
+    private static String getSegmentName( long day ) {
+        return SEGMENT_PREFIX
+             + createDayFormat().format( new Date( day ) )
+             + SEGMENT_SUFFIX;
+    }
+
+    /**
+     * Returns the day covered by a segment file.
+     *
+     * @param  seg  segment file
+     * @return  epoch time of start of UTC day,
+     *          or Long.MIN_VALUE if the name can't be parsed
+     */
+    private static long getSegmentDay( File seg ) {
+        String name = seg.getName();
+        String dayTxt = name.substring( SEGMENT_PREFIX.length(),
+                                        name.length()
+                                        - SEGMENT_SUFFIX.length() );
+        try {
+            return createDayFormat().parse( dayTxt ).getTime();
+        }
+        catch ( java.text.ParseException e ) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Returns a date format for segment filenames.
+     *
+     * @return  new format
+     */
+    private static DateFormat createDayFormat() {
+        DateFormat fmt = new SimpleDateFormat( "yyyyMMdd" );
+        fmt.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        fmt.setLenient( false );
+        return fmt;
+    }
+
+    /**
+     * Returns the start of the UTC day containing a given time.
+     *
+     * @param  millis  epoch time
+     * @return  epoch time of start of day
+     */
+    private static long dayStart( long millis ) {
+        return millis - ( ( millis % DAY_MILLIS + DAY_MILLIS ) % DAY_MILLIS );
+    }
+
+    /**
+     * Opens a log file for output.  If it is new or empty,
+     * the file header is written.
+     *
+     * @param  file  file
+     * @param  append  true to append to an existing file
+     * @return  output stream
+     */
+    private static DataOutputStream openOutput( File file, boolean append )
+            throws IOException {
+        boolean isNew = ! append || file.length() == 0;
+        DataOutputStream out =
+            new DataOutputStream(
+                new BufferedOutputStream(
+                    new FileOutputStream( file, append ) ) );
+        if ( isNew ) {
+            out.writeInt( MAGIC );
+            out.writeInt( VERSION );
+        }
+        return out;
+    }
+
+    /**
+     * Cuts off any incomplete final record from an existing log file,
+     * as left by a crash during writing, so that it can be appended to.
+     * Anything following an unreadable record is also removed.
+     *
+     * @param  file  log file, which need not exist
+     */
+    private static void truncateTorn( File file ) throws IOException {
+        long length = file.length();
+        if ( length == 0 ) {
+            return;
+        }
+        if ( length > Integer.MAX_VALUE ) {
+            throw new IOException( "Event log too large: " + file );
+        }
+        byte[] buf = new byte[ (int) length ];
+        DataInputStream fin =
+            new DataInputStream( new FileInputStream( file ) );
+        try {
+            fin.readFully( buf );
+        }
+        finally {
+            fin.close();
+        }
+        ByteArrayInputStream bin = new ByteArrayInputStream( buf );
+        DataInputStream in = new DataInputStream( bin );
+        long good = 0;
+        try {
+            if ( in.readInt() != MAGIC || in.readInt() != VERSION ) {
+                throw new IOException( "Not a writable event log: " + file );
+            }
+            good = length - bin.available();
+            for ( int code; ( code = in.read() ) >= 0; ) {
+                readEvent( in, code );
+                good = length - bin.available();
+            }
+        }
+        catch ( EOFException e ) {
+        }
+        catch ( IOException e ) {
+            if ( good == 0 ) {
+                throw e;
+            }
+        }
+        if ( good < length ) {
+            logger_.warning( "Removing " + ( length - good ) + " bytes of"
+                           + " incomplete record from event log " + file );
+            RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+            try {
+                raf.setLength( good );
+            }
+            finally {
+                raf.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a single event record.
+     *
+     * @param  out  output stream
+     * @param  evt  event
+     */
+    private static void writeEvent( DataOutputStream out, Event evt )
+            throws IOException {
+        Type type = evt.getType();
+        out.writeByte( type.code_ );
+        out.writeLong( evt.getWallMillis() );
+        out.writeLong( evt.getMonoMillis() );
+        switch ( type ) {
+            case SESSION_START:
+                out.writeUTF( nonNull( evt.getText() ) );
+                break;
+            case STATUS:
+                out.writeByte( encodeStatus( evt.getStatus() ) );
+                break;
+            case ALERT:
+                out.writeUTF( nonNull( evt.getText() ) );
+                out.writeByte( encodeStatus( evt.getStatus() ) );
+                out.writeBoolean( evt.isOk() );
+                break;
+            case SUMMARY:
+                for ( int c : evt.getSummary().counts_ ) {
+                    out.writeInt( c );
+                }
+                break;
+            default:
+        }
+    }
+
+    /**
+     * Reads the events from a log file and passes those in a given
+     * time range to a handler.  A truncated final record,
+     * as left by a crash during writing, is ignored.
+     *
+     * @param  file  log file
+     * @param  fromMillis  wall-clock epoch time of range start
+     * @param  toMillis    wall-clock epoch time of range end
+     * @param  handler   event handler
+     */
+    private static void readEvents( File file, long fromMillis,
+                                    long toMillis, EventHandler handler )
+            throws IOException {
+        DataInputStream in =
+            new DataInputStream(
+                new BufferedInputStream( new FileInputStream( file ),
+                                         BUFSIZ ) );
+        try {
+            if ( in.readInt() != MAGIC ) {
+                throw new IOException( "Not an event log: " + file );
+            }
+            int version = in.readInt();
+            if ( version != VERSION ) {
+                throw new IOException( "Unsupported event log version "
+                                     + version + ": " + file );
+            }
+            for ( int code; ( code = in.read() ) >= 0; ) {
+                Event evt = readEvent( in, code );
+                long wall = evt.getWallMillis();
+                if ( wall >= fromMillis && wall <= toMillis ) {
+                    handler.event( evt );
+                }
+            }
+        }
+        catch ( EOFException e ) {
+            logger_.warning( "Truncated event log " + file );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Reads the body of a single event record.
+     *
+     * @param  in  input stream
+     * @param  code  type code, already read
+     * @return  event
+     */
+    private static Event readEvent( DataInputStream in, int code )
+            throws IOException {
+        Type type = Type.fromCode( code );
+        if ( type == null ) {
+            throw new IOException( "Unknown event type code " + code );
+        }
+        long wall = in.readLong();
+        long mono = in.readLong();
+        switch ( type ) {
+            case SESSION_START:
+                return new Event( type, wall, mono, in.readUTF(), null, true,
+                                  null );
+            case STATUS:
+                return new Event( type, wall, mono, null,
+                                  decodeStatus( in.readByte() ), true, null );
+            case ALERT:
+                String channel = in.readUTF();
+                Status status = decodeStatus( in.readByte() );
+                boolean ok = in.readBoolean();
+                return new Event( type, wall, mono, channel, status, ok,
+                                  null );
+            case SUMMARY:
+                int[] counts = new int[ Summary.NCOUNT ];
+                for ( int i = 0; i < counts.length; i++ ) {
+                    counts[ i ] = in.readInt();
+                }
+                return new Event( type, wall, mono, null, null, true,
+                                  new Summary( counts ) );
+            default:
+                return new Event( type, wall, mono, null, null, true, null );
+        }
+    }
+
+    /**
+     * Encodes a status as a byte.
+     *
+     * @param  status  status, may be null
+     * @return  code
+     */
+    private static int encodeStatus( Status status ) {
+        return status == null ? -1 : status.ordinal();
+    }
+
+    /**
+     * Decodes a status byte.
+     *
+     * @param  code  code
+     * @return  status, may be null
+     */
+    private static Status decodeStatus( int code ) {
+        Status[] statuses = Status.values();
+        return code >= 0 && code < statuses.length ? statuses[ code ] : null;
+    }
+
+    /**
+     * Returns a non-null version of a string.
+     *
+     * @param  txt  string
+     * @return  txt, or an empty string if txt is null
+     */
+    private static String nonNull( String txt ) {
+        return txt == null ? "" : txt;
+    }
+
+    /**
+     * Command-line tool for the event log.
+     * Use <code>-h</code> for a usage message.
+     *
+     * @param  args  command-line arguments
+     */
+    public static void main( String[] args ) throws IOException {
+        String usage = new StringBuffer()
+            .append( "\n   Usage:" )
+            .append( "\n      " )
+            .append( EventLog.class.getSimpleName() )
+            .append( " replay <dir> [<days>]" )
+            .append( "\n      " )
+            .append( EventLog.class.getSimpleName() )
+            .append( " compact <dir> <keepDays>" )
+            .append( "\n" )
+            .toString();
+        if ( args.length < 2 || args.length > 3 ) {
+            System.err.println( usage );
+            System.exit( 1 );
+            return;
+        }
+        String cmd = args[ 0 ];
+        EventLog log = new EventLog( new File( args[ 1 ] ) );
+        int nday;
+        try {
+            nday = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : -1;
+        }
+        catch ( NumberFormatException e ) {
+            System.err.println( usage );
+            System.exit( 1 );
+            return;
+        }
+        if ( "replay".equals( cmd ) ) {
+            long now = System.currentTimeMillis();
+            long from = nday >= 0 ? now - nday * DAY_MILLIS : Long.MIN_VALUE;
+            final Writer out =
+                new BufferedWriter( new OutputStreamWriter( System.out ),
+                                    BUFSIZ );
+            final DateFormat dateFormat =
+                new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss.SSS" );
+            final long[] count = new long[ 1 ];
+            long start = System.nanoTime();
+            log.replay( from, Long.MAX_VALUE, new EventHandler() {
+                public void event( Event evt ) {
+                    try {
+                        out.write( dateFormat
+                                  .format( new Date( evt.getWallMillis() ) ) );
+                        out.write( ' ' );
+                        out.write( evt.toString() );
+                        out.write( '\n' );
+                    }
+                    catch ( IOException e ) {
+                        throw new RuntimeException( e );
+                    }
+                    count[ 0 ]++;
+                }
+            } );
+            out.flush();
+            long elapsed = ( System.nanoTime() - start ) / 1000000;
+            System.err.println( count[ 0 ] + " events in "
+                              + elapsed + "ms" );
+        }
+        else if ( "compact".equals( cmd ) && nday >= 0 ) {
+            int nseg = log.compact( nday );
+            System.err.println( "Compacted " + nseg + " segments" );
+        }
+        else {
+            System.err.println( usage );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * Receives events during replay.
+     */
+    public interface EventHandler {
+
+        /**
+         * Receives an event.
+         *
+         * @param  evt  event
+         */
+        void event( Event evt );
+    }
+
+    /**
+     * Enumerates the types of logged event.
+     */
+    public enum Type {
+
+        /** Countdown session started. */
+        SESSION_START( 1 ),
+
+        /** Countdown session ended. */
+        SESSION_END( 2 ),
+
+        /** Countdown reset. */
+        RESET( 3 ),
+
+        /** Countdown status transition. */
+        STATUS( 4 ),
+
+        /** Status delivered to an alert channel. */
+        ALERT( 5 ),
+
+        /** Summary of a compacted day. */
+        SUMMARY( 6 );
+
+        private final int code_;
+
+        /**
+         * Constructor.
+         *
+         * @param  code  type code used in the log file
+         */
+        Type( int code ) {
+            code_ = code;
+        }
+
+        /**
+         * Returns the type with a given code.
+         *
+         * @param  code  type code
+         * @return  type, or null if none
+         */
+        static Type fromCode( int code ) {
+            for ( Type type : values() ) {
+                if ( type.code_ == code ) {
+                    return type;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Represents a logged event.
+     */
+    public static class Event {
+
+        private final Type type_;
+        private final long wallMillis_;
+        private final long monoMillis_;
+        private final String text_;
+        private final Status status_;
+        private final boolean ok_;
+        private final Summary summary_;
+
+        /**
+         * Constructor.
+         *
+         * @param  type  event type
+         * @param  wallMillis  wall-clock epoch time of event
+         * @param  monoMillis  monotonic clock time of event
+         * @param  text  user name or alert channel name, or null
+         * @param  status  status, may be null
+         * @param  ok   success flag for alert delivery
+         * @param  summary  summary for summary events, otherwise null
+         */
+        Event( Type type, long wallMillis, long monoMillis, String text,
+               Status status, boolean ok, Summary summary ) {
+            type_ = type;
+            wallMillis_ = wallMillis;
+            monoMillis_ = monoMillis;
+            text_ = text;
+            status_ = status;
+            ok_ = ok;
+            summary_ = summary;
+        }
+
+        /**
+         * Returns the event type.
+         *
+         * @return  type
+         */
+        public Type getType() {
+            return type_;
+        }
+
+        /**
+         * Returns the wall-clock time of the event.
+         * For summary events this is the start of the summarised day.
+         *
+         * @return  epoch time in milliseconds
+         */
+        public long getWallMillis() {
+            return wallMillis_;
+        }
+
+        /**
+         * Returns the monotonic clock time of the event.
+         * This is only meaningful for comparison with other events
+         * from the same run of the application.
+         *
+         * @return  clock time in milliseconds
+         */
+        public long getMonoMillis() {
+            return monoMillis_;
+        }
+
+        /**
+         * Returns the user name for session start events,
+         * or the channel name for alert events.
+         *
+         * @return  text, or null
+         */
+        public String getText() {
+            return text_;
+        }
+
+        /**
+         * Returns the status for status and alert events.
+         *
+         * @return  status, may be null
+         */
+        public Status getStatus() {
+            return status_;
+        }
+
+        /**
+         * Indicates whether an alert delivery succeeded.
+         *
+         * @return  true for success
+         */
+        public boolean isOk() {
+            return ok_;
+        }
+
+        /**
+         * Returns the summary for summary events.
+         *
+         * @return  summary, or null
+         */
+        public Summary getSummary() {
+            return summary_;
+        }
+
+        @Override
+        public String toString() {
+            StringBuffer sbuf = new StringBuffer()
+                .append( type_ );
+            switch ( type_ ) {
+                case SESSION_START:
+                    sbuf.append( ' ' ).append( text_ );
+                    break;
+                case STATUS:
+                    sbuf.append( ' ' ).append( status_ );
+                    break;
+                case ALERT:
+                    sbuf.append( ' ' ).append( text_ )
+                        .append( ' ' ).append( status_ )
+                        .append( ok_ ? " ok" : " FAILED" );
+                    break;
+                case SUMMARY:
+                    sbuf.append( ' ' ).append( summary_ );
+                    break;
+                default:
+            }
+            return sbuf.toString();
+        }
+    }
+
+    /**
+     * Counts of the events in a compacted day.
+     */
+    public static class Summary {
+
+        private final int[] counts_;
+
+        private static final int ISESSION = 0;
+        private static final int IRESET = 1;
+        private static final int IWARNING = 2;
+        private static final int IDANGER = 3;
+        private static final int IALERT_OK = 4;
+        private static final int IALERT_FAIL = 5;
+        static final int NCOUNT = 6;
+
+        /**
+         * Constructor.
+         *
+         * @param  counts  array of NCOUNT counts
+         */
+        Summary( int[] counts ) {
+            counts_ = counts;
+        }
+
+        /**
+         * Returns the number of sessions started.
+         *
+         * @return  session count
+         */
+        public int getSessionCount() {
+            return counts_[ ISESSION ];
+        }
+
+        /**
+         * Returns the number of countdown resets.
+         *
+         * @return  reset count
+         */
+        public int getResetCount() {
+            return counts_[ IRESET ];
+        }
+
+        /**
+         * Returns the number of transitions to warning status.
+         *
+         * @return  warning count
+         */
+        public int getWarningCount() {
+            return counts_[ IWARNING ];
+        }
+
+        /**
+         * Returns the number of transitions to danger status.
+         *
+         * @return  danger count
+         */
+        public int getDangerCount() {
+            return counts_[ IDANGER ];
+        }
+
+        /**
+         * Returns the number of successful alert deliveries.
+         *
+         * @return  delivery count
+         */
+        public int getAlertOkCount() {
+            return counts_[ IALERT_OK ];
+        }
+
+        /**
+         * Returns the number of failed alert deliveries.
+         *
+         * @return  failure count
+         */
+        public int getAlertFailCount() {
+            return counts_[ IALERT_FAIL ];
+        }
+
+        /**
+         * Adds the contribution of an event to an array of counts.
+         *
+         * @param  evt  event
+         * @param  counts  array of NCOUNT counts to update
+         */
+        static void accumulate( Event evt, int[] counts ) {
+            switch ( evt.getType() ) {
+                case SESSION_START:
+                    counts[ ISESSION ]++;
+                    break;
+                case RESET:
+                    counts[ IRESET ]++;
+                    break;
+                case STATUS:
+                    if ( evt.getStatus() == Status.WARNING ) {
+                        counts[ IWARNING ]++;
+                    }
+                    else if ( evt.getStatus() == Status.DANGER ) {
+                        counts[ IDANGER ]++;
+                    }
+                    break;
+                case ALERT:
+                    counts[ evt.isOk() ? IALERT_OK : IALERT_FAIL ]++;
+                    break;
+                case SUMMARY:
+                    int[] c = evt.getSummary().counts_;
+                    for ( int i = 0; i < NCOUNT; i++ ) {
+                        counts[ i ] += c[ i ];
+                    }
+                    break;
+                default:
+            }
+        }
+
+        @Override
+        public String toString() {
+            return new StringBuffer()
+                .append( "sessions=" ).append( getSessionCount() )
+                .append( " resets=" ).append( getResetCount() )
+                .append( " warnings=" ).append( getWarningCount() )
+                .append( " dangers=" ).append( getDangerCount() )
+                .append( " alerts=" ).append( getAlertOkCount() )
+                .append( " failed=" ).append( getAlertFailCount() )
+                .toString();
+        }
+    }
+}
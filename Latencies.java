@@ -0,0 +1,187 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Logger;
+
+/**
+ * Registry of named {@link LatencyHistogram}s measuring alert latencies
+ * within this JVM.
+ *
+ * <p>The end-to-end latencies are measured from two kinds of origin:
+ * the moment the countdown model detects that danger status has started
+ * ({@link #markAlarm}), and the moment the countdown is reset
+ * ({@link #markReset}).  Code further down the alert paths, usually
+ * on other threads, records the time since the most recent origin
+ * using {@link #recordSinceAlarm} and {@link #recordSinceReset}.
+ * Since there is only one countdown, a single origin of each kind
+ * is sufficient.  Other histograms record self-contained intervals.
+ *
+ * <p>Histogram names are of the form <code>source.stage</code>,
+ * for instance <code>email.dispatch</code>.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class Latencies {
+
+    /** Origin value indicating no origin has been marked.
+     *  System.nanoTime() values may be negative, so -1 will not do. */
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private static final ConcurrentMap<String,LatencyHistogram> histos_ =
+        new ConcurrentHashMap<String,LatencyHistogram>();
+    private static volatile long alarmNanos_ = UNSET;
+    private static volatile long resetNanos_ = UNSET;
+    private static TimingWheel.Entry logEntry_;
+    private static long logPeriodMillis_;
+    private static final Logger logger_ =
+        Logger.getLogger( Latencies.class.getName() );
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private Latencies() {
+    }
+
+    /**
+     * Returns the histogram with a given name, creating it if necessary.
+     *
+     * @param  name  histogram name
+     * @return  histogram
+     */
+    public static LatencyHistogram getHistogram( String name ) {
+        LatencyHistogram histo = histos_.get( name );
+        if ( histo == null ) {
+            LatencyHistogram h1 = new LatencyHistogram( name );
+            histo = histos_.putIfAbsent( name, h1 );
+            if ( histo == null ) {
+                histo = h1;
+            }
+        }
+        return histo;
+    }
+
+    /**
+     * Returns all the histograms created so far, sorted by name.
+     *
+     * @return  histograms
+     */
+    public static LatencyHistogram[] getHistograms() {
+        return new TreeMap<String,LatencyHistogram>( histos_ ).values()
+              .toArray( new LatencyHistogram[ 0 ] );
+    }
+
+    /**
+     * Records a single value in a named histogram.
+     *
+     * @param  name  histogram name
+     * @param  nanos  latency in nanoseconds
+     */
+    public static void record( String name, long nanos ) {
+        getHistogram( name ).record( nanos );
+    }
+
+    /**
+     * Marks the current instant as the origin for alarm latencies.
+     * This should be called when danger status is detected.
+     */
+    public static void markAlarm() {
+        alarmNanos_ = System.nanoTime();
+    }
+
+    /**
+     * Marks the current instant as the origin for reset latencies.
+     * This should be called when the countdown is reset.
+     */
+    public static void markReset() {
+        resetNanos_ = System.nanoTime();
+    }
+
+    /**
+     * Records the time since the most recent alarm origin.
+     * Does nothing if there has been no alarm.
+     *
+     * @param  name  histogram name
+     */
+    public static void recordSinceAlarm( String name ) {
+        long t0 = alarmNanos_;
+        if ( t0 != UNSET ) {
+            getHistogram( name ).recordSince( t0 );
+        }
+    }
+
+    /**
+     * Records the time since the most recent reset origin.
+     * Does nothing if there has been no reset.
+     *
+     * @param  name  histogram name
+     */
+    public static void recordSinceReset( String name ) {
+        long t0 = resetNanos_;
+        if ( t0 != UNSET ) {
+            getHistogram( name ).recordSince( t0 );
+        }
+    }
+
+    /**
+     * Returns a multi-line report of all non-empty histograms.
+     *
+     * @return  report text, empty if nothing has been recorded
+     */
+    public static String getReport() {
+        StringBuffer sbuf = new StringBuffer();
+        for ( LatencyHistogram histo : getHistograms() ) {
+            if ( histo.getCount() > 0 ) {
+                sbuf.append( "   " )
+                    .append( histo )
+                    .append( '\n' );
+            }
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Logs the report at INFO level, if anything has been recorded.
+     */
+    public static void logReport() {
+        String report = getReport();
+        if ( report.length() > 0 ) {
+            logger_.info( "Alert latencies:\n" + report );
+        }
+    }
+
+    /**
+     * Arranges for the report to be logged periodically,
+     * replacing any previous arrangement.
+     *
+     * @param  periodMillis  interval in milliseconds;
+     *                       zero or negative stops periodic logging
+     */
+    public static synchronized void startLogging( long periodMillis ) {
+        if ( logEntry_ == null ) {
+            logEntry_ = TimingWheel.getBackgroundInstance()
+                                   .createEntry( new Runnable() {
+                public void run() {
+                    logReport();
+                    rescheduleLogging();
+                }
+            } );
+        }
+        logPeriodMillis_ = periodMillis;
+        logEntry_.cancel();
+        if ( periodMillis > 0 ) {
+            logEntry_.schedule( periodMillis );
+        }
+    }
+
+    /**
+     * Schedules the next periodic report, if periodic logging is on.
+     */
+    private static synchronized void rescheduleLogging() {
+        if ( logPeriodMillis_ > 0 ) {
+            logEntry_.schedule( logPeriodMillis_ );
+        }
+    }
+}
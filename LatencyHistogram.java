@@ -0,0 +1,214 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latency values with log-linear buckets.
+ *
+ * <p>Each power of two is split into {@link #SUB_BUCKETS} equal buckets,
+ * so any recorded value is known to within about 3%, over the whole range
+ * from nanoseconds to centuries, in a fixed array of counters.
+ * Recording is a few arithmetic operations and an atomic increment,
+ * and never allocates memory, so it can be done on time-critical paths.
+ * Reading is not atomic with respect to concurrent recording,
+ * so results obtained while values are being recorded are approximate.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class LatencyHistogram {
+
+    private final String name_;
+    private final AtomicLongArray counts_;
+    private final AtomicLong count_;
+    private final AtomicLong sum_;
+    private final AtomicLong max_;
+
+    private static final int SUB_BITS = 5;
+
+    /** Number of buckets per power of two. */
+    public static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    private static final int NBUCKET = ( 64 - SUB_BITS ) * SUB_BUCKETS;
+
+    /**
+     * Constructor.
+     *
+     * @param  name  histogram name
+     */
+    public LatencyHistogram( String name ) {
+        name_ = name;
+        counts_ = new AtomicLongArray( NBUCKET );
+        count_ = new AtomicLong();
+        sum_ = new AtomicLong();
+        max_ = new AtomicLong();
+    }
+
+    /**
+     * Returns the name of this histogram.
+     *
+     * @return  name
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Records a value.  Negative values are recorded as zero.
+     *
+     * @param  nanos  latency in nanoseconds
+     */
+    public void record( long nanos ) {
+        long v = Math.max( 0, nanos );
+        counts_.incrementAndGet( getBucketIndex( v ) );
+        count_.incrementAndGet();
+        sum_.addAndGet( v );
+        for ( long m; v > ( m = max_.get() ); ) {
+            if ( max_.compareAndSet( m, v ) ) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Records the time elapsed since a given instant.
+     *
+     * @param  startNanos  start time as given by System.nanoTime()
+     */
+    public void recordSince( long startNanos ) {
+        record( System.nanoTime() - startNanos );
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return  count
+     */
+    public long getCount() {
+        return count_.get();
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return  maximum in nanoseconds, or 0 if none
+     */
+    public long getMaxNanos() {
+        return max_.get();
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return  mean in nanoseconds, or 0 if none
+     */
+    public long getMeanNanos() {
+        long n = count_.get();
+        return n > 0 ? sum_.get() / n : 0;
+    }
+
+    /**
+     * Returns an estimate of a given percentile of the recorded values.
+     * The result is the middle of the bucket containing the percentile,
+     * but no larger than the maximum recorded value.
+     *
+     * @param  pct  percentile in the range 0..100
+     * @return  value in nanoseconds, or 0 if nothing has been recorded
+     */
+    public long getPercentileNanos( double pct ) {
+        long n = count_.get();
+        if ( n == 0 ) {
+            return 0;
+        }
+        long rank = Math.max( 1, (long) Math.ceil( pct / 100.0 * n ) );
+        long cum = 0;
+        for ( int i = 0; i < NBUCKET; i++ ) {
+            cum += counts_.get( i );
+            if ( cum >= rank ) {
+                long lo = getBucketLower( i );
+                long mid = lo + ( getBucketLower( i + 1 ) - lo ) / 2;
+                return Math.min( mid, max_.get() );
+            }
+        }
+        return max_.get();
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void clear() {
+        for ( int i = 0; i < NBUCKET; i++ ) {
+            counts_.set( i, 0 );
+        }
+        count_.set( 0 );
+        sum_.set( 0 );
+        max_.set( 0 );
+    }
+
+    /**
+     * Returns a one-line summary giving count and percentiles
+     * in milliseconds.
+     */
+    @Override
+    public String toString() {
+        return new StringBuffer()
+            .append( name_ )
+            .append( ": n=" )
+            .append( getCount() )
+            .append( " p50=" )
+            .append( formatMillis( getPercentileNanos( 50 ) ) )
+            .append( " p90=" )
+            .append( formatMillis( getPercentileNanos( 90 ) ) )
+            .append( " p99=" )
+            .append( formatMillis( getPercentileNanos( 99 ) ) )
+            .append( " p99.9=" )
+            .append( formatMillis( getPercentileNanos( 99.9 ) ) )
+            .append( " max=" )
+            .append( formatMillis( getMaxNanos() ) )
+            .toString();
+    }
+
+    /**
+     * Returns the index of the bucket containing a value.
+     *
+     * @param  v  non-negative value
+     * @return  bucket index
+     */
+    static int getBucketIndex( long v ) {
+        if ( v < SUB_BUCKETS ) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros( v );
+        int sub = (int) ( v >>> ( exp - SUB_BITS ) ) - SUB_BUCKETS;
+        return ( exp - SUB_BITS + 1 ) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the smallest value that falls in a given bucket.
+     *
+     * @param  index  bucket index; may be one past the last bucket
+     * @return  lower bound of bucket
+     */
+    static long getBucketLower( int index ) {
+        if ( index < SUB_BUCKETS ) {
+            return index;
+        }
+        if ( index >= NBUCKET ) {
+            return Long.MAX_VALUE;
+        }
+        int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = index % SUB_BUCKETS;
+        return ( SUB_BUCKETS + sub ) << ( exp - SUB_BITS );
+    }
+
+    /**
+     * Formats a nanosecond value in milliseconds.
+     *
+     * @param  nanos  value in nanoseconds
+     * @return  formatted string
+     */
+    private static String formatMillis( long nanos ) {
+        return String.format( "%.3fms", nanos * 1e-6 );
+    }
+}
@@ -1,11 +1,11 @@
 package uk.ac.bristol.star.deadman;
 
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.logging.ConsoleHandler;
-import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
@@ -32,35 +32,58 @@ public class Logging {
 
     /**
      * Returns a log Handler that writes log messages to a log file.
+     * Messages are written asynchronously, so logging does not hold up
+     * the calling thread.
      *
      * @param  file  filename
      * @param   append   if true, writes at the end of the file
      * @return   new log handler
+     * @see   AsyncLogHandler
      */
     public static Handler createFileLogHandler( String file, boolean append )
             throws IOException {
-        FileHandler handler = new FileHandler( file, true );
-        handler.setFormatter( new LineFormatter() );
-        return handler;
+        return new AsyncLogHandler( new FileOutputStream( file, append ),
+                                    new LineFormatter(),
+                                    AsyncLogHandler.DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Returns a formatter that writes each log message on a single line.
+     *
+     * @return  new formatter
+     */
+    public static Formatter createLineFormatter() {
+        return new LineFormatter();
     }
 
     /**
      * One-line formatter for log messages.
+     * The timestamp text is cached, so that the date formatter is only
+     * used once per second however many messages are logged.
      */
     private static class LineFormatter extends Formatter {
         private final DateFormat dateFormat_;
+        private final StringBuffer sbuf_;
+        private long stampSec_;
+        private String stamp_;
 
         /**
          * Constructor.
          */
         public LineFormatter() {
             dateFormat_ = new SimpleDateFormat( "yyyy-MM-dd HH:mm:ss" );
+            sbuf_ = new StringBuffer();
         }
 
-        public String format( LogRecord record ) {
-            return new StringBuffer()
-                .append( dateFormat_.format( new Date( record.getMillis() ) ) )
-                .append( " " )
+        public synchronized String format( LogRecord record ) {
+            long sec = Math.floorDiv( record.getMillis(), 1000L );
+            if ( stamp_ == null || sec != stampSec_ ) {
+                stamp_ = dateFormat_.format( new Date( sec * 1000L ) ) + " ";
+                stampSec_ = sec;
+            }
+            sbuf_.setLength( 0 );
+            return sbuf_
+                .append( stamp_ )
                 .append( record.getLevel() )
                 .append( ": " )
                 .append( formatMessage( record ) )
@@ -0,0 +1,208 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.mail.Address;
+
+/**
+ * Completion handle for an email message sent asynchronously by a
+ * {@link Mailer}, recording the outcome for each recipient.
+ *
+ * <p>Each recipient starts off {@link Outcome#PENDING} and moves to
+ * one of the other outcomes as delivery proceeds.  When no recipients
+ * are pending the delivery is complete, and {@link #await await}
+ * returns.  Recipients handed over to the mail outbox are
+ * {@link Outcome#SPOOLED}; further retries from there are not
+ * reflected in this object.  Instances are thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class MailDelivery {
+
+    private final String topic_;
+    private final Map<Address,Outcome> outcomes_;
+    private final Map<Address,Exception> errors_;
+    private final CountDownLatch latch_;
+    private final long startNanos_;
+    private volatile long latencyNanos_;
+
+    /**
+     * Constructor.
+     *
+     * @param  topic  message topic
+     * @param  recipients  message recipients
+     */
+    MailDelivery( String topic, Address[] recipients ) {
+        topic_ = topic;
+        outcomes_ = new LinkedHashMap<Address,Outcome>();
+        errors_ = new LinkedHashMap<Address,Exception>();
+        for ( Address addr : recipients ) {
+            outcomes_.put( addr, Outcome.PENDING );
+        }
+        latch_ = new CountDownLatch( 1 );
+        startNanos_ = System.nanoTime();
+        latencyNanos_ = -1;
+    }
+
+    /**
+     * Returns the message topic.
+     *
+     * @return  topic
+     */
+    public String getTopic() {
+        return topic_;
+    }
+
+    /**
+     * Returns all the recipients of the message.
+     *
+     * @return  recipient addresses
+     */
+    public synchronized Address[] getRecipients() {
+        return outcomes_.keySet().toArray( new Address[ 0 ] );
+    }
+
+    /**
+     * Returns the recipients with a given outcome.
+     *
+     * @param  outcome  outcome
+     * @return  recipient addresses
+     */
+    public synchronized Address[] getRecipients( Outcome outcome ) {
+        List<Address> list = new ArrayList<Address>();
+        for ( Map.Entry<Address,Outcome> entry : outcomes_.entrySet() ) {
+            if ( entry.getValue() == outcome ) {
+                list.add( entry.getKey() );
+            }
+        }
+        return list.toArray( new Address[ 0 ] );
+    }
+
+    /**
+     * Returns the current outcome for a recipient.
+     *
+     * @param  recipient  recipient address
+     * @return  outcome, or null if it is not a recipient of this message
+     */
+    public synchronized Outcome getOutcome( Address recipient ) {
+        return outcomes_.get( recipient );
+    }
+
+    /**
+     * Returns the most recent delivery error for a recipient.
+     *
+     * @param  recipient  recipient address
+     * @return  error, or null if there was none
+     */
+    public synchronized Exception getError( Address recipient ) {
+        return errors_.get( recipient );
+    }
+
+    /**
+     * Indicates whether delivery has finished for all recipients.
+     *
+     * @return  true iff no recipients are pending
+     */
+    public boolean isDone() {
+        return latch_.getCount() == 0;
+    }
+
+    /**
+     * Returns the time taken for delivery to finish.
+     *
+     * @return  nanoseconds from submission to completion,
+     *          or -1 if not yet complete
+     */
+    public long getLatencyNanos() {
+        return latencyNanos_;
+    }
+
+    /**
+     * Waits for delivery to finish.
+     *
+     * @param  timeout  maximum time to wait
+     * @param  unit   unit of timeout
+     * @return  true if delivery has finished,
+     *          false if the timeout expired first
+     */
+    public boolean await( long timeout, TimeUnit unit )
+            throws InterruptedException {
+        return latch_.await( timeout, unit );
+    }
+
+    /**
+     * Records the outcome for some recipients.
+     *
+     * @param  recipients  recipient addresses; may be null
+     * @param  outcome   new outcome
+     * @param  error    associated error, or null
+     */
+    synchronized void setOutcome( Address[] recipients, Outcome outcome,
+                                  Exception error ) {
+        if ( recipients != null ) {
+            for ( Address addr : recipients ) {
+                if ( outcomes_.containsKey( addr ) ) {
+                    outcomes_.put( addr, outcome );
+                    if ( error != null ) {
+                        errors_.put( addr, error );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Marks delivery as finished.  Any recipients still pending
+     * are marked as failed.
+     */
+    void complete() {
+        synchronized ( this ) {
+            for ( Map.Entry<Address,Outcome> entry : outcomes_.entrySet() ) {
+                if ( entry.getValue() == Outcome.PENDING ) {
+                    entry.setValue( Outcome.FAILED );
+                }
+            }
+        }
+        latencyNanos_ = System.nanoTime() - startNanos_;
+        Latencies.record( "mail.deliver", latencyNanos_ );
+        latch_.countDown();
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuffer sbuf = new StringBuffer( topic_ ).append( ':' );
+        for ( Map.Entry<Address,Outcome> entry : outcomes_.entrySet() ) {
+            sbuf.append( ' ' )
+                .append( entry.getKey() )
+                .append( '=' )
+                .append( entry.getValue() );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Delivery outcome for a single recipient.
+     */
+    public enum Outcome {
+
+        /** Delivery has not yet finished. */
+        PENDING,
+
+        /** Message was accepted by the SMTP server. */
+        SENT,
+
+        /** Address was rejected by the SMTP server. */
+        REJECTED,
+
+        /** Delivery failed and will not be retried. */
+        FAILED,
+
+        /** Delivery failed and has been passed to the outbox for retry. */
+        SPOOLED;
+    }
+}
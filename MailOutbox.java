@@ -0,0 +1,296 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.internet.MimeMessage;
+
+/**
+ * Durable spool directory for outgoing email messages.
+ * Messages are written to disk before any attempt is made to send them,
+ * and only removed once they have been accepted by the mail server,
+ * so that they survive failures of the server or of this application.
+ *
+ * <p>Each message is held as a separate RFC 822 file, named so that
+ * lexical order is submission order.  It is written to a temporary
+ * file, synced and then renamed into place, so a spooled message is
+ * never seen half-written.  Messages that cannot be delivered at all
+ * are moved into a <code>failed</code> subdirectory for inspection.
+ *
+ * <p>A message may also be spooled as <em>held</em>, meaning that
+ * delivery is in progress elsewhere; held messages are not listed
+ * as waiting to be sent, but if the application stops before they
+ * are removed they are treated as unsent the next time the
+ * outbox is opened.
+ *
+ * <p>This class just manages the files; delivery and retry are
+ * done by {@link Mailer}.  Instances are thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class MailOutbox {
+
+    private final File dir_;
+    private final File failedDir_;
+    private final Session session_;
+    private int seq_;
+
+    private static final String MSG_SUFFIX = ".eml";
+    private static final String HELD_SUFFIX = ".held";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final Logger logger_ =
+        Logger.getLogger( MailOutbox.class.getName() );
+
+    /**
+     * Constructor.  Any partly written files left over from a
+     * previous run are removed, and held messages are released
+     * for sending.
+     *
+     * @param  dir  spool directory, created if it does not exist
+     */
+    public MailOutbox( File dir ) throws IOException {
+        dir_ = dir;
+        failedDir_ = new File( dir, "failed" );
+        session_ = Session.getInstance( new Properties() );
+        if ( ! dir.isDirectory() && ! dir.mkdirs() ) {
+            throw new IOException( "Can't create outbox directory " + dir );
+        }
+        File[] files = dir.listFiles();
+        if ( files != null ) {
+            for ( File f : files ) {
+                String fname = f.getName();
+                if ( fname.endsWith( TMP_SUFFIX ) ) {
+                    f.delete();
+                }
+                else if ( fname.endsWith( HELD_SUFFIX ) ) {
+                    f.renameTo( getMessageFile( f ) );
+                }
+            }
+        }
+        int depth = getDepth();
+        if ( depth > 0 ) {
+            logger_.warning( "Outbox " + dir + " holds " + depth
+                           + " unsent message" + ( depth == 1 ? "" : "s" ) );
+        }
+    }
+
+    /**
+     * Returns the spool directory.
+     *
+     * @return  directory
+     */
+    public File getDirectory() {
+        return dir_;
+    }
+
+    /**
+     * Writes a message durably to the spool.
+     *
+     * @param  msg  message, ready to send
+     * @return   spool file
+     */
+    public File spool( MimeMessage msg )
+            throws IOException, MessagingException {
+        return spool( msg, false );
+    }
+
+    /**
+     * Writes a message durably to the spool, optionally holding it.
+     *
+     * @param  msg  message, ready to send
+     * @param  isHeld  true if the message is to be held
+     * @return   spool file
+     */
+    public File spool( MimeMessage msg, boolean isHeld )
+            throws IOException, MessagingException {
+        String name;
+        synchronized ( this ) {
+            name = String.format( "%013d-%06d", System.currentTimeMillis(),
+                                  seq_++ % 1000000 );
+        }
+        File file = new File( dir_, name + ( isHeld ? HELD_SUFFIX
+                                                    : MSG_SUFFIX ) );
+        write( msg, file );
+        return file;
+    }
+
+    /**
+     * Replaces the content of a spooled or held message,
+     * for instance to remove recipients that have already received it.
+     * The result is not held, and keeps its place in the spool order.
+     *
+     * @param  file  existing spool file
+     * @param  msg   replacement message
+     * @return  new spool file
+     */
+    public File rewrite( File file, MimeMessage msg )
+            throws IOException, MessagingException {
+        File msgFile = getMessageFile( file );
+        write( msg, msgFile );
+        if ( ! file.equals( msgFile ) ) {
+            remove( file );
+        }
+        return msgFile;
+    }
+
+    /**
+     * Atomically writes a message to a given file.
+     *
+     * @param  msg  message
+     * @param  msgFile  destination file
+     */
+    private void write( MimeMessage msg, File msgFile )
+            throws IOException, MessagingException {
+        String fname = msgFile.getName();
+        File tmpFile =
+            new File( dir_, fname.substring( 0, fname.lastIndexOf( '.' ) )
+                          + TMP_SUFFIX );
+        FileOutputStream fout = new FileOutputStream( tmpFile );
+        try {
+            OutputStream out = new BufferedOutputStream( fout );
+            msg.writeTo( out );
+            out.flush();
+            fout.getFD().sync();
+        }
+        finally {
+            fout.close();
+        }
+        if ( ! tmpFile.renameTo( msgFile ) ) {
+            tmpFile.delete();
+            throw new IOException( "Failed to rename " + tmpFile
+                                 + " to " + msgFile );
+        }
+    }
+
+    /**
+     * Returns the unheld spool file corresponding to a given spool file.
+     *
+     * @param  file  held or unheld spool file
+     * @return  unheld spool file
+     */
+    private File getMessageFile( File file ) {
+        String fname = file.getName();
+        return fname.endsWith( HELD_SUFFIX )
+             ? new File( dir_, fname.substring( 0, fname.length()
+                                                 - HELD_SUFFIX.length() )
+                             + MSG_SUFFIX )
+             : file;
+    }
+
+    /**
+     * Returns the currently spooled message files, oldest first.
+     *
+     * @return  spool files
+     */
+    public File[] getSpooled() {
+        File[] files = dir_.listFiles();
+        List<File> msgFiles = new ArrayList<File>();
+        if ( files != null ) {
+            for ( File f : files ) {
+                if ( f.getName().endsWith( MSG_SUFFIX ) ) {
+                    msgFiles.add( f );
+                }
+            }
+        }
+        File[] msgArray = msgFiles.toArray( new File[ 0 ] );
+        Arrays.sort( msgArray );
+        return msgArray;
+    }
+
+    /**
+     * Reads a spooled message.
+     *
+     * @param  file  spool file
+     * @return  message
+     */
+    public MimeMessage load( File file )
+            throws IOException, MessagingException {
+        InputStream in = new BufferedInputStream( new FileInputStream( file ) );
+        try {
+            return new MimeMessage( session_, in );
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Removes a message that has been sent.
+     *
+     * @param  file  spool file
+     */
+    public void remove( File file ) {
+        if ( ! file.delete() && file.exists() ) {
+            logger_.warning( "Failed to remove sent message " + file );
+        }
+    }
+
+    /**
+     * Moves a message that cannot be delivered out of the spool
+     * into the failed directory.
+     *
+     * @param  file  spool file
+     */
+    public void reject( File file ) {
+        failedDir_.mkdirs();
+        File dest = new File( failedDir_, file.getName() );
+        if ( file.renameTo( dest ) ) {
+            logger_.warning( "Undeliverable message moved to " + dest );
+        }
+        else {
+            logger_.warning( "Failed to move undeliverable message " + file );
+            remove( file );
+        }
+    }
+
+    /**
+     * Returns the time at which a message was spooled.
+     *
+     * @param  file  spool file
+     * @return   epoch time in milliseconds
+     */
+    public long getSpoolMillis( File file ) {
+        String name = file.getName();
+        int idash = name.indexOf( '-' );
+        try {
+            return Long.parseLong( name.substring( 0, idash ) );
+        }
+        catch ( RuntimeException e ) {
+            return file.lastModified();
+        }
+    }
+
+    /**
+     * Returns the number of messages waiting to be sent.
+     *
+     * @return  spool depth
+     */
+    public int getDepth() {
+        return getSpooled().length;
+    }
+
+    /**
+     * Returns the age of the oldest message waiting to be sent.
+     *
+     * @return  age in milliseconds, or 0 if the spool is empty
+     */
+    public long getOldestAgeMillis() {
+        File[] files = getSpooled();
+        return files.length == 0
+             ? 0
+             : System.currentTimeMillis() - getSpoolMillis( files[ 0 ] );
+    }
+}
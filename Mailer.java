@@ -1,18 +1,37 @@
 package uk.ac.bristol.star.deadman;
 
 import java.awt.Component;
+import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import com.sun.mail.smtp.SMTPTransport;
 import javax.mail.Address;
 import javax.mail.Message;
 import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Session;
-import javax.mail.Transport;
+import javax.mail.URLName;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.swing.JOptionPane;
@@ -23,25 +42,80 @@ import javax.swing.JOptionPane;
  * (part of J2EE or available separately).
  * Developed against javamail-1.5.5, but probably any version will do.
  *
+ * <p>All messages from a given mailer are delivered one at a time,
+ * in the order they were submitted, by a single delivery thread.
+ * That thread keeps an SMTP connection open between messages,
+ * checking it periodically with a NOOP so that it is ready for use
+ * when an alarm goes off, and reconnecting if it has been dropped.
+ *
+ * <p>If the mailer has a {@link MailOutbox}, asynchronously sent
+ * messages are spooled to disk before delivery is attempted,
+ * and stay there until the server has accepted them.
+ * If delivery fails the outbox is retried, oldest message first,
+ * after a delay that grows exponentially with the number of
+ * consecutive failures, with some random jitter.
+ * Messages left in the outbox by a previous run are sent by the
+ * first delivery from any mailer using it, or by {@link #flushOutbox}.
+ *
+ * <p>In a {@link Fanout fanout} mode, asynchronously sent messages are
+ * instead delivered separately and in parallel to each recipient or
+ * recipient domain, each with its own delivery thread and connection,
+ * so that a bad address or slow relay only affects its own recipients.
+ * Recipients whose delivery fails are retried a few times, and any
+ * still failing are then handed to the outbox, if there is one.
+ * The outcome for each recipient is recorded in the {@link MailDelivery}
+ * handle returned by {@link #scheduleSendMessage scheduleSendMessage}.
+ *
  * @author   Mark Taylor
  * @since    28 Jun 2016
  */
 public class Mailer {
 
-    private final String smtpServer_;
-    private final Address sender_;
     private final Address[] recipients_;
     private final String subjectPrefix_;
-    private final Properties props_;
     private final Component parent_;
+    private final MailOutbox outbox_;
+    private final Random random_;
+    private final Map<String,Lane> groupLanes_;
+    private volatile Fanout fanout_;
+    private volatile Server server_;
+    private Lane lane_;
+    private ScheduledFuture<?> retryFuture_;
+    private int nRetry_;
+    private volatile long lastAcceptMillis_;
+
+    /** Topic of messages announcing an alarm; the time from the alarm
+     *  to their acceptance is recorded as <code>mail.alarm</code>. */
+    public static final String ALARM_TOPIC = "ALARM";
+
+    /** Interval between connection keepalive checks in milliseconds. */
+    private static final long KEEPALIVE_MILLIS = 60 * 1000;
+
+    /** SMTP connection and I/O timeout in milliseconds. */
+    private static final int TIMEOUT_MILLIS = 30 * 1000;
+
+    /** Delay before the first outbox retry in milliseconds. */
+    private static final long RETRY_MIN_MILLIS = 5 * 1000;
+
+    /** Maximum delay between outbox retries in milliseconds. */
+    private static final long RETRY_MAX_MILLIS = 5 * 60 * 1000;
+
+    /** Fractional random variation applied to outbox retry delays. */
+    private static final double RETRY_JITTER = 0.2;
+
+    /** Number of delivery attempts per fanout group before giving up. */
+    private static final int FANOUT_ATTEMPTS = 3;
+
+    /** Delay before the first fanout retry in milliseconds. */
+    private static final long FANOUT_RETRY_MILLIS = 1000;
 
     private static final Logger logger_ =
         Logger.getLogger( Mailer.class.getName() );
-    
+
     /**
      * Constructor.
      *
-     * @param  smtpServer   SMTP server
+     * @param  smtpServer   SMTP server, as host or host:port
      * @param  sender   sender's email address
      * @param  recipients   one or more email addresses To which
      *                      emails will be sent
@@ -52,28 +126,191 @@ public class Mailer {
      */
     public Mailer( String smtpServer, Address sender, Address[] recipients,
                    String subjectPrefix, Component parent ) {
-        smtpServer_ = smtpServer;
-        sender_ = sender;
+        this( smtpServer, sender, recipients, subjectPrefix, parent, null );
+    }
+
+    /**
+     * Constructor with optional outbox.
+     *
+     * @param  smtpServer   SMTP server, as host or host:port
+     * @param  sender   sender's email address
+     * @param  recipients   one or more email addresses To which
+     *                      emails will be sent
+     * @param  subjectPrefix  string prefixed to topic string to make
+     *                        Subject line (may be null)
+     * @param  parent    parent component, if present will be used to signal
+     *                   errors using JOptionPane; may be null for no GUI
+     * @param  outbox    durable spool for asynchronously sent messages;
+     *                   may be null for no spooling
+     */
+    public Mailer( String smtpServer, Address sender, Address[] recipients,
+                   String subjectPrefix, Component parent,
+                   MailOutbox outbox ) {
+        server_ = new Server( smtpServer, sender );
         recipients_ = recipients;
         subjectPrefix_ = subjectPrefix == null ? "" : subjectPrefix;
         parent_ = parent;
-        props_ = new Properties();
-        props_.put( "mail.smtp.host", smtpServer );
+        outbox_ = outbox;
+        random_ = new Random();
+        groupLanes_ = new HashMap<String,Lane>();
+        fanout_ = Fanout.NONE;
+        lastAcceptMillis_ = -1;
+    }
+
+    /**
+     * Sets how asynchronous deliveries are split between recipients.
+     *
+     * @param  fanout  fanout mode, not null
+     */
+    public void setFanout( Fanout fanout ) {
+        fanout_ = fanout;
+    }
+
+    /**
+     * Replaces the SMTP server and sender address.
+     * The two are changed together, so no message is ever sent with
+     * the new sender through the old server or vice versa.
+     * Messages already constructed keep their original sender.
+     * Each delivery thread drops any connection to the old server
+     * before its next delivery, and reconnects to the new one.
+     *
+     * @param  smtpServer   SMTP server, as host or host:port
+     * @param  sender   sender's email address
+     */
+    public void setServer( String smtpServer, Address sender ) {
+        server_ = new Server( smtpServer, sender );
+        logger_.info( "SMTP server now " + smtpServer + ", sender " + sender );
+    }
+
+    /**
+     * Returns the SMTP server.
+     *
+     * @return  SMTP server, as host or host:port
+     */
+    public String getSmtpServer() {
+        return server_.smtpServer_;
+    }
+
+    /**
+     * Returns the sender address.
+     *
+     * @return  sender's email address
+     */
+    public Address getSender() {
+        return server_.sender_;
+    }
+
+    /**
+     * Returns the recipients of this mailer's messages.
+     *
+     * @return  recipient addresses
+     */
+    public Address[] getRecipients() {
+        return recipients_.clone();
+    }
+
+    /**
+     * Returns the fanout mode.
+     *
+     * @return  fanout mode
+     */
+    public Fanout getFanout() {
+        return fanout_;
     }
 
     /**
      * Sends a message asynchronously.  Returns immediately without error.
-     * Success or failure is logged through the logging system.
+     * If there is no fanout, the message is queued behind any other
+     * messages from this mailer, and if there is an outbox,
+     * it is spooled there before this method returns,
+     * so that delivery is retried until it succeeds.
+     * Success or failure is logged through the logging system,
+     * and recorded per recipient in the returned handle.
      *
      * @param  topic   short summary of message (included in Subject line)
      * @param  body    content of email
+     * @return  handle giving delivery outcomes
      */
-    public void scheduleSendMessage( final String topic, final String body ) {
-        new Thread( "Mailer" ) {
+    public MailDelivery scheduleSendMessage( String topic, String body ) {
+        return scheduleSendMessage( topic, body, recipients_ );
+    }
+
+    /**
+     * Sends a message asynchronously to a subset of this mailer's
+     * recipients.  Behaviour is otherwise the same as for the
+     * two-argument method.
+     *
+     * @param  topic   short summary of message (included in Subject line)
+     * @param  body    content of email
+     * @param  recipients  recipients for this message
+     * @return  handle giving delivery outcomes
+     */
+    public MailDelivery scheduleSendMessage( final String topic,
+                                             final String body,
+                                             final Address[] recipients ) {
+        final long t0 = System.nanoTime();
+        final MailDelivery delivery = new MailDelivery( topic, recipients );
+        final MimeMessage msg;
+        try {
+            msg = createMessage( topic, body, recipients );
+        }
+        catch ( MessagingException e ) {
+            delivery.setOutcome( recipients, MailDelivery.Outcome.FAILED, e );
+            delivery.complete();
+            reportFailure( topic, recipients, e );
+            return delivery;
+        }
+        Fanout fanout = fanout_;
+
+        /* In fanout mode, every message goes through the group lanes,
+         * even if it has only one recipient, so that messages to each
+         * recipient keep their order. */
+        if ( fanout != Fanout.NONE && recipients.length > 0 ) {
+            new FanoutJob( msg, delivery, fanout, t0 ).start();
+            return delivery;
+        }
+        if ( outbox_ != null ) {
+            try {
+                outbox_.spool( msg );
+                delivery.setOutcome( recipients,
+                                     MailDelivery.Outcome.SPOOLED, null );
+                delivery.complete();
+                flushOutbox();
+                return delivery;
+            }
+            catch ( IOException e ) {
+                logger_.log( Level.SEVERE, "Failed to spool email to "
+                           + outbox_.getDirectory() + ": " + topic, e );
+            }
+            catch ( MessagingException e ) {
+                logger_.log( Level.SEVERE,
+                             "Failed to spool email: " + topic, e );
+            }
+        }
+        final Lane lane = getLane();
+        lane.execute( new Runnable() {
             public void run() {
-                sendMessage( topic, body );
+                try {
+                    lane.deliver( msg, recipients, t0 );
+                    delivery.setOutcome( recipients,
+                                         MailDelivery.Outcome.SENT, null );
+                    logSent( topic, recipients.length );
+                }
+                catch ( SendFailedException e ) {
+                    setOutcomes( delivery, e, MailDelivery.Outcome.FAILED );
+                    reportFailure( topic, recipients, e );
+                }
+                catch ( MessagingException e ) {
+                    delivery.setOutcome( recipients,
+                                         MailDelivery.Outcome.FAILED, e );
+                    reportFailure( topic, recipients, e );
+                }
+                finally {
+                    delivery.complete();
+                }
             }
-        }.start();
+        }, delivery );
+        return delivery;
     }
 
     /**
@@ -86,41 +323,21 @@ public class Mailer {
      * @return   true  iff send attempt was apparently successful
      */
     public boolean sendMessage( String topic, String body ) {
-        try { 
+        try {
             attemptSendMessage( topic, body );
-            int nr = recipients_.length;
-            logger_.info( "Sent email to " + nr + " "
-                        + ( nr == 1 ? "address" : "addresses" )
-                        + ": " + topic );
+            logSent( topic, recipients_.length );
             return true;
         }
         catch ( MessagingException e ) {
-            logger_.log( Level.SEVERE,
-                         "Failed to send email: " + topic, e );
-            logger_.log( Level.SEVERE,
-                         "Failed recipients: "
-                       + Arrays.toString( recipients_ ) );
-            if ( parent_ != null ) {
-                List<String> lines = new ArrayList<String>();
-                lines.add( "Failed to send email: " + topic );
-                lines.add( " " );
-                lines.add( "Intended recipients: " );
-                for ( Address r : recipients_ ) {
-                    lines.add( "   " + r );
-                }
-                lines.add( " " );
-                lines.add( "Error: " + e );
-                JOptionPane.showMessageDialog( parent_,
-                                               lines.toArray( new String[ 0 ] ),
-                                               "Email failure",
-                                               JOptionPane.WARNING_MESSAGE );
-            }
+            reportFailure( topic, recipients_, e );
             return false;
         }
     }
 
     /**
      * Attempts to send an email synchronously.
+     * The message is queued behind any other messages from this mailer,
+     * and this method waits until it has been delivered.
      * May throw an exception, though delivery failures may end up just
      * getting returned to the sender.
      *
@@ -129,21 +346,951 @@ public class Mailer {
      */
     public void attemptSendMessage( String topic, String body )
             throws MessagingException {
-        MimeMessage msg = new MimeMessage( Session.getInstance( props_ ) );
-        msg.setFrom( sender_ );
-        msg.setRecipients( Message.RecipientType.TO, recipients_ );
+        final long t0 = System.nanoTime();
+        final MimeMessage msg = createMessage( topic, body );
+        final Lane lane = getLane();
+        Future<?> future = lane.submit( new Callable<Object>() {
+            public Object call() throws MessagingException {
+                lane.deliver( msg, recipients_, t0 );
+                return null;
+            }
+        } );
+        try {
+            future.get();
+        }
+        catch ( ExecutionException e ) {
+            Throwable cause = e.getCause();
+            if ( cause instanceof MessagingException ) {
+                throw (MessagingException) cause;
+            }
+            else {
+                throw new MessagingException( "Delivery failed", e );
+            }
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException( "Interrupted", e );
+        }
+    }
+
+    /**
+     * Asynchronously attempts delivery of any messages waiting in
+     * this mailer's outbox.  Does nothing if there is no outbox.
+     */
+    public void flushOutbox() {
+        if ( outbox_ != null ) {
+            final Lane lane = getLane();
+            lane.execute( new Runnable() {
+                public void run() {
+                    drainOutbox( lane, false );
+                }
+            }, null );
+        }
+    }
+
+    /**
+     * Returns this mailer's outbox.
+     *
+     * @return  outbox, or null
+     */
+    public MailOutbox getOutbox() {
+        return outbox_;
+    }
+
+    /**
+     * Returns the time taken for the most recent message to be accepted
+     * by the SMTP server, measured from when it was submitted to this
+     * mailer.  For alarm messages this is the delay between the
+     * danger status being signalled and the alarm leaving this
+     * application.
+     *
+     * @return  latency in milliseconds, or -1 if nothing has been sent
+     */
+    public long getLastAcceptMillis() {
+        return lastAcceptMillis_;
+    }
+
+    /**
+     * Shuts down the delivery threads and closes any open connections,
+     * after delivering messages that have already been submitted.
+     * Outbox messages still undelivered remain spooled, and
+     * fanout retries not yet started are abandoned.
+     */
+    public synchronized void close() {
+        if ( lane_ != null ) {
+            lane_.close();
+            lane_ = null;
+        }
+        for ( Lane lane : groupLanes_.values() ) {
+            lane.close();
+        }
+        groupLanes_.clear();
+    }
+
+    /**
+     * Constructs, but does not send, an email message.
+     *
+     * @param  topic   short summary of message (included in Subject line)
+     * @param  body    content of email
+     * @return  message ready to send
+     */
+    public MimeMessage createMessage( String topic, String body )
+            throws MessagingException {
+        return createMessage( topic, body, recipients_ );
+    }
+
+    /**
+     * Constructs, but does not send, an email message to given recipients.
+     *
+     * @param  topic   short summary of message (included in Subject line)
+     * @param  body    content of email
+     * @param  recipients  recipients
+     * @return  message ready to send
+     */
+    public MimeMessage createMessage( String topic, String body,
+                                      Address[] recipients )
+            throws MessagingException {
+        Server server = server_;
+        MimeMessage msg = new MimeMessage( server.session_ );
+        msg.setFrom( server.sender_ );
+        msg.setRecipients( Message.RecipientType.TO, recipients );
         msg.setSentDate( new Date() );
         msg.setSubject( subjectPrefix_ + topic );
         msg.setText( body );
-        Transport.send( msg );
+        msg.saveChanges();
+        return msg;
+    }
+
+    /**
+     * Returns the lane that delivers whole messages, starting it if
+     * necessary.  It has a single thread, and since all messages are
+     * submitted with zero delay they are delivered in submission order.
+     *
+     * @return  main delivery lane
+     */
+    private synchronized Lane getLane() {
+        if ( lane_ == null ) {
+            lane_ = new Lane( "Mailer" );
+        }
+        return lane_;
+    }
+
+    /**
+     * Returns the lane that delivers to a given fanout group,
+     * starting it if necessary.
+     *
+     * @param  group  group key
+     * @return  group delivery lane
+     */
+    private synchronized Lane getGroupLane( String group ) {
+        Lane lane = groupLanes_.get( group );
+        if ( lane == null ) {
+            lane = new Lane( "Mailer " + group );
+            groupLanes_.put( group, lane );
+        }
+        return lane;
+    }
+
+    /**
+     * Attempts to deliver all the messages in the outbox in order.
+     * Delivered messages are removed, and messages rejected by the
+     * server are moved aside.  If the server accepts some recipients
+     * but not others, the message is rewritten for the remaining ones.
+     * On any other failure, delivery stops,
+     * so that order is preserved, and a retry is scheduled.
+     * Only failures of scheduled retries increase the retry delay,
+     * so that new messages get an immediate attempt without
+     * postponing a retry that is already pending.
+     * The outbox is locked throughout, so that mailers sharing it
+     * do not send the same message twice.
+     * Called only from the main lane's delivery thread.
+     *
+     * @param  lane  main lane
+     * @param  isRetry  true iff this is a scheduled retry
+     */
+    private void drainOutbox( Lane lane, boolean isRetry ) {
+        boolean retryPending = retryFuture_ != null
+                            && ! retryFuture_.isDone() && ! isRetry;
+        synchronized ( outbox_ ) {
+            for ( File file : outbox_.getSpooled() ) {
+                if ( ! file.exists() ) {
+                    continue;
+                }
+                MimeMessage msg;
+                String subject;
+                try {
+                    msg = outbox_.load( file );
+                    subject = msg.getSubject();
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.SEVERE,
+                                 "Unreadable spooled email " + file, e );
+                    outbox_.reject( file );
+                    continue;
+                }
+                catch ( MessagingException e ) {
+                    logger_.log( Level.SEVERE,
+                                 "Unreadable spooled email " + file, e );
+                    outbox_.reject( file );
+                    continue;
+                }
+                long ageMillis = System.currentTimeMillis()
+                               - outbox_.getSpoolMillis( file );
+                long t0 = System.nanoTime() - ageMillis * 1000000;
+                MessagingException error;
+                try {
+                    Address[] rcpts = msg.getAllRecipients();
+                    lane.deliver( msg, rcpts, t0 );
+                    Latencies.getHistogram( "mail.outbox" ).recordSince( t0 );
+                    outbox_.remove( file );
+                    nRetry_ = 0;
+                    logSent( subject, rcpts.length );
+                    continue;
+                }
+                catch ( SendFailedException e ) {
+                    Address[] unsent = e.getValidUnsentAddresses();
+                    if ( unsent == null || unsent.length == 0 ) {
+                        outbox_.reject( file );
+                        reportFailure( subject, e.getInvalidAddresses(), e );
+                        continue;
+                    }
+
+                    /* Recipients rejected outright are dropped from the
+                     * spooled copy, so report them now. */
+                    Address[] invalid = e.getInvalidAddresses();
+                    if ( invalid != null && invalid.length > 0 ) {
+                        reportFailure( subject, invalid, e );
+                    }
+                    try {
+                        msg.setRecipients( Message.RecipientType.TO, unsent );
+                        msg.setRecipients( Message.RecipientType.CC,
+                                           (Address[]) null );
+                        outbox_.rewrite( file, msg );
+                    }
+                    catch ( IOException e2 ) {
+                        logger_.log( Level.WARNING,
+                                     "Failed to rewrite " + file, e2 );
+                    }
+                    catch ( MessagingException e2 ) {
+                        logger_.log( Level.WARNING,
+                                     "Failed to rewrite " + file, e2 );
+                    }
+                    error = e;
+                }
+                catch ( MessagingException e ) {
+                    error = e;
+                }
+                String depthTxt = "outbox depth " + outbox_.getDepth()
+                                + ", oldest " + ageMillis / 1000 + "s";
+                if ( retryPending ) {
+                    logger_.warning( "Email delivery failed, retry "
+                                   + "pending (" + depthTxt + "): " + error );
+                    return;
+                }
+                long delay = getRetryDelay( nRetry_++ );
+                logger_.warning( "Email delivery failed, retry "
+                               + nRetry_ + " in " + delay / 1000 + "s ("
+                               + depthTxt + "): " + error );
+                if ( nRetry_ == 1 ) {
+                    reportFailure( subject, recipients_, error );
+                }
+                scheduleRetry( lane, delay );
+                return;
+            }
+        }
+        if ( retryFuture_ != null ) {
+            retryFuture_.cancel( false );
+            retryFuture_ = null;
+        }
+    }
+
+    /**
+     * Schedules a retry of outbox delivery.
+     * Called only from the main lane's delivery thread.
+     *
+     * @param  lane  main lane
+     * @param  delay  delay in milliseconds
+     */
+    private void scheduleRetry( final Lane lane, long delay ) {
+        try {
+            retryFuture_ = lane.exec_.schedule( new Runnable() {
+                public void run() {
+                    drainOutbox( lane, true );
+                }
+            }, delay, TimeUnit.MILLISECONDS );
+        }
+        catch ( RejectedExecutionException e ) {
+            logger_.info( "Mailer closed, outbox retry abandoned" );
+        }
+    }
+
+    /**
+     * Returns the delay before the next outbox retry.
+     *
+     * @param  iRetry  number of consecutive failures so far, minus one
+     * @return  delay in milliseconds
+     */
+    private long getRetryDelay( int iRetry ) {
+        long base = RETRY_MIN_MILLIS << Math.min( iRetry, 16 );
+        double jitter = 1.0 + RETRY_JITTER * ( 2 * random_.nextDouble() - 1 );
+        return (long) ( Math.min( base, RETRY_MAX_MILLIS ) * jitter );
+    }
+
+    /**
+     * Splits recipients into fanout groups.
+     *
+     * @param  fanout  fanout mode
+     * @param  recipients  recipients
+     * @return   map from group key to recipients, in recipient order
+     */
+    private Map<String,List<Address>> groupRecipients( Fanout fanout,
+                                                       Address[] recipients ) {
+        Map<String,List<Address>> groups =
+            new LinkedHashMap<String,List<Address>>();
+        for ( Address addr : recipients ) {
+            String txt = addr instanceof InternetAddress
+                       ? ((InternetAddress) addr).getAddress()
+                       : addr.toString();
+            txt = txt.toLowerCase();
+            String key = fanout == Fanout.DOMAIN
+                       ? txt.substring( txt.lastIndexOf( '@' ) + 1 )
+                       : txt;
+            List<Address> list = groups.get( key );
+            if ( list == null ) {
+                list = new ArrayList<Address>();
+                groups.put( key, list );
+            }
+            list.add( addr );
+        }
+        return groups;
+    }
+
+    /**
+     * Records per-recipient outcomes reported by a partial send failure.
+     *
+     * @param  delivery  delivery handle
+     * @param  e  send failure
+     * @param  unsentOutcome  outcome for valid addresses that were not sent
+     * @return  valid addresses that were not sent, or null if the
+     *          exception gives no information about recipients
+     */
+    private static Address[] setOutcomes( MailDelivery delivery,
+                                          SendFailedException e,
+                                          MailDelivery.Outcome unsentOutcome ) {
+        Address[] sent = e.getValidSentAddresses();
+        Address[] invalid = e.getInvalidAddresses();
+        Address[] unsent = e.getValidUnsentAddresses();
+        if ( sent == null && invalid == null && unsent == null ) {
+            return null;
+        }
+        delivery.setOutcome( sent, MailDelivery.Outcome.SENT, null );
+        delivery.setOutcome( invalid, MailDelivery.Outcome.REJECTED, e );
+        delivery.setOutcome( unsent, unsentOutcome, e );
+        return unsent == null ? new Address[ 0 ] : unsent;
+    }
+
+    /**
+     * Indicates whether a message announces an alarm,
+     * that is whether its topic starts with {@link #ALARM_TOPIC}.
+     *
+     * @param  msg  message
+     * @return  true for an alarm message
+     */
+    private boolean isAlarmMessage( MimeMessage msg ) {
+        try {
+            String subject = msg.getSubject();
+            return subject != null
+                && subject.startsWith( subjectPrefix_ + ALARM_TOPIC );
+        }
+        catch ( MessagingException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * Logs successful sending of a message.
+     *
+     * @param  topic  message topic
+     * @param  nr   number of recipients
+     */
+    private void logSent( String topic, int nr ) {
+        logger_.info( "Sent email to " + nr + " "
+                    + ( nr == 1 ? "address" : "addresses" )
+                    + ": " + topic );
+    }
+
+    /**
+     * Reports failure to send a message through the logging system,
+     * and if there is a parent component, by posting a dialog.
+     * The dialog does not block the caller unless it is
+     * on the Event Dispatch Thread.
+     *
+     * @param  topic  message topic
+     * @param  recipients  recipients that did not get the message
+     * @param  e   error
+     */
+    private void reportFailure( String topic, Address[] recipients,
+                                MessagingException e ) {
+        if ( recipients == null ) {
+            recipients = new Address[ 0 ];
+        }
+        logger_.log( Level.SEVERE,
+                     "Failed to send email: " + topic, e );
+        logger_.log( Level.SEVERE,
+                     "Failed recipients: "
+                   + Arrays.toString( recipients ) );
+        if ( parent_ != null ) {
+            List<String> lines = new ArrayList<String>();
+            lines.add( "Failed to send email: " + topic );
+            lines.add( " " );
+            lines.add( "Intended recipients: " );
+            for ( Address r : recipients ) {
+                lines.add( "   " + r );
+            }
+            lines.add( " " );
+            lines.add( "Error: " + e );
+            final String[] msg = lines.toArray( new String[ 0 ] );
+            Runnable poster = new Runnable() {
+                public void run() {
+                    JOptionPane.showMessageDialog( parent_, msg,
+                                                   "Email failure",
+                                                   JOptionPane
+                                                  .WARNING_MESSAGE );
+                }
+            };
+            if ( EventQueue.isDispatchThread() ) {
+                poster.run();
+            }
+            else {
+                EventQueue.invokeLater( poster );
+            }
+        }
+    }
+
+    /**
+     * Modes for splitting asynchronous deliveries between recipients.
+     */
+    public enum Fanout {
+
+        /** Each message is delivered to all recipients at once. */
+        NONE,
+
+        /** Each recipient gets a separate delivery. */
+        RECIPIENT,
+
+        /** Recipients in each mail domain get a separate delivery. */
+        DOMAIN;
+    }
+
+    /**
+     * Delivery queue with its own thread and SMTP connection.
+     */
+    private class Lane {
+
+        private final ScheduledThreadPoolExecutor exec_;
+        private PhasedTransport transport_;
+        private Server transportServer_;
+
+        /**
+         * Constructor.
+         *
+         * @param  threadName  name of delivery thread
+         */
+        Lane( final String threadName ) {
+            exec_ = new ScheduledThreadPoolExecutor( 1, new ThreadFactory() {
+                public Thread newThread( Runnable r ) {
+                    Thread th = new Thread( r, threadName );
+                    th.setDaemon( true );
+                    return th;
+                }
+            } );
+            exec_.setExecuteExistingDelayedTasksAfterShutdownPolicy( false );
+            exec_.scheduleWithFixedDelay( new Runnable() {
+                public void run() {
+                    keepAlive();
+                }
+            }, KEEPALIVE_MILLIS, KEEPALIVE_MILLIS, TimeUnit.MILLISECONDS );
+        }
+
+        /**
+         * Queues a task for execution on this lane.
+         * If the lane has been closed, the task is not run,
+         * and any given delivery handle is marked as complete.
+         *
+         * @param  task  task
+         * @param  delivery  delivery handle for the task, or null
+         */
+        void execute( Runnable task, MailDelivery delivery ) {
+            try {
+                exec_.execute( task );
+            }
+            catch ( RejectedExecutionException e ) {
+                logger_.warning( "Mailer closed, email not sent" );
+                if ( delivery != null ) {
+                    delivery.complete();
+                }
+            }
+        }
+
+        /**
+         * Queues a task for execution on this lane.
+         *
+         * @param  task  task
+         * @return  future
+         */
+        Future<?> submit( Callable<?> task ) {
+            return exec_.submit( task );
+        }
+
+        /**
+         * Delivers a message using the persistent connection.
+         * If delivery fails on a connection that was already open
+         * because of a connection-level error before the DATA command
+         * was sent, which may just mean the server has dropped it,
+         * one more attempt is made on a fresh connection.
+         * Once DATA has been sent the server may have accepted
+         * the message, so it is not sent again here.
+         * Called only from this lane's delivery thread.
+         *
+         * @param  msg  message
+         * @param  recipients  envelope recipients
+         * @param  t0   System.nanoTime() value at submission
+         */
+        void deliver( MimeMessage msg, Address[] recipients, long t0 )
+                throws MessagingException {
+            boolean wasOpen = transport_ != null;
+            try {
+                sendOnTransport( msg, recipients );
+            }
+            catch ( MessagingException e ) {
+                if ( transport_ == null || ! transport_.isLost( e ) ) {
+                    throw e;
+                }
+                boolean isRetryable = wasOpen && ! transport_.isDataSent();
+                closeTransport();
+                if ( isRetryable ) {
+                    logger_.info( "Reconnecting to "
+                                + transportServer_.smtpServer_
+                                + " after error: " + e );
+                    sendOnTransport( msg, recipients );
+                }
+                else {
+                    throw e;
+                }
+            }
+            long millis = ( System.nanoTime() - t0 ) / 1000000;
+            lastAcceptMillis_ = millis;
+            if ( isAlarmMessage( msg ) ) {
+                Latencies.recordSinceAlarm( "mail.alarm" );
+            }
+            logger_.info( "Email accepted by "
+                        + transportServer_.smtpServer_ + " after "
+                        + millis + "ms" );
+        }
+
+        /**
+         * Sends a message on the current connection,
+         * opening it if required.
+         * If the server has been changed since the connection was opened,
+         * the connection is replaced by one to the new server.
+         *
+         * @param  msg  message ready to send
+         * @param  recipients  envelope recipients
+         */
+        private void sendOnTransport( MimeMessage msg, Address[] recipients )
+                throws MessagingException {
+            Server server = server_;
+            if ( transport_ != null && transportServer_ != server ) {
+                logger_.info( "Switching SMTP connection from "
+                            + transportServer_.smtpServer_ + " to "
+                            + server.smtpServer_ );
+                closeTransport();
+            }
+            if ( transport_ == null ) {
+                PhasedTransport transport =
+                    new PhasedTransport( server.session_ );
+                transport.connect();
+                transport_ = transport;
+                transportServer_ = server;
+            }
+            transport_.sendMessage( msg, recipients );
+        }
+
+        /**
+         * Checks that an open connection is still alive, and closes it
+         * if not.  For SMTP, Transport.isConnected sends a NOOP.
+         * Called only from this lane's delivery thread.
+         */
+        private void keepAlive() {
+            if ( transport_ != null && ! transport_.isConnected() ) {
+                logger_.info( "SMTP connection to "
+                            + transportServer_.smtpServer_ + " lost" );
+                closeTransport();
+            }
+        }
+
+        /**
+         * Closes the connection if it is open.
+         * Called only from this lane's delivery thread.
+         */
+        private void closeTransport() {
+            if ( transport_ != null ) {
+                try {
+                    transport_.close();
+                }
+                catch ( MessagingException e ) {
+                    logger_.log( Level.FINE,
+                                 "Error closing SMTP connection", e );
+                }
+                transport_ = null;
+            }
+        }
+
+        /**
+         * Shuts down this lane after tasks already queued,
+         * closing its connection.
+         */
+        void close() {
+            exec_.execute( new Runnable() {
+                public void run() {
+                    closeTransport();
+                }
+            } );
+            exec_.shutdown();
+        }
+    }
+
+    /**
+     * Delivers a single message in parallel to fanout groups.
+     */
+    private class FanoutJob {
+
+        private final MimeMessage msg_;
+        private final MailDelivery delivery_;
+        private final Fanout fanout_;
+        private final long t0_;
+        private final AtomicInteger nLeft_;
+        private File heldFile_;
+        private volatile MessagingException lastError_;
+
+        /**
+         * Constructor.
+         *
+         * @param  msg  message ready to send
+         * @param  delivery  delivery handle
+         * @param  fanout   fanout mode
+         * @param  t0   System.nanoTime() value at submission
+         */
+        FanoutJob( MimeMessage msg, MailDelivery delivery, Fanout fanout,
+                   long t0 ) {
+            msg_ = msg;
+            delivery_ = delivery;
+            fanout_ = fanout;
+            t0_ = t0;
+            nLeft_ = new AtomicInteger();
+        }
+
+        /**
+         * Spools the message as held if there is an outbox,
+         * and starts delivery to each group.
+         */
+        void start() {
+            if ( outbox_ != null ) {
+                try {
+                    heldFile_ = outbox_.spool( msg_, true );
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.SEVERE, "Failed to spool email to "
+                               + outbox_.getDirectory(), e );
+                }
+                catch ( MessagingException e ) {
+                    logger_.log( Level.SEVERE, "Failed to spool email", e );
+                }
+            }
+            Map<String,List<Address>> groups = groupRecipients( fanout_,
+                                    delivery_.getRecipients() );
+            nLeft_.set( groups.size() );
+            for ( Map.Entry<String,List<Address>> entry :
+                  groups.entrySet() ) {
+                Address[] addrs =
+                    entry.getValue().toArray( new Address[ 0 ] );
+                submit( getGroupLane( entry.getKey() ), addrs );
+            }
+        }
+
+        /**
+         * Queues delivery to some recipients.
+         *
+         * @param  lane  lane for the recipients' group
+         * @param  addrs  recipients
+         */
+        private void submit( final Lane lane, final Address[] addrs ) {
+            Runnable task = new Runnable() {
+                public void run() {
+                    attempt( lane, addrs );
+                }
+            };
+            try {
+                lane.exec_.execute( task );
+            }
+            catch ( RejectedExecutionException e ) {
+                logger_.warning( "Mailer closed, email not sent to "
+                               + Arrays.toString( addrs ) );
+                groupDone();
+            }
+        }
+
+        /**
+         * Delivers to some recipients, retrying those that fail
+         * a few times if appropriate.  The lane's thread waits between
+         * attempts, so that later messages to the same group are not
+         * delivered before this one.
+         * Called from the group lane's delivery thread.
+         *
+         * @param  lane  lane for the recipients' group
+         * @param  addrs  recipients
+         */
+        private void attempt( Lane lane, Address[] addrs ) {
+            for ( int iAttempt = 0; true; iAttempt++ ) {
+                Address[] retryAddrs;
+                MessagingException error;
+                try {
+                    lane.deliver( new MimeMessage( msg_ ), addrs, t0_ );
+                    delivery_.setOutcome( addrs, MailDelivery.Outcome.SENT,
+                                          null );
+                    groupDone();
+                    return;
+                }
+                catch ( SendFailedException e ) {
+                    retryAddrs = setOutcomes( delivery_, e,
+                                              MailDelivery.Outcome.PENDING );
+                    if ( retryAddrs == null ) {
+                        retryAddrs = addrs;
+                    }
+                    error = e;
+                }
+                catch ( MessagingException e ) {
+                    retryAddrs = addrs;
+                    error = e;
+                }
+                lastError_ = error;
+                if ( retryAddrs.length == 0 ) {
+                    groupDone();
+                    return;
+                }
+                else if ( iAttempt + 1 >= FANOUT_ATTEMPTS ) {
+                    delivery_.setOutcome( retryAddrs,
+                                          MailDelivery.Outcome.FAILED,
+                                          error );
+                    groupDone();
+                    return;
+                }
+                logger_.warning( "Email delivery to "
+                               + Arrays.toString( retryAddrs )
+                               + " failed, retrying: " + error );
+                try {
+                    Thread.sleep( FANOUT_RETRY_MILLIS << iAttempt );
+                }
+                catch ( InterruptedException e ) {
+                    Thread.currentThread().interrupt();
+                    delivery_.setOutcome( retryAddrs,
+                                          MailDelivery.Outcome.PENDING,
+                                          error );
+                    groupDone();
+                    return;
+                }
+                addrs = retryAddrs;
+            }
+        }
+
+        /**
+         * Called when delivery to a group has finished, one way or another.
+         * When all groups are finished, recipients that failed or are still
+         * pending are passed to the outbox together and the delivery handle
+         * is completed.
+         */
+        private void groupDone() {
+            if ( nLeft_.decrementAndGet() > 0 ) {
+                return;
+            }
+            Address[] failed =
+                delivery_.getRecipients( MailDelivery.Outcome.FAILED );
+            Address[] pending =
+                delivery_.getRecipients( MailDelivery.Outcome.PENDING );
+            List<Address> respoolList = new ArrayList<Address>();
+            respoolList.addAll( Arrays.asList( failed ) );
+            respoolList.addAll( Arrays.asList( pending ) );
+            Address[] respool = respoolList.toArray( new Address[ 0 ] );
+            if ( heldFile_ != null ) {
+                if ( respool.length > 0 ) {
+                    try {
+                        MimeMessage remainder = new MimeMessage( msg_ );
+                        remainder.setRecipients( Message.RecipientType.TO,
+                                                 respool );
+                        outbox_.rewrite( heldFile_, remainder );
+                        delivery_.setOutcome( respool,
+                                              MailDelivery.Outcome.SPOOLED,
+                                              null );
+                        flushOutbox();
+                    }
+                    catch ( IOException e ) {
+                        logger_.log( Level.SEVERE,
+                                     "Failed to spool unsent email", e );
+                        outbox_.remove( heldFile_ );
+                    }
+                    catch ( MessagingException e ) {
+                        logger_.log( Level.SEVERE,
+                                     "Failed to spool unsent email", e );
+                        outbox_.remove( heldFile_ );
+                    }
+                }
+                else {
+                    outbox_.remove( heldFile_ );
+                }
+            }
+            delivery_.complete();
+            String topic = delivery_.getTopic();
+            Address[] sent =
+                delivery_.getRecipients( MailDelivery.Outcome.SENT );
+            if ( sent.length > 0 ) {
+                logSent( topic, sent.length );
+            }
+            Address[] lost =
+                delivery_.getRecipients( MailDelivery.Outcome.FAILED );
+            Address[] rejected =
+                delivery_.getRecipients( MailDelivery.Outcome.REJECTED );
+            Address[] spooled =
+                delivery_.getRecipients( MailDelivery.Outcome.SPOOLED );
+            if ( spooled.length > 0 ) {
+                logger_.warning( "Email to " + Arrays.toString( spooled )
+                               + " spooled for retry: " + topic );
+            }
+            if ( lost.length > 0 || rejected.length > 0 ) {
+                List<Address> unsent = new ArrayList<Address>();
+                unsent.addAll( Arrays.asList( lost ) );
+                unsent.addAll( Arrays.asList( rejected ) );
+                Exception error = delivery_.getError( unsent.get( 0 ) );
+                reportFailure( topic, unsent.toArray( new Address[ 0 ] ),
+                               error instanceof MessagingException
+                                   ? (MessagingException) error
+                                   : lastError_ );
+            }
+        }
     }
 
+    /**
+     * SMTP transport that keeps track of whether the DATA command
+     * has been issued for the message currently being sent,
+     * so that a failed delivery can be safely retried only if
+     * the server cannot yet have accepted the message.
+     */
+    private static class PhasedTransport extends SMTPTransport {
+
+        private boolean isDataSent_;
+
+        /**
+         * Constructor.
+         *
+         * @param  session  mail session with SMTP connection properties
+         */
+        PhasedTransport( Session session ) {
+            super( session, new URLName( "smtp", null, -1, null, null, null ) );
+        }
+
+        @Override
+        public synchronized void sendMessage( Message msg,
+                                              Address[] recipients )
+                throws MessagingException {
+            isDataSent_ = false;
+            super.sendMessage( msg, recipients );
+        }
+
+        @Override
+        protected OutputStream data() throws MessagingException {
+            isDataSent_ = true;
+            return super.data();
+        }
+
+        /**
+         * Indicates whether the DATA command was issued during
+         * the last sendMessage call.  If so, the server may have
+         * accepted the message even if the call failed.
+         *
+         * @return  true iff DATA has been sent for the last message
+         */
+        synchronized boolean isDataSent() {
+            return isDataSent_;
+        }
+
+        /**
+         * Indicates whether an error from the last sendMessage call
+         * was a failure of the connection itself rather than
+         * a response from the server.
+         * A SendFailedException normally reports a server response,
+         * but is also used when the connection is found to be closed
+         * while reading a response.
+         *
+         * @param  error  error thrown by sendMessage
+         * @return  true iff the connection is no longer usable
+         */
+        synchronized boolean isLost( MessagingException error ) {
+            return ! ( error instanceof SendFailedException )
+                || getLastReturnCode() <= 0;
+        }
+    }
+
+    /**
+     * Immutable SMTP server settings, replaced as a unit.
+     */
+    private static class Server {
+
+        private final String smtpServer_;
+        private final Address sender_;
+        private final Session session_;
+
+        /**
+         * Constructor.
+         *
+         * @param  smtpServer   SMTP server, as host or host:port
+         * @param  sender   sender's email address
+         */
+        Server( String smtpServer, Address sender ) {
+            smtpServer_ = smtpServer;
+            sender_ = sender;
+            Properties props = new Properties();
+            int icolon = smtpServer.lastIndexOf( ':' );
+            if ( icolon > 0 &&
+                 smtpServer.substring( icolon + 1 ).matches( "[0-9]+" ) ) {
+                props.put( "mail.smtp.host",
+                           smtpServer.substring( 0, icolon ) );
+                props.put( "mail.smtp.port",
+                           smtpServer.substring( icolon + 1 ) );
+            }
+            else {
+                props.put( "mail.smtp.host", smtpServer );
+            }
+            props.put( "mail.smtp.connectiontimeout",
+                       Integer.toString( TIMEOUT_MILLIS ) );
+            props.put( "mail.smtp.timeout",
+                       Integer.toString( TIMEOUT_MILLIS ) );
+            session_ = Session.getInstance( props );
+        }
+    }
+
+    /**
+     * Sends a test message.
+     * Usage: <code>Mailer &lt;recipient&gt; [&lt;host[:port]&gt;]</code>;
+     * the SMTP server defaults to the configured one.
+     */
     public static void main( String[] args ) throws MessagingException {
         Address[] recipients = { new InternetAddress( args[ 0 ] ) };
         ConfigMap cmap = new ConfigMap();
-        Mailer mailer = new Mailer( cmap.get( DmConfig.SMTP_SERVER ),
+        String server = args.length > 1 ? args[ 1 ]
+                                        : cmap.get( DmConfig.SMTP_SERVER );
+        Mailer mailer = new Mailer( server,
                                     cmap.get( DmConfig.SMTP_SENDER ),
                                     recipients, "[mailer] ", null );
         mailer.attemptSendMessage( "Test", "It's a test.\n" );
+        mailer.close();
     }
 }
@@ -0,0 +1,151 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.IOException;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+
+/**
+ * Converts linear PCM audio data incrementally into the
+ * {@link AudioEngine#FORMAT engine format}.
+ * Channels are mixed down to mono and the sample rate is changed
+ * by linear interpolation.  Since interpolation state is carried
+ * between calls, data can be converted a block at a time,
+ * with the same result as converting it all at once.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+class PcmConverter {
+
+    private final int nchan_;
+    private final int frameSize_;
+    private final int sampleBytes_;
+    private final boolean signed_;
+    private final boolean bigEndian_;
+    private final double ratio_;
+    private long nIn_;
+    private double nextX_;
+    private int prev_;
+
+    /**
+     * Constructor.
+     *
+     * @param  inFmt  input format; must be 8- or 16-bit linear PCM
+     */
+    PcmConverter( AudioFormat inFmt ) {
+        nchan_ = inFmt.getChannels();
+        frameSize_ = inFmt.getFrameSize();
+        sampleBytes_ = inFmt.getSampleSizeInBits() / 8;
+        signed_ = AudioFormat.Encoding.PCM_SIGNED
+                 .equals( inFmt.getEncoding() );
+        bigEndian_ = inFmt.isBigEndian();
+        ratio_ = inFmt.getSampleRate() / AudioEngine.FORMAT.getSampleRate();
+    }
+
+    /**
+     * Returns the input frame size.
+     *
+     * @return  bytes per input frame
+     */
+    public int getFrameSize() {
+        return frameSize_;
+    }
+
+    /**
+     * Returns the largest number of output bytes that a call to
+     * {@link #convert convert} may produce for a given number of
+     * input bytes.
+     *
+     * @param  inBytes  input byte count
+     * @return  maximum output byte count
+     */
+    public int getMaxOutputBytes( int inBytes ) {
+        return ( (int) Math.ceil( ( inBytes / frameSize_ ) / ratio_ ) + 1 )
+             * AudioEngine.FORMAT.getFrameSize();
+    }
+
+    /**
+     * Converts a block of input data.
+     *
+     * @param  in  input buffer
+     * @param  off  offset of first input byte
+     * @param  len  number of input bytes; should be a whole number of frames
+     * @param  out  output buffer, with at least
+     *              <code>getMaxOutputBytes(len)</code> bytes available
+     * @param  outOff  offset of first output byte
+     * @return  number of output bytes written
+     */
+    public int convert( byte[] in, int off, int len, byte[] out,
+                        int outOff ) {
+        int nFrame = len / frameSize_;
+        int iOut = outOff;
+        for ( int iFrame = 0; iFrame < nFrame; iFrame++ ) {
+
+            /* Mix input frame down to a single 16-bit sample. */
+            int sum = 0;
+            for ( int ic = 0; ic < nchan_; ic++ ) {
+                int o = off + iFrame * frameSize_ + ic * sampleBytes_;
+                int sample;
+                if ( sampleBytes_ == 1 ) {
+                    sample = signed_ ? in[ o ] << 8
+                                     : ( ( in[ o ] & 0xff ) - 128 ) << 8;
+                }
+                else {
+                    int b0 = in[ o + ( bigEndian_ ? 1 : 0 ) ] & 0xff;
+                    int b1 = in[ o + ( bigEndian_ ? 0 : 1 ) ];
+                    sample = ( b1 << 8 ) | b0;
+                    if ( ! signed_ ) {
+                        sample = ( sample & 0xffff ) - 32768;
+                    }
+                }
+                sum += sample;
+            }
+            int s = sum / nchan_;
+
+            /* Emit any output samples that fall between the previous
+             * input sample and this one. */
+            long k = nIn_++;
+            int s0 = k == 0 ? s : prev_;
+            while ( nextX_ <= k ) {
+                double f = nextX_ - ( k - 1 );
+                int v = (int) Math.round( s0 * ( 1 - f ) + s * f );
+                out[ iOut++ ] = (byte) v;
+                out[ iOut++ ] = (byte) ( v >> 8 );
+                nextX_ += ratio_;
+            }
+            prev_ = s;
+        }
+        return iOut - outOff;
+    }
+
+    /**
+     * Returns a stream giving 8- or 16-bit linear PCM from a given
+     * audio stream.  If the input is already suitable it is returned
+     * unchanged, otherwise the audio system is asked to convert it.
+     *
+     * @param  audioIn  input stream
+     * @return  linear PCM stream suitable for use with this class
+     */
+    public static AudioInputStream toLinear( AudioInputStream audioIn )
+            throws IOException {
+        AudioFormat fmt = audioIn.getFormat();
+        AudioFormat.Encoding enc = fmt.getEncoding();
+        int nbit = fmt.getSampleSizeInBits();
+        boolean isLinear = ( AudioFormat.Encoding.PCM_SIGNED.equals( enc ) ||
+                             AudioFormat.Encoding.PCM_UNSIGNED.equals( enc ) )
+                        && ( nbit == 8 || nbit == 16 );
+        if ( isLinear ) {
+            return audioIn;
+        }
+        AudioFormat pcmFmt =
+            new AudioFormat( fmt.getSampleRate(), 16, fmt.getChannels(),
+                             true, false );
+        try {
+            return AudioSystem.getAudioInputStream( pcmFmt, audioIn );
+        }
+        catch ( IllegalArgumentException e ) {
+            throw new IOException( "Can't decode audio format " + fmt, e );
+        }
+    }
+}
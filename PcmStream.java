@@ -0,0 +1,244 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * Endlessly looping stream of PCM data in the
+ * {@link AudioEngine#FORMAT engine format}, read incrementally
+ * from an audio file.
+ *
+ * <p>A reader thread decodes the file a block at a time into a small
+ * ring buffer, from which the consumer reads.  When the end of the file
+ * is reached, any interval is written as silence and the file is
+ * reopened, while the consumer carries on reading what is already
+ * buffered, so there is no gap in the output.  Memory use depends
+ * only on the buffer size, not on the length of the file.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+class PcmStream {
+
+    private final URL url_;
+    private final int gapBytes_;
+    private final byte[] ring_;
+    private final Thread reader_;
+    private int head_;
+    private int count_;
+    private boolean closed_;
+    private boolean failed_;
+
+    /** Number of input bytes decoded at a time. */
+    private static final int BLOCK_BYTES = 4096;
+
+    private static final Logger logger_ =
+        Logger.getLogger( PcmStream.class.getName() );
+
+    /**
+     * Constructor.  The reader thread is started immediately.
+     *
+     * @param  url  location of audio file
+     * @param  intervalMillis  milliseconds of silence between repeats
+     * @param  ringBytes  size of ring buffer in bytes
+     */
+    PcmStream( URL url, int intervalMillis, int ringBytes ) {
+        url_ = url;
+        int frameSize = AudioEngine.FORMAT.getFrameSize();
+        gapBytes_ = (int) ( intervalMillis * 0.001
+                            * AudioEngine.FORMAT.getFrameRate() )
+                  * frameSize;
+        ring_ = new byte[ ringBytes - ringBytes % frameSize ];
+        reader_ = new Thread( "Audio stream reader" ) {
+            public void run() {
+                try {
+                    fill();
+                }
+                catch ( InterruptedException e ) {
+                }
+                catch ( IOException e ) {
+                    logger_.log( Level.SEVERE,
+                                 "Audio streaming failed for " + url_, e );
+                }
+                finally {
+                    synchronized ( PcmStream.this ) {
+                        failed_ = ! closed_;
+                        PcmStream.this.notifyAll();
+                    }
+                }
+            }
+        };
+        reader_.setDaemon( true );
+        reader_.start();
+    }
+
+    /**
+     * Reads data from the stream, waiting if none is available yet.
+     *
+     * @param  buf  destination buffer
+     * @param  off  offset into buffer
+     * @param  len  maximum number of bytes to read;
+     *              should be a whole number of frames
+     * @return  number of bytes read, or -1 if the stream has failed
+     *          or been closed
+     */
+    public synchronized int read( byte[] buf, int off, int len )
+            throws InterruptedException {
+        while ( count_ == 0 && ! closed_ && ! failed_ ) {
+            wait();
+        }
+        if ( count_ == 0 ) {
+            return -1;
+        }
+        int n = Math.min( len, count_ );
+        int n1 = Math.min( n, ring_.length - head_ );
+        System.arraycopy( ring_, head_, buf, off, n1 );
+        System.arraycopy( ring_, 0, buf, off + n1, n - n1 );
+        head_ = ( head_ + n ) % ring_.length;
+        count_ -= n;
+        notifyAll();
+        return n;
+    }
+
+    /**
+     * Stops the reader thread.  Subsequent reads will return -1.
+     */
+    public void close() {
+        synchronized ( this ) {
+            closed_ = true;
+            count_ = 0;
+            notifyAll();
+        }
+        reader_.interrupt();
+    }
+
+    /**
+     * Reader thread loop.
+     */
+    private void fill() throws IOException, InterruptedException {
+        byte[] silence = new byte[ BLOCK_BYTES ];
+        while ( true ) {
+            AudioInputStream audioIn = openAudio( url_ );
+            try {
+                PcmConverter converter =
+                    new PcmConverter( audioIn.getFormat() );
+                int frameSize = converter.getFrameSize();
+                byte[] inBuf =
+                    new byte[ BLOCK_BYTES - BLOCK_BYTES % frameSize ];
+                byte[] outBuf =
+                    new byte[ converter.getMaxOutputBytes( inBuf.length ) ];
+                int nTotal = 0;
+                for ( int nIn; ( nIn = readFrames( audioIn, inBuf ) ) > 0; ) {
+                    int nOut = converter.convert( inBuf, 0, nIn, outBuf, 0 );
+                    put( outBuf, nOut );
+                    nTotal += nOut;
+                }
+                if ( nTotal == 0 ) {
+                    throw new IOException( "No audio data in " + url_ );
+                }
+            }
+            finally {
+                audioIn.close();
+            }
+            for ( int gap = gapBytes_; gap > 0; gap -= silence.length ) {
+                put( silence, Math.min( gap, silence.length ) );
+            }
+        }
+    }
+
+    /**
+     * Checks that an audio file can be opened and decoded,
+     * by reading its first block.
+     *
+     * @param  url  location of audio file
+     * @throws  IOException  if the file cannot be played
+     */
+    static void check( URL url ) throws IOException {
+        AudioInputStream audioIn = openAudio( url );
+        try {
+            PcmConverter converter = new PcmConverter( audioIn.getFormat() );
+            int frameSize = converter.getFrameSize();
+            byte[] inBuf = new byte[ BLOCK_BYTES - BLOCK_BYTES % frameSize ];
+            if ( readFrames( audioIn, inBuf ) == 0 ) {
+                throw new IOException( "No audio data in " + url );
+            }
+        }
+        finally {
+            audioIn.close();
+        }
+    }
+
+    /**
+     * Opens an audio file as a linear PCM stream.
+     *
+     * @param  url  location of audio file
+     * @return  stream
+     */
+    private static AudioInputStream openAudio( URL url ) throws IOException {
+        InputStream in = new BufferedInputStream( url.openStream() );
+        try {
+            return PcmConverter
+                  .toLinear( AudioSystem.getAudioInputStream( in ) );
+        }
+        catch ( UnsupportedAudioFileException e ) {
+            in.close();
+            throw new IOException( "Unknown audio file type", e );
+        }
+    }
+
+    /**
+     * Reads as many whole frames as will fit into a buffer,
+     * unless the end of the stream is reached first.
+     *
+     * @param  in  audio stream
+     * @param  buf  buffer, a whole number of frames long
+     * @return  number of bytes read, 0 at end of stream
+     */
+    private static int readFrames( AudioInputStream in, byte[] buf )
+            throws IOException {
+        int n = 0;
+        while ( n < buf.length ) {
+            int n1 = in.read( buf, n, buf.length - n );
+            if ( n1 < 0 ) {
+                break;
+            }
+            n += n1;
+        }
+        return n;
+    }
+
+    /**
+     * Adds data to the ring buffer, waiting for space as required.
+     *
+     * @param  buf  data buffer
+     * @param  len  number of bytes to add from the start of buf
+     */
+    private synchronized void put( byte[] buf, int len )
+            throws InterruptedException {
+        int off = 0;
+        while ( len > 0 ) {
+            while ( count_ == ring_.length && ! closed_ ) {
+                wait();
+            }
+            if ( closed_ ) {
+                throw new InterruptedException();
+            }
+            int tail = ( head_ + count_ ) % ring_.length;
+            int n = Math.min( len, ring_.length - count_ );
+            int n1 = Math.min( n, ring_.length - tail );
+            System.arraycopy( buf, off, ring_, tail, n1 );
+            System.arraycopy( buf, off + n1, ring_, 0, n - n1 );
+            count_ += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+}
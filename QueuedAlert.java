@@ -0,0 +1,379 @@
+package uk.ac.bristol.star.deadman;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Alert wrapper that delivers status changes asynchronously,
+ * so that a slow or broken alert cannot hold up the thread
+ * that sets the status, or other alerts.
+ *
+ * <p>Status changes are placed on a bounded queue which is drained by
+ * a dedicated worker thread for this channel.  Repeated calls with
+ * the same status are not queued.  If the queue is full, it is
+ * coalesced down to the most recent status, since that is the one
+ * that matters; but if a danger status would be lost that way,
+ * it is kept in front of the most recent status, so that an alarm
+ * is never silently discarded.
+ *
+ * <p>Only one delivery to the wrapped alert is in progress at a time,
+ * so it never has to cope with concurrent calls.
+ * Each delivery is expected to complete within a fixed time;
+ * if it overruns, that is logged and counted, and the worker waits
+ * for it for the same time again, while further status changes are
+ * queued and coalesced as above.  If it still has not finished,
+ * the delivery is abandoned: it is cancelled, which interrupts it,
+ * and the delivery thread, which may still be stuck in the call,
+ * is replaced by a new one for later deliveries.
+ * The stuck thread is never reused, but of course it may still
+ * be inside the wrapped alert when the next delivery starts.
+ * Exceptions thrown by the
+ * wrapped alert are logged and counted, but go no further.
+ * The threads are stopped by {@link #close}.
+ *
+ * <p>Latencies are recorded in {@link Latencies} under the channel name:
+ * for danger status, <code>name.dispatch</code> from detection to
+ * the start of delivery, <code>name.deliver</code> for the delivery
+ * itself, and <code>name.alarm</code> from detection to the end of
+ * delivery; and for a reset, <code>name.reset</code> from the reset
+ * to the end of delivery.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class QueuedAlert implements Alert {
+
+    private final String name_;
+    private final Alert alert_;
+    private final int capacity_;
+    private final long timeoutMillis_;
+    private final Deque<Object> queue_;
+    private final AtomicLong dropCount_;
+    private final AtomicLong timeoutCount_;
+    private final AtomicLong abandonCount_;
+    private final AtomicLong failureCount_;
+    private final AtomicLong deliveredCount_;
+    private final String dispatchName_;
+    private final String deliverName_;
+    private final String alarmName_;
+    private final String resetName_;
+    private final ThreadFactory threadFactory_;
+    private final Thread worker_;
+    private volatile ExecutorService deliverer_;
+    private Status lastQueued_;
+    private boolean isClosed_;
+
+    /** Default queue capacity. */
+    public static final int DEFAULT_CAPACITY = 16;
+
+    /** Default per-delivery timeout in milliseconds. */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 5000;
+
+    private static final Logger logger_ =
+        Logger.getLogger( QueuedAlert.class.getName() );
+
+    /**
+     * Constructor.
+     *
+     * @param  name  channel name, used in logging and thread names
+     * @param  alert  alert to which status changes are delivered
+     * @param  capacity  maximum number of undelivered status changes
+     * @param  timeoutMillis  time after which a delivery is reported
+     *                        as overdue; it is abandoned after
+     *                        twice this time
+     */
+    public QueuedAlert( String name, Alert alert, int capacity,
+                        long timeoutMillis ) {
+        name_ = name;
+        alert_ = alert;
+        capacity_ = capacity;
+        timeoutMillis_ = timeoutMillis;
+        queue_ = new ArrayDeque<Object>( capacity );
+        dropCount_ = new AtomicLong();
+        timeoutCount_ = new AtomicLong();
+        abandonCount_ = new AtomicLong();
+        failureCount_ = new AtomicLong();
+        deliveredCount_ = new AtomicLong();
+        dispatchName_ = name + ".dispatch";
+        deliverName_ = name + ".deliver";
+        alarmName_ = name + ".alarm";
+        resetName_ = name + ".reset";
+        threadFactory_ = new ThreadFactory() {
+            public Thread newThread( Runnable r ) {
+                Thread th = new Thread( r, "Alert delivery: " + name_ );
+                th.setDaemon( true );
+                return th;
+            }
+        };
+        deliverer_ = Executors.newSingleThreadExecutor( threadFactory_ );
+        worker_ = new Thread( "Alert queue: " + name ) {
+            public void run() {
+                try {
+                    for ( Object item;
+                          ! isInterrupted() && ( item = take() ) != null; ) {
+                        deliver( item == NULL_STATUS ? null
+                                                     : (Status) item );
+                    }
+                }
+                catch ( InterruptedException e ) {
+                }
+                deliverer_.shutdown();
+            }
+        };
+        worker_.setDaemon( true );
+        worker_.start();
+    }
+
+    /**
+     * Queues a status change for delivery.  This never blocks.
+     * Calls after {@link #close} are ignored.
+     */
+    public void setStatus( Status status ) {
+        synchronized ( queue_ ) {
+            if ( status != lastQueued_ && ! isClosed_ ) {
+                lastQueued_ = status;
+                if ( queue_.size() >= capacity_ ) {
+                    coalesce();
+                }
+                queue_.addLast( status == null ? NULL_STATUS : status );
+                queue_.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Stops accepting status changes, waits for those already queued
+     * to be delivered, and stops the worker threads.
+     * If delivery does not finish within twice the delivery timeout,
+     * the threads are interrupted and any remaining queued changes
+     * are discarded.
+     */
+    public void close() {
+        synchronized ( queue_ ) {
+            isClosed_ = true;
+            queue_.notifyAll();
+        }
+        try {
+            worker_.join( 2 * timeoutMillis_ );
+        }
+        catch ( InterruptedException e ) {
+            Thread.currentThread().interrupt();
+        }
+        if ( worker_.isAlive() ) {
+            synchronized ( queue_ ) {
+                logger_.warning( "Alert " + name_ + " still busy on close; "
+                               + "abandoning " + queue_.size()
+                               + " queued changes" );
+                queue_.clear();
+            }
+            worker_.interrupt();
+            deliverer_.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the channel name.
+     *
+     * @return  name
+     */
+    public String getName() {
+        return name_;
+    }
+
+    /**
+     * Returns the number of status changes waiting for delivery.
+     *
+     * @return  queue depth
+     */
+    public int getQueueDepth() {
+        synchronized ( queue_ ) {
+            return queue_.size();
+        }
+    }
+
+    /**
+     * Returns the number of status changes dropped because
+     * the queue was full and was coalesced.
+     *
+     * @return  drop count
+     */
+    public long getDropCount() {
+        return dropCount_.get();
+    }
+
+    /**
+     * Returns the number of deliveries that took longer than the timeout.
+     *
+     * @return  timeout count
+     */
+    public long getTimeoutCount() {
+        return timeoutCount_.get();
+    }
+
+    /**
+     * Returns the number of deliveries abandoned because they did not
+     * complete within twice the timeout.
+     *
+     * @return  abandon count
+     */
+    public long getAbandonCount() {
+        return abandonCount_.get();
+    }
+
+    /**
+     * Returns the number of deliveries in which the wrapped alert
+     * threw an exception.
+     *
+     * @return  failure count
+     */
+    public long getFailureCount() {
+        return failureCount_.get();
+    }
+
+    /**
+     * Returns the number of successfully completed deliveries.
+     *
+     * @return  delivered count
+     */
+    public long getDeliveredCount() {
+        return deliveredCount_.get();
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuffer()
+            .append( name_ )
+            .append( ": delivered=" ).append( getDeliveredCount() )
+            .append( " depth=" ).append( getQueueDepth() )
+            .append( " drops=" ).append( getDropCount() )
+            .append( " timeouts=" ).append( getTimeoutCount() )
+            .append( " abandoned=" ).append( getAbandonCount() )
+            .append( " failures=" ).append( getFailureCount() )
+            .toString();
+    }
+
+    /**
+     * Reduces a full queue to its most recent entry, preceded by
+     * a danger status if that would otherwise be lost.
+     * Must be called with the queue monitor held.
+     */
+    private void coalesce() {
+        Object last = queue_.peekLast();
+        boolean hasDanger = queue_.contains( Status.DANGER );
+        int n0 = queue_.size();
+        queue_.clear();
+        if ( hasDanger && last != Status.DANGER ) {
+            queue_.addLast( Status.DANGER );
+        }
+        queue_.addLast( last );
+        dropCount_.addAndGet( n0 - queue_.size() );
+    }
+
+    /**
+     * Waits for the next queued status change.
+     *
+     * @return  queued item, NULL_STATUS for the null status,
+     *          or null if this channel is closed and the queue is empty
+     */
+    private Object take() throws InterruptedException {
+        synchronized ( queue_ ) {
+            while ( queue_.isEmpty() && ! isClosed_ ) {
+                queue_.wait();
+            }
+            return queue_.pollFirst();
+        }
+    }
+
+    /**
+     * Delivers a status change to the wrapped alert,
+     * and waits for the delivery to complete or be abandoned.
+     * Called only from the worker thread.
+     *
+     * @param  status  status
+     */
+    private void deliver( final Status status ) throws InterruptedException {
+        long t0 = System.nanoTime();
+        if ( status == Status.DANGER ) {
+            Latencies.recordSinceAlarm( dispatchName_ );
+        }
+        ExecutorService deliverer = deliverer_;
+        Future<?> future = deliverer.submit( new Runnable() {
+            public void run() {
+                alert_.setStatus( status );
+            }
+        } );
+        try {
+            try {
+                future.get( timeoutMillis_, TimeUnit.MILLISECONDS );
+            }
+            catch ( TimeoutException e ) {
+                timeoutCount_.incrementAndGet();
+                logger_.warning( "Alert " + name_ + " still busy after "
+                               + timeoutMillis_ + "ms for status " + status );
+
+                /* Give it a while longer, but don't wait for ever,
+                 * or later changes such as a reset would never go out. */
+                try {
+                    future.get( timeoutMillis_, TimeUnit.MILLISECONDS );
+                }
+                catch ( TimeoutException e2 ) {
+                    abandon( deliverer, future, status );
+                    return;
+                }
+                logger_.warning( "Alert " + name_ + " completed after "
+                               + ( System.nanoTime() - t0 ) / 1000000
+                               + "ms for status " + status );
+            }
+            deliveredCount_.incrementAndGet();
+            if ( status == Status.DANGER ) {
+                Latencies.getHistogram( deliverName_ ).recordSince( t0 );
+                Latencies.recordSinceAlarm( alarmName_ );
+            }
+            else if ( status == null ) {
+                Latencies.recordSinceReset( resetName_ );
+            }
+        }
+        catch ( ExecutionException e ) {
+            failureCount_.incrementAndGet();
+            logger_.log( Level.WARNING,
+                         "Alert " + name_ + " failed for status " + status,
+                         e.getCause() );
+        }
+    }
+
+    /**
+     * Abandons a delivery that has not completed.
+     * The delivery is cancelled, and its thread is retired and replaced
+     * by a new one, so that the next delivery does not wait behind it.
+     * Called only from the worker thread.
+     *
+     * @param  deliverer  executor running the stuck delivery
+     * @param  future   stuck delivery
+     * @param  status   status being delivered
+     */
+    private void abandon( ExecutorService deliverer, Future<?> future,
+                          Status status ) {
+        abandonCount_.incrementAndGet();
+        logger_.severe( "Alert " + name_ + " abandoned after "
+                      + 2 * timeoutMillis_ + "ms for status " + status );
+        future.cancel( true );
+        deliverer.shutdownNow();
+        deliverer_ = Executors.newSingleThreadExecutor( threadFactory_ );
+    }
+
+    /**
+     * Queue placeholder for the null status, since ArrayDeque
+     * does not accept null elements.
+     */
+    private static final Object NULL_STATUS = new Object();
+}
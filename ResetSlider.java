@@ -23,6 +23,7 @@ public class ResetSlider extends JPanel {
     private final CountdownModel counter_;
     private final JSlider rSlider_;
     private final JSlider wSlider_;
+    private boolean isRefreshing_;
 
     /**
      * Constructor.
@@ -38,14 +39,18 @@ public class ResetSlider extends JPanel {
         updateSliders();
         rSlider_.addChangeListener( new ChangeListener() {
             public void stateChanged( ChangeEvent evt ) {
-                counter_.setResetSeconds( rSlider_.getValue() );
-                updateSliders();
+                if ( ! isRefreshing_ ) {
+                    counter_.setResetSeconds( rSlider_.getValue() );
+                    updateSliders();
+                }
             }
         } );
         wSlider_.addChangeListener( new ChangeListener() {
             public void stateChanged( ChangeEvent evt ) {
-                counter_.setWarningSeconds( wSlider_.getValue() );
-                updateSliders();
+                if ( ! isRefreshing_ ) {
+                    counter_.setWarningSeconds( wSlider_.getValue() );
+                    updateSliders();
+                }
             }
         } );
         JComponent box = Box.createVerticalBox();
@@ -54,6 +59,26 @@ public class ResetSlider extends JPanel {
         box.add( packageSlider( wSlider_, "Warning Time" ) );
     }
 
+    /**
+     * Updates the sliders to match time settings that have been changed
+     * on the model directly.  Unlike user adjustments of the sliders,
+     * this does not reset the countdown.
+     */
+    public void refresh() {
+        int reset = counter_.getResetSeconds();
+        isRefreshing_ = true;
+        try {
+            if ( reset > rSlider_.getMaximum() ) {
+                rSlider_.setMaximum( reset );
+                wSlider_.setMaximum( reset );
+            }
+            updateSliders();
+        }
+        finally {
+            isRefreshing_ = false;
+        }
+    }
+
     /**
      * Ensures the GUI corresponds to the current model state.
      */
@@ -1,21 +1,10 @@
 package uk.ac.bristol.star.deadman;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URL;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioInputStream;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
-import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.UnsupportedAudioFileException;
 
 /**
  * Alert implementation that plays some audible sounds for different
@@ -24,77 +13,132 @@ import javax.sound.sampled.UnsupportedAudioFileException;
  * <p>Sounds seem a bit complicated.  It seems hard to be sure that
  * playing a sound will actually work at run time.
  * The problem seems to be if something else is using the sound (Clip?)
- * at the same time.
+ * at the same time.  To keep the odds good, playback goes through
+ * an {@link AudioEngine}, which acquires its output line once at
+ * construction time and then keeps it.
  *
  * @author   Mark Taylor
  * @since    28 Jun 2016
  */
 public class SoundAlert implements Alert {
 
-    private static final Logger logger_ =
-        Logger.getLogger( Alert.class.getName() );
-
     private final Map<Status,Sound> soundMap_;
-    private final Clip clip_;
+    private final AudioEngine engine_;
     private Sound currentSound_;
+    private boolean isLoaded_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( Alert.class.getName() );
 
     /**
-     * Constructor.
+     * Constructs an alert with its own audio engine.
      *
      * @param   soundMap  map of which sounds should be played for
      *                    which statuses
      */
     public SoundAlert( Map<Status,Sound> soundMap ) throws IOException {
+        this( soundMap, new AudioEngine() );
+    }
+
+    /**
+     * Constructs an alert using a given audio engine.
+     *
+     * @param   soundMap  map of which sounds should be played for
+     *                    which statuses
+     * @param   engine   audio engine
+     */
+    public SoundAlert( Map<Status,Sound> soundMap, AudioEngine engine ) {
         soundMap_ = soundMap;
-        try {
-            clip_ = AudioSystem.getClip();
-        }
-        catch ( LineUnavailableException e ) {
-            throw new IOException( "Audio trouble", e );
-        }
+        engine_ = engine;
     }
 
+    /**
+     * Switches to the sound for the given status.
+     * Sound data is decoded on first use.  To keep later switches fast,
+     * once the first sound has started all the others in the map are
+     * decoded too, on the calling thread, so this call may take
+     * some milliseconds the first time.
+     */
     public void setStatus( Status status ) {
         Sound sound = soundMap_.get( status );
         if ( sound != currentSound_ ) {
-            final Sound oldSound = currentSound_;
-            final Sound newSound = sound;
             currentSound_ = sound;
-            new Thread() {
-                public void run() {
-                    if ( oldSound != null ) {
-                        oldSound.stop( clip_ );
-                    }
-                    if ( newSound != null && newSound == currentSound_ ) {
-                        try {
-                            newSound.start( clip_ );
-                        }
-                        catch ( LineUnavailableException e ) {
-                            logger_.log( Level.SEVERE,
-                                         "Cannot sound audio alarm!", e );
-                        }
-                    }
+            if ( sound != null ) {
+                load( sound );
+            }
+            engine_.setSound( sound, status == Status.DANGER );
+            if ( sound != null && ! isLoaded_ ) {
+                for ( Sound s : soundMap_.values() ) {
+                    load( s );
                 }
-            }.start();
+                isLoaded_ = true;
+            }
+        }
+    }
+
+    /**
+     * Decodes the sound for a given status now, rather than on first use.
+     * This can be used at startup to make sure that an important sound
+     * is playable.  Streamed sounds are checked by decoding
+     * the start of the file.
+     *
+     * @param  status  status whose sound is required
+     * @throws  IOException  if the sound cannot be read or decoded
+     */
+    public void preload( Status status ) throws IOException {
+        Sound sound = soundMap_.get( status );
+        if ( sound == null ) {
+            throw new IOException( "No sound for status " + status );
+        }
+        else if ( sound.isStreaming() ) {
+            PcmStream.check( sound.getUrl() );
+        }
+        else {
+            sound.getPcm();
+        }
+    }
+
+    /**
+     * Ensures that the data for a sound has been decoded,
+     * logging any failure.
+     *
+     * @param  sound  sound
+     */
+    private static void load( Sound sound ) {
+        if ( sound.isStreaming() ) {
+            return;
+        }
+        try {
+            sound.getPcm();
+        }
+        catch ( IOException e ) {
+            logger_.log( Level.SEVERE, "Cannot load audio alarm!", e );
         }
     }
 
     /**
      * Defines a sound to play.
+     * By default the audio data is obtained from the shared
+     * {@link AudioCache} when the sound is first played,
+     * so sounds that are never played are never decoded.
+     * Long sounds can instead be streamed from the file as they play,
+     * so that they are never held in memory as a whole.
      */
     public static class Sound {
 
-        private final AudioFormat format_;
-        private final byte[] buf_;
+        private final URL url_;
         private final int intervalMillis_;
-        private Timer timer_;
+        private final boolean isStreaming_;
+
+        /** Size in bytes of the ring buffer used for streamed sounds. */
+        private static final int STREAM_BUFFER_BYTES = 32 * 1024;
 
         /**
          * Constructs a sound that just repeats.
          *
          * @param  url   location of audio file
          */
-        public Sound( URL url ) throws IOException {
+        public Sound( URL url ) {
             this( url, 0 );
         }
 
@@ -105,70 +149,93 @@ public class SoundAlert implements Alert {
          * @param  intervalMillis  milliseconds between end of playback
          *                         and start of the next playback
          */
-        public Sound( URL url, int intervalMillis ) throws IOException {
+        public Sound( URL url, int intervalMillis ) {
+            this( url, intervalMillis, false );
+        }
+
+        /**
+         * Constructs a sound that may be streamed.
+         *
+         * @param  url   location of audio file
+         * @param  intervalMillis  milliseconds between end of playback
+         *                         and start of the next playback
+         * @param  isStreaming  true to read the file incrementally
+         *                      while playing, false to decode it
+         *                      into memory up front
+         */
+        public Sound( URL url, int intervalMillis, boolean isStreaming ) {
+            url_ = url;
             intervalMillis_ = intervalMillis;
-            AudioInputStream audioIn;
-            try {
-                audioIn = AudioSystem.getAudioInputStream( url );
-            }
-            catch ( UnsupportedAudioFileException e ) {
-                throw new IOException( "Unknown audio file type", e );
-            }
-            format_ = audioIn.getFormat();
-            ByteArrayOutputStream bufOut = new ByteArrayOutputStream();
-            InputStream bufIn = new BufferedInputStream( audioIn );
-            for ( int c; ( c = bufIn.read() ) >= 0; ) {
-                bufOut.write( c );
-            }
-            bufOut.close();
-            buf_ = bufOut.toByteArray();
+            isStreaming_ = isStreaming;
         }
-     
+
         /**
-         * Starts to loop this sound.
+         * Indicates whether this sound is streamed.
          *
-         * @param  clip  clip instance; should not be in use for anything else
+         * @return  true for streaming, false for in-memory
          */
-        private void start( final Clip clip )
-                throws LineUnavailableException {
-            clip.open( format_, buf_, 0, buf_.length );
-            long periodMillis = 
-                  (long) Math.ceil( clip.getMicrosecondLength() * 0.001 )
-                + intervalMillis_;
-            TimerTask task = new TimerTask() {
-                public void run() {
-                    synchronized ( clip ) {
-                        clip.setFramePosition( 0 );
-                        clip.start();
-                    }
-                }
-            };
-            timer_ = new Timer( "sounder", true );
-            timer_.scheduleAtFixedRate( task, 0, periodMillis );
+        public boolean isStreaming() {
+            return isStreaming_;
         }
 
         /**
-         * Stops looping this sound.
+         * Opens a new looping stream of this sound's audio data
+         * in the engine format.  Only used for streaming sounds.
          *
-         * @param  clip  clip instance; should not be in use for anything else
+         * @return  new stream, to be closed after use
          */
-        private void stop( final Clip clip ) {
-            if ( timer_ != null ) {
-                timer_.cancel();
-                timer_ = null;
-            }
-            clip.stop();
-            clip.close();
+        PcmStream openStream() {
+            return new PcmStream( url_, intervalMillis_,
+                                  STREAM_BUFFER_BYTES );
+        }
+
+        /**
+         * Returns the location of the audio file.
+         *
+         * @return  URL
+         */
+        public URL getUrl() {
+            return url_;
+        }
+
+        /**
+         * Returns the audio data in the engine format,
+         * decoding it if this has not already happened.
+         * Only used for non-streaming sounds.
+         *
+         * @return  PCM data; do not modify
+         */
+        byte[] getPcm() throws IOException {
+            return AudioCache.getSharedInstance().getPcm( url_ );
+        }
+
+        /**
+         * Returns the gap between repeats.
+         *
+         * @return  interval in milliseconds
+         */
+        int getIntervalMillis() {
+            return intervalMillis_;
         }
     }
 
-    /** Plays an audio file from a URL. */
+    /**
+     * Plays an audio file from a URL, and reports the latency of
+     * switching to it and back to silence.
+     * With the <code>-stream</code> flag it is streamed rather than
+     * loaded into memory.
+     */
     public static void main( String[] args ) throws Exception {
-        URL url = new URL( args[ 0 ] );
-        Sound sound = new Sound( new URL( args[ 0 ] ), 1000 );
-        Clip clip = AudioSystem.getClip();
-        sound.start( clip );
+        boolean isStream = args.length > 1 && "-stream".equals( args[ 0 ] );
+        URL url = new URL( args[ args.length - 1 ] );
+        Sound sound = new Sound( url, 1000, isStream );
+        AudioEngine engine = new AudioEngine();
+        engine.setSound( sound );
         Thread.sleep( 5000 );
-        sound.stop( clip );
+        System.out.println( "Switch latency: "
+                          + engine.getLastSwitchNanos() / 1000 + "us" );
+        engine.setSound( null );
+        Thread.sleep( 200 );
+        engine.close();
     }
 }
@@ -0,0 +1,135 @@
+package uk.ac.bristol.star.deadman;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Records the times at which named milestones are reached
+ * during application startup.
+ *
+ * <p>Times are reported in milliseconds since the JVM was started,
+ * where the platform can supply that, so that they include JVM
+ * initialisation and class loading before <code>main</code> is called.
+ * Otherwise they are relative to the first milestone.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class StartupTimer {
+
+    private static final Map<String,Long> marks_ =
+        new LinkedHashMap<String,Long>();
+    private static long originNanos_ = -1;
+    private static long originEpochMillis_;
+    private static long jvmOffsetMillis_ = -1;
+    private static final Logger logger_ =
+        Logger.getLogger( StartupTimer.class.getName() );
+
+    /** Milestone: main method entered. */
+    public static final String MAIN = "main";
+
+    /** Milestone: configuration read. */
+    public static final String CONFIG = "config";
+
+    /** Milestone: application window posted. */
+    public static final String WINDOW = "window";
+
+    /** Milestone: application window first painted. */
+    public static final String FIRST_PAINT = "first paint";
+
+    /** Milestone: all alert channels ready for use. */
+    public static final String ARMED = "alarms armed";
+
+    /**
+     * Private constructor prevents instantiation.
+     */
+    private StartupTimer() {
+    }
+
+    /**
+     * Records that a milestone has been reached now.
+     * Only the first call for each name has any effect.
+     *
+     * @param  name  milestone name
+     */
+    public static synchronized void mark( String name ) {
+        long now = System.nanoTime();
+        if ( originNanos_ < 0 ) {
+            originNanos_ = now;
+            originEpochMillis_ = System.currentTimeMillis();
+        }
+        if ( ! marks_.containsKey( name ) ) {
+            marks_.put( name, Long.valueOf( now ) );
+        }
+    }
+
+    /**
+     * Indicates whether a milestone has been reached.
+     *
+     * @param  name  milestone name
+     * @return  true iff the milestone has been marked
+     */
+    public static synchronized boolean isMarked( String name ) {
+        return marks_.containsKey( name );
+    }
+
+    /**
+     * Returns the time at which a milestone was reached.
+     *
+     * @param  name  milestone name
+     * @return  milliseconds since JVM start, or -1 if not reached
+     */
+    public static synchronized long getMillis( String name ) {
+        Long nanos = marks_.get( name );
+        return nanos == null
+             ? -1
+             : getJvmOffsetMillis()
+               + ( nanos.longValue() - originNanos_ ) / 1000000;
+    }
+
+    /**
+     * Returns a multi-line report of the milestones reached so far.
+     *
+     * @return  report text
+     */
+    public static synchronized String getReport() {
+        StringBuffer sbuf = new StringBuffer();
+        for ( String name : marks_.keySet() ) {
+            sbuf.append( "   " )
+                .append( name )
+                .append( ": " )
+                .append( getMillis( name ) )
+                .append( "ms\n" );
+        }
+        return sbuf.toString();
+    }
+
+    /**
+     * Logs the report at INFO level.
+     */
+    public static synchronized void logReport() {
+        logger_.info( "Startup times since "
+                    + ( getJvmOffsetMillis() > 0 ? "JVM start" : MAIN )
+                    + ":\n" + getReport() );
+    }
+
+    /**
+     * Returns the number of milliseconds between JVM start and
+     * the first milestone.
+     *
+     * @return  offset in milliseconds, or 0 if not known
+     */
+    private static synchronized long getJvmOffsetMillis() {
+        if ( jvmOffsetMillis_ < 0 && originNanos_ >= 0 ) {
+            Instant start =
+                ProcessHandle.current().info().startInstant().orElse( null );
+            jvmOffsetMillis_ =
+                  start == null
+                ? 0
+                : Math.max( 0, originEpochMillis_ - start.toEpochMilli() );
+        }
+        return Math.max( 0, jvmOffsetMillis_ );
+    }
+}
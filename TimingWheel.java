@@ -0,0 +1,568 @@
+package uk.ac.bristol.star.deadman;
+
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hierarchical timing wheel that runs tasks at requested deadlines.
+ *
+ * <p>Deadlines are quantised to a fixed tick, and entries are held in
+ * a few levels of slot rings, each level covering a range of ticks
+ * 64 times longer than the one below.  Entries in higher levels are
+ * cascaded down as their time approaches, so the work done on a tick
+ * depends only on the number of entries expiring, not on the total
+ * number scheduled.  A single daemon thread services the wheel,
+ * sleeping until the next tick that has anything to do.
+ * Expired tasks are passed in batches to a dispatch executor,
+ * so that for instance all the countdowns expiring on a given tick
+ * are run by a single Event Dispatch Thread event.
+ *
+ * <p>Time comes from a {@link Clock}.  If the wheel is not threaded,
+ * no service thread is started and the wheel must be driven by
+ * calls to {@link #runExpired}; used with a {@link VirtualClock}
+ * this allows long scenarios to run in much less than real time.
+ *
+ * <p>This class is thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class TimingWheel {
+
+    private static final int LEVEL_BITS = 6;
+    private static final int NSLOT = 1 << LEVEL_BITS;
+    private static final int SLOT_MASK = NSLOT - 1;
+    private static final int NLEVEL = 4;
+    private static final long MAX_DELTA = 1L << ( LEVEL_BITS * NLEVEL );
+
+    private static TimingWheel sharedInstance_;
+    private static TimingWheel backgroundInstance_;
+
+    private final Clock clock_;
+    private final long tickMillis_;
+    private final Executor dispatcher_;
+    private final boolean isThreaded_;
+    private final Entry[][] slots_;
+    private Batch pending_;
+    private Batch spare_;
+    private long currentTick_;
+    private int count_;
+    private Thread thread_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( TimingWheel.class.getName() );
+
+    /**
+     * Constructs a threaded wheel using the system clock.
+     *
+     * @param  tickMillis  tick duration in milliseconds;
+     *                     deadlines are rounded up to a whole tick
+     * @param  dispatcher  executor that will run batches of expired tasks
+     */
+    public TimingWheel( long tickMillis, Executor dispatcher ) {
+        this( Clock.SYSTEM, tickMillis, dispatcher, true );
+    }
+
+    /**
+     * Constructs a wheel with a given clock.
+     *
+     * @param  clock   time source
+     * @param  tickMillis  tick duration in milliseconds;
+     *                     deadlines are rounded up to a whole tick
+     * @param  dispatcher  executor that will run batches of expired tasks
+     * @param  isThreaded  if true, a service thread runs expired tasks
+     *                     as real time passes; if false, the wheel
+     *                     only does anything when runExpired is called
+     */
+    public TimingWheel( Clock clock, long tickMillis, Executor dispatcher,
+                        boolean isThreaded ) {
+        if ( tickMillis <= 0 ) {
+            throw new IllegalArgumentException( "Bad tick " + tickMillis );
+        }
+        clock_ = clock;
+        tickMillis_ = tickMillis;
+        dispatcher_ = dispatcher;
+        isThreaded_ = isThreaded;
+        slots_ = new Entry[ NLEVEL ][ NSLOT ];
+    }
+
+    /**
+     * Returns a wheel instance shared within this JVM.
+     * It has a 10ms tick, and runs its tasks on the Event Dispatch Thread.
+     * Note that posting each batch of expired tasks to the event queue
+     * allocates a small event object, so unlike an instance with
+     * a synchronous dispatcher this wheel is not allocation-free.
+     *
+     * @return  shared timing wheel
+     */
+    public static synchronized TimingWheel getSharedInstance() {
+        if ( sharedInstance_ == null ) {
+            sharedInstance_ = new TimingWheel( 10, new Executor() {
+                public void execute( Runnable task ) {
+                    EventQueue.invokeLater( task );
+                }
+            } );
+        }
+        return sharedInstance_;
+    }
+
+    /**
+     * Returns a wheel instance shared within this JVM whose tasks run
+     * directly on its own service thread rather than on the
+     * Event Dispatch Thread.  It has a 10ms tick.
+     * Tasks scheduled on it must be brief, since they delay
+     * all the others, and must not touch Swing components.
+     *
+     * @return  shared background timing wheel
+     */
+    public static synchronized TimingWheel getBackgroundInstance() {
+        if ( backgroundInstance_ == null ) {
+            backgroundInstance_ = new TimingWheel( 10, new Executor() {
+                public void execute( Runnable task ) {
+                    task.run();
+                }
+            } );
+        }
+        return backgroundInstance_;
+    }
+
+    /**
+     * Returns the clock used by this wheel.
+     * Deadlines supplied to {@link Entry#scheduleAt} use its time base.
+     *
+     * @return   clock
+     */
+    public Clock getClock() {
+        return clock_;
+    }
+
+    /**
+     * Returns the current time according to this wheel's clock.
+     *
+     * @return   current time in milliseconds
+     */
+    public long currentMillis() {
+        return clock_.currentMillis();
+    }
+
+    /**
+     * Returns the tick duration.
+     *
+     * @return  tick duration in milliseconds
+     */
+    public long getTickMillis() {
+        return tickMillis_;
+    }
+
+    /**
+     * Returns the number of entries currently scheduled.
+     *
+     * @return  scheduled entry count
+     */
+    public synchronized int getScheduledCount() {
+        return count_;
+    }
+
+    /**
+     * Returns the earliest time at which a currently scheduled entry
+     * might expire.  A driver for an unthreaded wheel with a virtual
+     * clock can advance the clock to this time and then call
+     * {@link #runExpired}.
+     *
+     * @return   time in milliseconds of next possible expiry,
+     *           or -1 if nothing is scheduled
+     */
+    public synchronized long getNextExpiryMillis() {
+        return count_ > 0 ? nextActiveTick() * tickMillis_ : -1;
+    }
+
+    /**
+     * Synchronously processes all entries that have expired by the
+     * current time, passing them to the dispatcher.
+     * This is only required for unthreaded wheels.
+     */
+    public void runExpired() {
+        Runnable batch;
+        synchronized ( this ) {
+            advance( currentMillis() / tickMillis_ );
+            batch = takeExpired();
+        }
+        if ( batch != null ) {
+            dispatcher_.execute( batch );
+        }
+    }
+
+    /**
+     * Creates a new unscheduled entry that can be used to run a given task.
+     * The same entry may be scheduled any number of times,
+     * but only has a single pending deadline at any one time.
+     *
+     * @param  task  task to run on expiry
+     * @return   new entry
+     */
+    public Entry createEntry( Runnable task ) {
+        return new Entry( task );
+    }
+
+    /**
+     * Places an entry in the appropriate slot for its deadline.
+     * Must be called with the monitor held.
+     *
+     * @param  entry  unscheduled entry
+     */
+    private void insert( Entry entry ) {
+        long delta = Math.max( 0, entry.deadlineTick_ - currentTick_ );
+        long tick = delta < MAX_DELTA ? currentTick_ + delta
+                                      : currentTick_ + MAX_DELTA - 1;
+        delta = tick - currentTick_;
+        int level = 0;
+        while ( delta >= ( 1L << ( LEVEL_BITS * ( level + 1 ) ) ) ) {
+            level++;
+        }
+        int is = (int) ( tick >>> ( LEVEL_BITS * level ) ) & SLOT_MASK;
+        Entry[] ring = slots_[ level ];
+        Entry head = ring[ is ];
+        entry.level_ = level;
+        entry.slot_ = is;
+        entry.prev_ = null;
+        entry.next_ = head;
+        if ( head != null ) {
+            head.prev_ = entry;
+        }
+        ring[ is ] = entry;
+    }
+
+    /**
+     * Removes a scheduled entry from its slot.
+     * Must be called with the monitor held.
+     *
+     * @param  entry  scheduled entry
+     */
+    private void unlink( Entry entry ) {
+        if ( entry.prev_ != null ) {
+            entry.prev_.next_ = entry.next_;
+        }
+        else {
+            slots_[ entry.level_ ][ entry.slot_ ] = entry.next_;
+        }
+        if ( entry.next_ != null ) {
+            entry.next_.prev_ = entry.prev_;
+        }
+        entry.prev_ = null;
+        entry.next_ = null;
+        entry.level_ = -1;
+    }
+
+    /**
+     * Processes all ticks up to a given time, moving expired entries
+     * to the expired list.
+     * Must be called with the monitor held.
+     *
+     * @param  nowTick  latest tick to process
+     */
+    private void advance( long nowTick ) {
+        if ( count_ == 0 ) {
+            currentTick_ = Math.max( currentTick_, nowTick + 1 );
+            return;
+        }
+        while ( currentTick_ <= nowTick && count_ > 0 ) {
+            long t = currentTick_;
+
+            /* Cascade entries from higher levels whose ring has come round,
+             * highest first so that they find their way right down. */
+            for ( int level = NLEVEL - 1; level > 0; level-- ) {
+                int shift = LEVEL_BITS * level;
+                if ( ( t & ( ( 1L << shift ) - 1 ) ) == 0 ) {
+                    int is = (int) ( t >>> shift ) & SLOT_MASK;
+                    Entry entry = slots_[ level ][ is ];
+                    slots_[ level ][ is ] = null;
+                    while ( entry != null ) {
+                        Entry next = entry.next_;
+                        insert( entry );
+                        entry = next;
+                    }
+                }
+            }
+
+            /* Expire entries in the current bottom-level slot. */
+            int is = (int) t & SLOT_MASK;
+            Entry entry = slots_[ 0 ][ is ];
+            slots_[ 0 ][ is ] = null;
+            while ( entry != null ) {
+                Entry next = entry.next_;
+                entry.prev_ = null;
+                entry.next_ = null;
+                entry.level_ = -1;
+                count_--;
+                addExpired( entry );
+                entry = next;
+            }
+            currentTick_++;
+        }
+        if ( count_ == 0 ) {
+            currentTick_ = Math.max( currentTick_, nowTick + 1 );
+        }
+    }
+
+    /**
+     * Adds an entry to the list of those awaiting dispatch.
+     * Must be called with the monitor held.
+     *
+     * @param  entry  expired entry
+     */
+    private void addExpired( Entry entry ) {
+        if ( pending_ == null ) {
+            if ( spare_ != null ) {
+                pending_ = spare_;
+                spare_ = null;
+            }
+            else {
+                pending_ = new Batch();
+            }
+        }
+        pending_.add( entry );
+    }
+
+    /**
+     * Returns the earliest tick at which anything might need doing.
+     * Must be called with the monitor held, and only if count is non-zero.
+     *
+     * @return   tick of next bottom-level expiry or cascade
+     */
+    private long nextActiveTick() {
+        long best = Long.MAX_VALUE;
+        for ( int it = 0; it < NSLOT; it++ ) {
+            long t = currentTick_ + it;
+            if ( slots_[ 0 ][ (int) t & SLOT_MASK ] != null ) {
+                best = t;
+                break;
+            }
+        }
+        for ( int level = 1; level < NLEVEL; level++ ) {
+            int shift = LEVEL_BITS * level;
+            long span = 1L << shift;
+            long t0 = ( currentTick_ + span - 1 ) >>> shift << shift;
+            for ( int k = 0; k < NSLOT; k++ ) {
+                long t = t0 + k * span;
+                if ( t >= best ) {
+                    break;
+                }
+                if ( slots_[ level ][ (int) ( t >>> shift ) & SLOT_MASK ]
+                     != null ) {
+                    best = t;
+                    break;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Starts the service thread if it is not already running.
+     * Must be called with the monitor held.
+     */
+    private void ensureThread() {
+        if ( isThreaded_ && thread_ == null ) {
+            thread_ = new Thread( "TimingWheel" ) {
+                public void run() {
+                    serviceLoop();
+                }
+            };
+            thread_.setDaemon( true );
+            thread_.start();
+        }
+    }
+
+    /**
+     * Body of the service thread.
+     */
+    private void serviceLoop() {
+        while ( true ) {
+            Runnable batch;
+            synchronized ( this ) {
+                try {
+                    while ( pending_ == null ) {
+                        if ( count_ == 0 ) {
+                            wait();
+                        }
+                        else {
+                            long waitMillis =
+                                nextActiveTick() * tickMillis_
+                              - currentMillis();
+                            if ( waitMillis > 0 ) {
+                                wait( waitMillis );
+                            }
+                            else {
+                                advance( currentMillis() / tickMillis_ );
+                            }
+                        }
+                    }
+                }
+                catch ( InterruptedException e ) {
+                    return;
+                }
+                batch = takeExpired();
+            }
+            dispatcher_.execute( batch );
+        }
+    }
+
+    /**
+     * Removes all entries from the expired list and returns a task
+     * that will run them.
+     * Must be called with the monitor held.
+     *
+     * @return  task to run expired entries, or null if there are none
+     */
+    private Runnable takeExpired() {
+        Batch batch = pending_;
+        pending_ = null;
+        return batch;
+    }
+
+    /**
+     * Task that runs a list of expired entries.
+     * Once it has run, it is recycled for use by a later tick,
+     * so that in the steady state the wheel itself does not allocate
+     * memory; the dispatcher may do so.
+     */
+    private class Batch implements Runnable {
+        private Entry[] entries_ = new Entry[ 16 ];
+        private long[] seqs_ = new long[ 16 ];
+        private int n_;
+
+        /**
+         * Adds an expired entry to this batch.
+         * Must be called with the wheel monitor held.
+         *
+         * @param  entry  expired entry
+         */
+        void add( Entry entry ) {
+            if ( n_ == entries_.length ) {
+                entries_ = Arrays.copyOf( entries_, n_ * 2 );
+                seqs_ = Arrays.copyOf( seqs_, n_ * 2 );
+            }
+            entries_[ n_ ] = entry;
+            seqs_[ n_ ] = entry.seq_;
+            n_++;
+        }
+
+        public void run() {
+            for ( int i = 0; i < n_; i++ ) {
+                entries_[ i ].fire( seqs_[ i ] );
+            }
+            Arrays.fill( entries_, 0, n_, null );
+            n_ = 0;
+            synchronized ( TimingWheel.this ) {
+                if ( spare_ == null ) {
+                    spare_ = this;
+                }
+            }
+        }
+    }
+
+    /**
+     * Schedulable task handle belonging to a TimingWheel.
+     */
+    public class Entry {
+
+        private final Runnable task_;
+        private long deadlineTick_;
+        private long seq_;
+        private int level_;
+        private int slot_;
+        private Entry prev_;
+        private Entry next_;
+
+        /**
+         * Constructor.
+         *
+         * @param  task  task to run on expiry
+         */
+        private Entry( Runnable task ) {
+            task_ = task;
+            level_ = -1;
+        }
+
+        /**
+         * Schedules this entry to run its task after a given delay.
+         * Any previous pending deadline is cancelled.
+         *
+         * @param  delayMillis  delay in milliseconds
+         */
+        public void schedule( long delayMillis ) {
+            scheduleAt( currentMillis() + delayMillis );
+        }
+
+        /**
+         * Schedules this entry to run its task at or shortly after
+         * a given time.  Any previous pending deadline is cancelled.
+         *
+         * @param  deadlineMillis  deadline in the wheel's time base
+         * @see   TimingWheel#currentMillis
+         */
+        public void scheduleAt( long deadlineMillis ) {
+            synchronized ( TimingWheel.this ) {
+                if ( level_ >= 0 ) {
+                    unlink( this );
+                    count_--;
+                }
+                seq_++;
+                deadlineTick_ = ( deadlineMillis + tickMillis_ - 1 )
+                              / tickMillis_;
+                insert( this );
+                count_++;
+                ensureThread();
+                TimingWheel.this.notifyAll();
+            }
+        }
+
+        /**
+         * Cancels any pending deadline for this entry.
+         * If the task has expired but not yet been run, it will not be run.
+         */
+        public void cancel() {
+            synchronized ( TimingWheel.this ) {
+                if ( level_ >= 0 ) {
+                    unlink( this );
+                    count_--;
+                }
+                seq_++;
+            }
+        }
+
+        /**
+         * Indicates whether this entry has a pending deadline.
+         *
+         * @return  true iff scheduled and not yet expired
+         */
+        public boolean isScheduled() {
+            synchronized ( TimingWheel.this ) {
+                return level_ >= 0;
+            }
+        }
+
+        /**
+         * Runs the task if this entry has not been rescheduled or cancelled
+         * since the expiry identified by a given sequence number.
+         *
+         * @param  seq  sequence number at expiry
+         */
+        private void fire( long seq ) {
+            synchronized ( TimingWheel.this ) {
+                if ( seq != seq_ ) {
+                    return;
+                }
+            }
+            try {
+                task_.run();
+            }
+            catch ( RuntimeException e ) {
+                logger_.log( Level.WARNING, "Timed task failed", e );
+            }
+        }
+    }
+}
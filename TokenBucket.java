@@ -0,0 +1,93 @@
+package uk.ac.bristol.star.deadman;
+
+/**
+ * Token bucket rate limiter.
+ * The bucket holds up to a fixed number of tokens, and is refilled
+ * at a steady rate; each permitted action takes one token.
+ * This allows short bursts up to the bucket capacity while limiting
+ * the long term rate.
+ *
+ * <p>Time is supplied by the caller, so that it can come from
+ * whatever {@link Clock} is in use.  This class is not thread-safe.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class TokenBucket {
+
+    private final int capacity_;
+    private final double refillMillis_;
+    private double tokens_;
+    private long lastMillis_;
+
+    /**
+     * Constructs a full bucket.
+     *
+     * @param  capacity  maximum number of tokens
+     * @param  refillMillis  interval in milliseconds at which
+     *                       single tokens are added
+     * @param  nowMillis  current time in milliseconds
+     */
+    public TokenBucket( int capacity, double refillMillis, long nowMillis ) {
+        capacity_ = capacity;
+        refillMillis_ = refillMillis;
+        tokens_ = capacity;
+        lastMillis_ = nowMillis;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @param  nowMillis  current time in milliseconds
+     * @return  true if a token was taken, false if the bucket was empty
+     */
+    public boolean tryTake( long nowMillis ) {
+        refill( nowMillis );
+        if ( tokens_ >= 1 ) {
+            tokens_ -= 1;
+            return true;
+        }
+        else {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the number of tokens currently available.
+     *
+     * @param  nowMillis  current time in milliseconds
+     * @return  token count, possibly fractional
+     */
+    public double getTokens( long nowMillis ) {
+        refill( nowMillis );
+        return tokens_;
+    }
+
+    /**
+     * Returns the time at which a token will next be available.
+     *
+     * @param  nowMillis  current time in milliseconds
+     * @return  time in milliseconds, not earlier than nowMillis
+     */
+    public long getNextTokenMillis( long nowMillis ) {
+        refill( nowMillis );
+        return tokens_ >= 1
+             ? nowMillis
+             : nowMillis
+               + (long) Math.ceil( ( 1 - tokens_ ) * refillMillis_ );
+    }
+
+    /**
+     * Adds the tokens accrued since the last update.
+     *
+     * @param  nowMillis  current time in milliseconds
+     */
+    private void refill( long nowMillis ) {
+        if ( nowMillis > lastMillis_ ) {
+            tokens_ = Math.min( capacity_,
+                                tokens_ + ( nowMillis - lastMillis_ )
+                                          / refillMillis_ );
+            lastMillis_ = nowMillis;
+        }
+    }
+}
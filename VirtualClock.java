@@ -0,0 +1,57 @@
+package uk.ac.bristol.star.deadman;
+
+/**
+ * Clock whose time only changes when it is told to.
+ * This can be used with a manually driven {@link TimingWheel}
+ * to run long countdown scenarios in much less than real time.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class VirtualClock implements Clock {
+
+    private volatile long millis_;
+
+    /**
+     * Constructs a clock starting at time zero.
+     */
+    public VirtualClock() {
+        this( 0 );
+    }
+
+    /**
+     * Constructs a clock starting at a given time.
+     *
+     * @param  millis  initial time in milliseconds
+     */
+    public VirtualClock( long millis ) {
+        millis_ = millis;
+    }
+
+    public long currentMillis() {
+        return millis_;
+    }
+
+    /**
+     * Sets the current time.  Attempts to move backwards are ignored.
+     *
+     * @param  millis  new time in milliseconds
+     */
+    public synchronized void setMillis( long millis ) {
+        if ( millis > millis_ ) {
+            millis_ = millis;
+        }
+    }
+
+    /**
+     * Moves the current time forward.
+     *
+     * @param  deltaMillis  non-negative increment in milliseconds
+     */
+    public synchronized void advance( long deltaMillis ) {
+        if ( deltaMillis < 0 ) {
+            throw new IllegalArgumentException( "Clock can't go backwards" );
+        }
+        millis_ += deltaMillis;
+    }
+}
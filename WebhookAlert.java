@@ -0,0 +1,359 @@
+package uk.ac.bristol.star.deadman;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.UnknownHostException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Alert that POSTs status transitions as JSON to one or more
+ * webhook URLs.
+ *
+ * <p>Requests are sent asynchronously on a single HTTP client,
+ * which keeps connections to each server open for reuse,
+ * so that <code>setStatus</code> returns at once and a delivery
+ * typically takes a few milliseconds.  Each request has a timeout.
+ * Requests that time out, fail to connect, or get a 5xx or 429 response
+ * are retried with increasing delays up to a maximum number of attempts;
+ * other 4xx responses are not retried.
+ * Since a retry may complete after a later transition has been
+ * delivered, each message carries a sequence number,
+ * and a retry is abandoned if a later message has already been
+ * accepted by the same URL.
+ *
+ * <p>The JSON object has the members
+ * <code>source</code>, <code>host</code>, <code>user</code>,
+ * <code>seq</code>, <code>status</code>, <code>previous</code>,
+ * <code>time</code> (ISO 8601) and <code>timeMillis</code>.
+ * Safe status is given as <code>"SAFE"</code>.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class WebhookAlert implements Alert {
+
+    private final URI[] uris_;
+    private final long timeoutMillis_;
+    private final int maxAttempts_;
+    private final TimingWheel wheel_;
+    private final HttpClient client_;
+    private final String host_;
+    private final AtomicLong[] acceptedSeqs_;
+    private final AtomicLong seq_;
+    private final AtomicInteger nSent_;
+    private final AtomicInteger nFailed_;
+    private volatile String userName_;
+    private Status currentStatus_;
+
+    /** Delay in milliseconds before the first retry. */
+    public static final long RETRY_MIN_MILLIS = 200;
+
+    private static final Logger logger_ =
+        Logger.getLogger( WebhookAlert.class.getName() );
+
+    /**
+     * Constructor.
+     *
+     * @param  uris  webhook URLs
+     * @param  timeoutMillis  timeout in milliseconds for connection and
+     *                        for each request
+     * @param  maxAttempts  maximum number of attempts per request
+     * @param  wheel  timing wheel used to schedule retries
+     */
+    public WebhookAlert( URI[] uris, long timeoutMillis, int maxAttempts,
+                         TimingWheel wheel ) {
+        uris_ = uris.clone();
+        timeoutMillis_ = timeoutMillis;
+        maxAttempts_ = Math.max( 1, maxAttempts );
+        wheel_ = wheel;
+        client_ = HttpClient.newBuilder()
+                 .connectTimeout( Duration.ofMillis( timeoutMillis ) )
+                 .build();
+        acceptedSeqs_ = new AtomicLong[ uris.length ];
+        for ( int i = 0; i < uris.length; i++ ) {
+            acceptedSeqs_[ i ] = new AtomicLong( -1 );
+        }
+        seq_ = new AtomicLong();
+        nSent_ = new AtomicInteger();
+        nFailed_ = new AtomicInteger();
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        }
+        catch ( UnknownHostException e ) {
+            host = "unknown";
+        }
+        host_ = host;
+    }
+
+    /**
+     * Sets the user name reported in subsequent messages.
+     *
+     * @param  userName  user name, or null
+     */
+    public void setUserName( String userName ) {
+        userName_ = userName;
+    }
+
+    public synchronized void setStatus( Status status ) {
+        if ( status != currentStatus_ ) {
+            long seq = seq_.incrementAndGet();
+            String json = toJson( seq, status, currentStatus_, new Date() );
+            currentStatus_ = status;
+            for ( int iu = 0; iu < uris_.length; iu++ ) {
+                post( iu, seq, json, 1 );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of requests accepted so far.
+     *
+     * @return  success count
+     */
+    public int getSentCount() {
+        return nSent_.get();
+    }
+
+    /**
+     * Returns the number of requests abandoned so far.
+     *
+     * @return  failure count
+     */
+    public int getFailedCount() {
+        return nFailed_.get();
+    }
+
+    @Override
+    public String toString() {
+        return "webhook urls=" + uris_.length
+             + ", sent=" + nSent_ + ", failed=" + nFailed_;
+    }
+
+    /**
+     * Makes one asynchronous attempt to deliver a message to a URL.
+     *
+     * @param  iu  index of URL
+     * @param  seq  message sequence number
+     * @param  json  message text
+     * @param  iAttempt  attempt number, starting at 1
+     */
+    private void post( final int iu, final long seq, final String json,
+                       final int iAttempt ) {
+        final URI uri = uris_[ iu ];
+        if ( acceptedSeqs_[ iu ].get() > seq ) {
+            logger_.info( "Abandoning superseded webhook message " + seq
+                        + " to " + uri );
+            return;
+        }
+        HttpRequest req =
+            HttpRequest.newBuilder( uri )
+                       .timeout( Duration.ofMillis( timeoutMillis_ ) )
+                       .header( "Content-Type", "application/json" )
+                       .POST( HttpRequest.BodyPublishers.ofString( json ) )
+                       .build();
+        final long t0 = System.nanoTime();
+        client_.sendAsync( req, HttpResponse.BodyHandlers.discarding() )
+               .handle( new BiFunction<HttpResponse<Void>,Throwable,Void>() {
+            public Void apply( HttpResponse<Void> resp, Throwable error ) {
+                long nanos = System.nanoTime() - t0;
+                long millis = nanos / 1000000;
+                int code = resp == null ? -1 : resp.statusCode();
+                if ( code >= 200 && code < 300 ) {
+                    nSent_.incrementAndGet();
+                    Latencies.record( "webhook.post", nanos );
+                    AtomicLong accepted = acceptedSeqs_[ iu ];
+                    for ( long s; ( s = accepted.get() ) < seq; ) {
+                        accepted.compareAndSet( s, seq );
+                    }
+                    logger_.info( "Posted webhook message " + seq + " to "
+                                + uri + " in " + millis + "ms" );
+                    return null;
+                }
+                String msg = error != null
+                           ? error.toString()
+                           : ( "HTTP " + code );
+                boolean isTransient = error != null
+                                   || code >= 500 || code == 429;
+                if ( isTransient && iAttempt < maxAttempts_ ) {
+                    long delay = RETRY_MIN_MILLIS << ( iAttempt - 1 );
+                    logger_.info( "Webhook post to " + uri + " failed ("
+                                + msg + "); retry in " + delay + "ms" );
+                    wheel_.createEntry( new Runnable() {
+                        public void run() {
+                            post( iu, seq, json, iAttempt + 1 );
+                        }
+                    } ).schedule( delay );
+                }
+                else {
+                    nFailed_.incrementAndGet();
+                    logger_.log( Level.WARNING,
+                                 "Webhook post to " + uri + " failed ("
+                               + msg + ") after " + iAttempt + " attempts",
+                                 error );
+                }
+                return null;
+            }
+        } );
+    }
+
+    /**
+     * Formats a status transition as a JSON object.
+     *
+     * @param  seq  sequence number
+     * @param  status  new status
+     * @param  previous  previous status
+     * @param  date  time of transition
+     * @return  JSON text
+     */
+    private String toJson( long seq, Status status, Status previous,
+                           Date date ) {
+        SimpleDateFormat fmt =
+            new SimpleDateFormat( "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'" );
+        fmt.setTimeZone( TimeZone.getTimeZone( "UTC" ) );
+        StringBuffer sbuf = new StringBuffer( "{" );
+        appendMember( sbuf, "source", "deadman" );
+        sbuf.append( ',' );
+        appendMember( sbuf, "host", host_ );
+        sbuf.append( ',' );
+        appendMember( sbuf, "user", userName_ );
+        sbuf.append( ",\"seq\":" )
+            .append( seq )
+            .append( ',' );
+        appendMember( sbuf, "status", statusName( status ) );
+        sbuf.append( ',' );
+        appendMember( sbuf, "previous", statusName( previous ) );
+        sbuf.append( ',' );
+        appendMember( sbuf, "time", fmt.format( date ) );
+        sbuf.append( ",\"timeMillis\":" )
+            .append( date.getTime() )
+            .append( '}' );
+        return sbuf.toString();
+    }
+
+    /**
+     * Returns the name used for a status in JSON messages.
+     *
+     * @param  status  status, may be null
+     * @return  name
+     */
+    private static String statusName( Status status ) {
+        return status == null ? "SAFE" : status.name();
+    }
+
+    /**
+     * Appends a JSON string-valued object member to a buffer.
+     *
+     * @param  sbuf  buffer
+     * @param  name  member name
+     * @param  value  member value, may be null
+     */
+    private static void appendMember( StringBuffer sbuf, String name,
+                                      String value ) {
+        appendString( sbuf, name );
+        sbuf.append( ':' );
+        if ( value == null ) {
+            sbuf.append( "null" );
+        }
+        else {
+            appendString( sbuf, value );
+        }
+    }
+
+    /**
+     * Appends a quoted and escaped JSON string to a buffer.
+     *
+     * @param  sbuf  buffer
+     * @param  txt   string content
+     */
+    private static void appendString( StringBuffer sbuf, String txt ) {
+        sbuf.append( '"' );
+        for ( int i = 0; i < txt.length(); i++ ) {
+            char c = txt.charAt( i );
+            if ( c == '"' || c == '\\' ) {
+                sbuf.append( '\\' ).append( c );
+            }
+            else if ( c < 0x20 ) {
+                sbuf.append( String.format( "\\u%04x", (int) c ) );
+            }
+            else {
+                sbuf.append( c );
+            }
+        }
+        sbuf.append( '"' );
+    }
+
+    /**
+     * Posts a few status changes at intervals to a stand-in webhook server
+     * on the local host, and reports the results.
+     * The server fails the first request, to exercise retry.
+     */
+    public static void main( String[] args ) throws Exception {
+        final AtomicInteger nReq = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch( 4 );
+        HttpServer server =
+            HttpServer.create( new InetSocketAddress( InetAddress
+                                                     .getByName( null ), 0 ),
+                               0 );
+        server.createContext( "/hook", new HttpHandler() {
+            public void handle( HttpExchange exch ) throws IOException {
+                InputStream in = exch.getRequestBody();
+                ByteArrayOutputStream bout = new ByteArrayOutputStream();
+                byte[] buf = new byte[ 1024 ];
+                for ( int n; ( n = in.read( buf ) ) >= 0; ) {
+                    bout.write( buf, 0, n );
+                }
+                if ( nReq.incrementAndGet() == 1 ) {
+                    System.out.println( "Server: 503" );
+                    exch.sendResponseHeaders( 503, -1 );
+                }
+                else {
+                    System.out.println( "Server: " + bout.toString( "UTF-8" ) );
+                    exch.sendResponseHeaders( 204, -1 );
+                    latch.countDown();
+                }
+                exch.close();
+            }
+        } );
+        server.start();
+        try {
+            URI uri = new URI( "http://127.0.0.1:"
+                             + server.getAddress().getPort() + "/hook" );
+            WebhookAlert alert =
+                new WebhookAlert( new URI[] { uri }, 2000, 3,
+                                  TimingWheel.getBackgroundInstance() );
+            alert.setUserName( "Test User" );
+            Status[] statuses =
+                { Status.WARNING, Status.DANGER, null, Status.DANGER };
+            for ( Status status : statuses ) {
+                alert.setStatus( status );
+                Thread.sleep( 500 );
+            }
+            latch.await( 10, TimeUnit.SECONDS );
+            System.out.println( alert );
+        }
+        finally {
+            server.stop( 0 );
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.OutputStream;
+import java.net.URL;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the hot paths of the Deadman application.
+ * Run them using <code>make bench</code>.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class DeadmanBench {
+
+    /** Executor that runs tasks synchronously. */
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        public void execute( Runnable task ) {
+            task.run();
+        }
+    };
+
+    /**
+     * State for formatting benchmarks.
+     */
+    @State( Scope.Thread )
+    public static class FormatState {
+        final char[] buf_ = new char[ CountdownModel.MAX_TEXT_LENGTH ];
+        long millis_ = 1234567;
+    }
+
+    /**
+     * State for countdown update benchmarks.
+     * The model runs against a virtual clock, and each benchmark
+     * invocation moves the clock on to the next scheduled wakeup.
+     * The countdown time is far longer than a run can use up,
+     * and the countdown is reset for each iteration, so that all the
+     * measurements are made in the same, safe, status.
+     */
+    @State( Scope.Thread )
+    public static class CountdownState {
+
+        /** Number of listeners attached to the model. */
+        @Param( { "1", "5", "50" } )
+        int nListener_;
+
+        /** Whether the model is event-driven rather than polled. */
+        @Param( { "true", "false" } )
+        boolean eventDriven_;
+
+        VirtualClock clock_;
+        TimingWheel wheel_;
+        CountdownModel model_;
+
+        @Setup( Level.Trial )
+        public void setup() {
+            clock_ = new VirtualClock();
+            wheel_ = new TimingWheel( clock_, 10, DIRECT_EXECUTOR, false );
+            model_ = new CountdownModel( Alerts.createMultiAlert(), wheel_ );
+            final Object[] sink = new Object[ 1 ];
+            for ( int i = 0; i < nListener_; i++ ) {
+                model_.addChangeListener( new ChangeListener() {
+                    public void stateChanged( ChangeEvent evt ) {
+                        sink[ 0 ] = model_.getState();
+                    }
+                } );
+            }
+            model_.setEventDriven( eventDriven_ );
+            model_.setResetSeconds( Integer.MAX_VALUE );
+            model_.start();
+        }
+
+        @Setup( Level.Iteration )
+        public void resetCountdown() {
+            model_.resetZero();
+        }
+    }
+
+    /**
+     * State for configuration benchmarks.
+     */
+    @State( Scope.Thread )
+    public static class ConfigState {
+        ConfigMap cmap_;
+        ConfigSnapshot snapshot_;
+        Properties props_;
+
+        @Setup( Level.Trial )
+        public void setup() throws ConfigException {
+            cmap_ = new ConfigMap();
+            props_ = new Properties();
+            for ( ConfigKey<?> key : DmConfig.KEYS ) {
+                props_.setProperty( key.getName(),
+                                    cmap_.getString( key ) );
+            }
+            props_.remove( DmConfig.EMAILS.getName() );
+            cmap_.addProperties( props_, DmConfig.KEYS );
+            snapshot_ = cmap_.snapshot();
+        }
+    }
+
+    /**
+     * State for address list parsing benchmarks.
+     */
+    @State( Scope.Thread )
+    public static class AddressState {
+
+        /** Number of addresses in the address list. */
+        @Param( { "10", "100" } )
+        int nAddress_;
+
+        String addressList_;
+
+        @Setup( Level.Trial )
+        public void setup() {
+            StringBuffer sbuf = new StringBuffer();
+            for ( int i = 0; i < nAddress_; i++ ) {
+                if ( i > 0 ) {
+                    sbuf.append( ',' );
+                }
+                sbuf.append( "Contact " )
+                    .append( i )
+                    .append( " <contact" )
+                    .append( i )
+                    .append( "@example.ac.uk>" );
+            }
+            addressList_ = sbuf.toString();
+        }
+    }
+
+    /**
+     * State for audio benchmarks.
+     */
+    @State( Scope.Benchmark )
+    public static class SoundState {
+        URL url_;
+
+        @Setup( Level.Trial )
+        public void setup() {
+            url_ = Alerts.class.getResource( Alerts.DANGER_WAV );
+        }
+    }
+
+    /**
+     * State for mail benchmarks.
+     */
+    @State( Scope.Thread )
+    public static class MailState {
+        Mailer mailer_;
+        String body_;
+
+        @Setup( Level.Trial )
+        public void setup() throws MessagingException {
+            Address[] recipients = {
+                new InternetAddress( "one@example.ac.uk" ),
+                new InternetAddress( "two@example.ac.uk" ),
+            };
+            Address sender = new InternetAddress( "deadman@example.ac.uk" );
+            mailer_ = new Mailer( "localhost", sender, recipients,
+                                  "[bench] ", null );
+            StringBuffer sbuf = new StringBuffer();
+            for ( int i = 0; i < 20; i++ ) {
+                sbuf.append( "Line " )
+                    .append( i )
+                    .append( " of the message body.\n" );
+            }
+            body_ = sbuf.toString();
+        }
+    }
+
+    /**
+     * State for logging benchmarks.
+     * The asynchronous handler writes to a null stream,
+     * and its buffer is large enough that records are not dropped.
+     */
+    @State( Scope.Benchmark )
+    public static class LogState {
+        Formatter formatter_;
+        AsyncLogHandler handler_;
+        LogRecord record_;
+
+        @Setup( Level.Trial )
+        public void setup() {
+            formatter_ = Logging.createLineFormatter();
+            handler_ = new AsyncLogHandler( OutputStream.nullOutputStream(),
+                                            Logging.createLineFormatter(),
+                                            1 << 16 );
+            record_ = new LogRecord( java.util.logging.Level.INFO,
+                                     "Status WARNING" );
+        }
+
+        @TearDown( Level.Trial )
+        public void tearDown() {
+            handler_.close();
+        }
+    }
+
+    @Benchmark
+    public String formatMillisString( FormatState state ) {
+        return CountdownModel.formatMillis( state.millis_++ );
+    }
+
+    @Benchmark
+    public int formatMillisBuffer( FormatState state ) {
+        return CountdownModel.formatMillis( state.millis_++, state.buf_, 0 );
+    }
+
+    @Benchmark
+    public CountdownModel.State countdownWakeup( CountdownState state ) {
+        state.clock_.setMillis( state.wheel_.getNextExpiryMillis() );
+        state.wheel_.runExpired();
+        return state.model_.getState();
+    }
+
+    @Benchmark
+    public Integer configGet( ConfigState state ) {
+        return state.cmap_.get( DmConfig.RESET_SEC );
+    }
+
+    @Benchmark
+    public Integer configSnapshotGet( ConfigState state ) {
+        return state.snapshot_.get( DmConfig.RESET_SEC );
+    }
+
+    @Benchmark
+    public void configAssign( ConfigState state ) throws ConfigException {
+        state.cmap_.assign( "WARNING", "120", DmConfig.KEYS );
+    }
+
+    @Benchmark
+    public void configAddProperties( ConfigState state )
+            throws ConfigException {
+        state.cmap_.addProperties( state.props_, DmConfig.KEYS );
+    }
+
+    @Benchmark
+    public Address[] addressListFromString( AddressState state )
+            throws ConfigException {
+        return DmConfig.EMAILS.fromString( state.addressList_ );
+    }
+
+    @Benchmark
+    public byte[] soundLoad( SoundState state ) throws Exception {
+        return AudioCache.load( state.url_ );
+    }
+
+    @Benchmark
+    public byte[] soundCached( SoundState state ) throws Exception {
+        return AudioCache.getSharedInstance().getPcm( state.url_ );
+    }
+
+    @Benchmark
+    public String logFormat( LogState state ) {
+        return state.formatter_.format( state.record_ );
+    }
+
+    @Benchmark
+    public void logPublish( LogState state ) {
+        state.handler_.publish( state.record_ );
+    }
+
+    @Benchmark
+    public MimeMessage mailCreateMessage( MailState state )
+            throws MessagingException {
+        MimeMessage msg = state.mailer_.createMessage( "ALARM", state.body_ );
+        msg.saveChanges();
+        return msg;
+    }
+}
@@ -0,0 +1,319 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Minimal in-process SMTP server for testing and benchmarking
+ * {@link Mailer} without a real mail relay.
+ * Messages are accepted and counted but not stored.
+ *
+ * <p>Behaviour can be degraded in various ways:
+ * a delay before each message is acknowledged,
+ * a fraction of messages failing with a temporary (451) error,
+ * recipient addresses containing given strings being rejected (550),
+ * and a limit on simultaneous connections, beyond which
+ * new connections are refused with a 421 greeting.
+ * These may be changed while the server is running.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class FakeSmtpServer {
+
+    private final ServerSocket serverSocket_;
+    private final Thread acceptor_;
+    private final List<String> rejects_;
+    private final Random random_;
+    private final AtomicInteger nConn_;
+    private final AtomicInteger nConnTotal_;
+    private final AtomicInteger nConnRefused_;
+    private final AtomicInteger nMessage_;
+    private final AtomicInteger nFailed_;
+    private volatile int latencyMillis_;
+    private volatile double failFraction_;
+    private volatile int maxConnections_;
+    private volatile boolean closed_;
+
+    private static final Logger logger_ =
+        Logger.getLogger( FakeSmtpServer.class.getName() );
+
+    /**
+     * Constructor.  The server is listening on return.
+     *
+     * @param  port  port number on the loopback interface,
+     *               or 0 for any free port
+     */
+    public FakeSmtpServer( int port ) throws IOException {
+        serverSocket_ =
+            new ServerSocket( port, 50, InetAddress.getByName( null ) );
+        rejects_ = new ArrayList<String>();
+        random_ = new Random( 23L );
+        nConn_ = new AtomicInteger();
+        nConnTotal_ = new AtomicInteger();
+        nConnRefused_ = new AtomicInteger();
+        nMessage_ = new AtomicInteger();
+        nFailed_ = new AtomicInteger();
+        maxConnections_ = Integer.MAX_VALUE;
+        acceptor_ = new Thread( "Fake SMTP acceptor" ) {
+            public void run() {
+                acceptLoop();
+            }
+        };
+        acceptor_.setDaemon( true );
+        acceptor_.start();
+    }
+
+    /**
+     * Returns the address of this server in the form accepted by
+     * the {@link Mailer} constructor.
+     *
+     * @return  host:port
+     */
+    public String getServerName() {
+        return serverSocket_.getInetAddress().getHostAddress() + ":"
+             + serverSocket_.getLocalPort();
+    }
+
+    /**
+     * Sets the delay before each message is acknowledged.
+     *
+     * @param  latencyMillis  delay in milliseconds
+     */
+    public void setLatencyMillis( int latencyMillis ) {
+        latencyMillis_ = latencyMillis;
+    }
+
+    /**
+     * Sets the fraction of messages that fail with a temporary error.
+     *
+     * @param  failFraction  failure probability in the range 0..1
+     */
+    public void setFailFraction( double failFraction ) {
+        failFraction_ = failFraction;
+    }
+
+    /**
+     * Sets the maximum number of simultaneous connections.
+     *
+     * @param  maxConnections  connection limit
+     */
+    public void setMaxConnections( int maxConnections ) {
+        maxConnections_ = maxConnections;
+    }
+
+    /**
+     * Arranges for recipient addresses containing a given string,
+     * ignoring case, to be rejected.
+     *
+     * @param  txt  address fragment
+     */
+    public void addRejectedRecipient( String txt ) {
+        synchronized ( rejects_ ) {
+            rejects_.add( txt.toLowerCase() );
+        }
+    }
+
+    /**
+     * Returns the number of messages accepted so far.
+     *
+     * @return  message count
+     */
+    public int getMessageCount() {
+        return nMessage_.get();
+    }
+
+    /**
+     * Returns the number of messages failed by injection so far.
+     *
+     * @return  failure count
+     */
+    public int getFailureCount() {
+        return nFailed_.get();
+    }
+
+    /**
+     * Returns the number of connections accepted so far.
+     *
+     * @return  connection count
+     */
+    public int getConnectionCount() {
+        return nConnTotal_.get();
+    }
+
+    /**
+     * Returns the number of connections refused because of the
+     * connection limit so far.
+     *
+     * @return  refused connection count
+     */
+    public int getRefusedCount() {
+        return nConnRefused_.get();
+    }
+
+    /**
+     * Stops accepting connections.  Open connections are left to
+     * finish by themselves.
+     */
+    public void close() {
+        closed_ = true;
+        try {
+            serverSocket_.close();
+        }
+        catch ( IOException e ) {
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "messages=" + nMessage_ + ", failed=" + nFailed_
+             + ", connections=" + nConnTotal_
+             + ", refused=" + nConnRefused_;
+    }
+
+    /**
+     * Acceptor thread loop.
+     */
+    private void acceptLoop() {
+        while ( ! closed_ ) {
+            final Socket sock;
+            try {
+                sock = serverSocket_.accept();
+            }
+            catch ( IOException e ) {
+                if ( ! closed_ ) {
+                    logger_.log( Level.WARNING, "Accept failed", e );
+                }
+                return;
+            }
+            Thread handler = new Thread( "Fake SMTP connection" ) {
+                public void run() {
+                    try {
+                        if ( nConn_.incrementAndGet() > maxConnections_ ) {
+                            nConnRefused_.incrementAndGet();
+                            reply( sock.getOutputStream(),
+                                   "421 Too many connections" );
+                        }
+                        else {
+                            nConnTotal_.incrementAndGet();
+                            converse( sock );
+                        }
+                    }
+                    catch ( SocketException e ) {
+                    }
+                    catch ( IOException e ) {
+                        logger_.log( Level.INFO, "SMTP conversation failed",
+                                     e );
+                    }
+                    catch ( InterruptedException e ) {
+                    }
+                    finally {
+                        nConn_.decrementAndGet();
+                        try {
+                            sock.close();
+                        }
+                        catch ( IOException e ) {
+                        }
+                    }
+                }
+            };
+            handler.setDaemon( true );
+            handler.start();
+        }
+    }
+
+    /**
+     * Conducts an SMTP session on a connected socket.
+     *
+     * @param  sock  socket
+     */
+    private void converse( Socket sock )
+            throws IOException, InterruptedException {
+        BufferedReader in =
+            new BufferedReader( new InputStreamReader( sock.getInputStream(),
+                                                       "ISO-8859-1" ) );
+        OutputStream out = sock.getOutputStream();
+        reply( out, "220 localhost fake ESMTP" );
+        for ( String line; ( line = in.readLine() ) != null; ) {
+            String cmd = line.toUpperCase();
+            if ( cmd.startsWith( "EHLO" ) ) {
+                reply( out, "250-localhost\r\n250 8BITMIME" );
+            }
+            else if ( cmd.startsWith( "RCPT" ) ) {
+                reply( out, isRejected( line ) ? "550 No such user"
+                                               : "250 OK" );
+            }
+            else if ( cmd.startsWith( "DATA" ) ) {
+                reply( out, "354 End data with <CR><LF>.<CR><LF>" );
+                for ( String dline; ( dline = in.readLine() ) != null
+                                    && ! dline.equals( "." ); ) {
+                }
+                int latency = latencyMillis_;
+                if ( latency > 0 ) {
+                    Thread.sleep( latency );
+                }
+                boolean fail;
+                synchronized ( random_ ) {
+                    fail = random_.nextDouble() < failFraction_;
+                }
+                if ( fail ) {
+                    nFailed_.incrementAndGet();
+                    reply( out, "451 Injected failure" );
+                }
+                else {
+                    nMessage_.incrementAndGet();
+                    reply( out, "250 OK" );
+                }
+            }
+            else if ( cmd.startsWith( "QUIT" ) ) {
+                reply( out, "221 Bye" );
+                return;
+            }
+            else {
+                reply( out, "250 OK" );
+            }
+        }
+    }
+
+    /**
+     * Indicates whether a RCPT command names a rejected recipient.
+     *
+     * @param  line  command line
+     * @return   true iff the recipient should be refused
+     */
+    private boolean isRejected( String line ) {
+        String lline = line.toLowerCase();
+        synchronized ( rejects_ ) {
+            for ( String txt : rejects_ ) {
+                if ( lline.indexOf( txt ) >= 0 ) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes a reply line.
+     *
+     * @param  out  output stream
+     * @param  txt  reply text, without final line terminator
+     */
+    private static void reply( OutputStream out, String txt )
+            throws IOException {
+        out.write( ( txt + "\r\n" ).getBytes( "ISO-8859-1" ) );
+        out.flush();
+    }
+}
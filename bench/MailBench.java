@@ -0,0 +1,317 @@
+package uk.ac.bristol.star.deadman;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.mail.Address;
+import javax.mail.internet.InternetAddress;
+
+/**
+ * Mail throughput benchmark.
+ * Drives a {@link Mailer}, either directly or through the alert from
+ * {@link Alerts#createEmailAlert}, against an in-process
+ * {@link FakeSmtpServer}, and reports the message rate and
+ * per-message delivery latency percentiles.
+ * Run it using <code>make mailbench</code>.
+ *
+ * <p>This is not a JMH benchmark, since what is of interest is the
+ * end-to-end behaviour of the delivery threads and SMTP connections
+ * rather than the cost of a single call.
+ * Latency is measured up to completion of each {@link MailDelivery};
+ * note that with an outbox and no fanout, that is when the message
+ * has been spooled, not when it has been sent.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class MailBench {
+
+    private final int nMessage_;
+    private final int nRecipient_;
+    private final boolean useAlert_;
+    private final Mailer.Fanout fanout_;
+    private final File outboxDir_;
+
+    /**
+     * Constructor.
+     *
+     * @param  nMessage  number of messages to send
+     * @param  nRecipient  number of recipients per message
+     * @param  useAlert  true to send through an email alert,
+     *                   false to call the mailer directly
+     * @param  fanout   mailer fanout mode
+     * @param  outboxDir  outbox directory, or null for no outbox
+     */
+    public MailBench( int nMessage, int nRecipient, boolean useAlert,
+                      Mailer.Fanout fanout, File outboxDir ) {
+        nMessage_ = nMessage;
+        nRecipient_ = nRecipient;
+        useAlert_ = useAlert;
+        fanout_ = fanout;
+        outboxDir_ = outboxDir;
+    }
+
+    /**
+     * Runs the benchmark against a given server and reports the results
+     * on standard output.
+     *
+     * @param  server  fake SMTP server
+     */
+    public void run( FakeSmtpServer server ) throws Exception {
+        Address[] recipients = new Address[ nRecipient_ ];
+        for ( int i = 0; i < nRecipient_; i++ ) {
+            recipients[ i ] =
+                new InternetAddress( "user" + i + "@domain" + ( i % 3 )
+                                   + ".example.com" );
+        }
+        MailOutbox outbox = outboxDir_ == null ? null
+                                               : new MailOutbox( outboxDir_ );
+        final List<MailDelivery> deliveries = new ArrayList<MailDelivery>();
+        Mailer mailer =
+                new Mailer( server.getServerName(),
+                            new InternetAddress( "bench@example.com" ),
+                            recipients, "[bench] ", null, outbox ) {
+            @Override
+            public MailDelivery scheduleSendMessage( String topic,
+                                                     String body,
+                                                     Address[] rcpts ) {
+                MailDelivery delivery =
+                    super.scheduleSendMessage( topic, body, rcpts );
+                synchronized ( deliveries ) {
+                    deliveries.add( delivery );
+                }
+                return delivery;
+            }
+        };
+        mailer.setFanout( fanout_ );
+
+        /* Warm up the connection so that connection setup is not
+         * charged to the first message. */
+        mailer.sendMessage( "Warmup", "Warmup\n" );
+
+        long t0 = System.nanoTime();
+        if ( useAlert_ ) {
+            Alert alert = Alerts.createEmailAlert( mailer );
+            for ( int i = 0; i < nMessage_; i++ ) {
+                alert.setStatus( i % 2 == 0 ? Status.DANGER : null );
+            }
+        }
+        else {
+            for ( int i = 0; i < nMessage_; i++ ) {
+                mailer.scheduleSendMessage( "Message " + i,
+                                            "Benchmark message " + i + "\n" );
+            }
+        }
+        long tSubmit = System.nanoTime() - t0;
+        MailDelivery[] dels;
+        synchronized ( deliveries ) {
+            dels = deliveries.toArray( new MailDelivery[ 0 ] );
+        }
+        int nTimeout = 0;
+        for ( MailDelivery del : dels ) {
+            if ( ! del.await( 60, TimeUnit.SECONDS ) ) {
+                nTimeout++;
+            }
+        }
+        long tTotal = System.nanoTime() - t0;
+        mailer.close();
+
+        /* Gather results. */
+        int[] outcomeCounts = new int[ MailDelivery.Outcome.values().length ];
+        long[] latencies = new long[ dels.length ];
+        int nl = 0;
+        for ( MailDelivery del : dels ) {
+            for ( Address addr : del.getRecipients() ) {
+                outcomeCounts[ del.getOutcome( addr ).ordinal() ]++;
+            }
+            long lat = del.getLatencyNanos();
+            if ( lat >= 0 ) {
+                latencies[ nl++ ] = lat;
+            }
+        }
+        latencies = Arrays.copyOf( latencies, nl );
+        Arrays.sort( latencies );
+
+        /* Report. */
+        StringBuffer sbuf = new StringBuffer()
+            .append( "Messages:    " )
+            .append( dels.length )
+            .append( useAlert_ ? " (via email alert)" : "" )
+            .append( ", recipients: " )
+            .append( nRecipient_ )
+            .append( ", fanout: " )
+            .append( fanout_.name().toLowerCase() )
+            .append( outbox == null ? "" : ", outbox" )
+            .append( '\n' )
+            .append( "Submit time: " )
+            .append( formatMillis( tSubmit ) )
+            .append( '\n' )
+            .append( "Total time:  " )
+            .append( formatMillis( tTotal ) )
+            .append( '\n' )
+            .append( "Throughput:  " )
+            .append( String.format( "%.1f msgs/s",
+                                    dels.length * 1e9 / tTotal ) )
+            .append( '\n' )
+            .append( "Latency:     " );
+        if ( nl > 0 ) {
+            sbuf.append( "p50 " )
+                .append( formatMillis( percentile( latencies, 50 ) ) )
+                .append( ", p90 " )
+                .append( formatMillis( percentile( latencies, 90 ) ) )
+                .append( ", p99 " )
+                .append( formatMillis( percentile( latencies, 99 ) ) )
+                .append( ", max " )
+                .append( formatMillis( latencies[ nl - 1 ] ) );
+        }
+        else {
+            sbuf.append( "none" );
+        }
+        sbuf.append( '\n' )
+            .append( "Outcomes:   " );
+        for ( MailDelivery.Outcome outcome : MailDelivery.Outcome.values() ) {
+            int count = outcomeCounts[ outcome.ordinal() ];
+            if ( count > 0 ) {
+                sbuf.append( ' ' )
+                    .append( outcome.name().toLowerCase() )
+                    .append( '=' )
+                    .append( count );
+            }
+        }
+        if ( nTimeout > 0 ) {
+            sbuf.append( " (" )
+                .append( nTimeout )
+                .append( " messages timed out)" );
+        }
+        sbuf.append( '\n' )
+            .append( "Server:      " )
+            .append( server )
+            .append( '\n' );
+        if ( outbox != null ) {
+            sbuf.append( "Outbox:      depth " )
+                .append( outbox.getDepth() )
+                .append( '\n' );
+        }
+        System.out.print( sbuf );
+    }
+
+    /**
+     * Returns a percentile value from a sorted array.
+     *
+     * @param  sorted  sorted values, not empty
+     * @param  pct    percentile in the range 0..100
+     * @return  value
+     */
+    private static long percentile( long[] sorted, double pct ) {
+        int index = (int) Math.ceil( pct / 100.0 * sorted.length ) - 1;
+        return sorted[ Math.max( 0, Math.min( sorted.length - 1, index ) ) ];
+    }
+
+    /**
+     * Formats a nanosecond interval in milliseconds.
+     *
+     * @param  nanos  interval in nanoseconds
+     * @return  formatted string
+     */
+    private static String formatMillis( long nanos ) {
+        return String.format( "%.2fms", nanos * 1e-6 );
+    }
+
+    /**
+     * Main method.  Use -h for usage.
+     */
+    public static void main( String[] args ) throws Exception {
+        String usage = new StringBuffer()
+            .append( "\n   Usage:" )
+            .append( "\n      " )
+            .append( MailBench.class.getSimpleName() )
+            .append( " [-n <messages>] [-rcpt <recipients>] [-alert]" )
+            .append( "\n               " )
+            .append( " [-fanout none|recipient|domain] [-outbox <dir>]" )
+            .append( "\n               " )
+            .append( " [-latency <ms>] [-fail <fraction>]" )
+            .append( " [-reject <addr-text>]" )
+            .append( "\n               " )
+            .append( " [-maxconn <n>] [-verbose]" )
+            .append( "\n" )
+            .toString();
+        int nMessage = 1000;
+        int nRecipient = 1;
+        boolean useAlert = false;
+        Mailer.Fanout fanout = Mailer.Fanout.NONE;
+        File outboxDir = null;
+        int latency = 0;
+        double fail = 0;
+        int maxConn = Integer.MAX_VALUE;
+        List<String> rejects = new ArrayList<String>();
+        boolean verbose = false;
+        try {
+            for ( int i = 0; i < args.length; i++ ) {
+                String arg = args[ i ];
+                if ( "-n".equals( arg ) ) {
+                    nMessage = Integer.parseInt( args[ ++i ] );
+                }
+                else if ( "-rcpt".equals( arg ) ) {
+                    nRecipient = Integer.parseInt( args[ ++i ] );
+                }
+                else if ( "-alert".equals( arg ) ) {
+                    useAlert = true;
+                }
+                else if ( "-fanout".equals( arg ) ) {
+                    fanout = Mailer.Fanout
+                            .valueOf( args[ ++i ].toUpperCase() );
+                }
+                else if ( "-outbox".equals( arg ) ) {
+                    outboxDir = new File( args[ ++i ] );
+                }
+                else if ( "-latency".equals( arg ) ) {
+                    latency = Integer.parseInt( args[ ++i ] );
+                }
+                else if ( "-fail".equals( arg ) ) {
+                    fail = Double.parseDouble( args[ ++i ] );
+                }
+                else if ( "-reject".equals( arg ) ) {
+                    rejects.add( args[ ++i ] );
+                }
+                else if ( "-maxconn".equals( arg ) ) {
+                    maxConn = Integer.parseInt( args[ ++i ] );
+                }
+                else if ( "-verbose".equals( arg ) ) {
+                    verbose = true;
+                }
+                else {
+                    System.err.println( usage );
+                    System.exit( "-h".equals( arg ) ? 0 : 1 );
+                    return;
+                }
+            }
+        }
+        catch ( RuntimeException e ) {
+            System.err.println( usage );
+            System.exit( 1 );
+            return;
+        }
+        if ( ! verbose ) {
+            Logger.getLogger( "uk.ac.bristol.star.deadman" )
+                  .setLevel( Level.OFF );
+        }
+        FakeSmtpServer server = new FakeSmtpServer( 0 );
+        server.setLatencyMillis( latency );
+        server.setFailFraction( fail );
+        server.setMaxConnections( maxConn );
+        for ( String reject : rejects ) {
+            server.addRejectedRecipient( reject );
+        }
+        try {
+            new MailBench( nMessage, nRecipient, useAlert, fanout, outboxDir )
+               .run( server );
+        }
+        finally {
+            server.close();
+        }
+    }
+}
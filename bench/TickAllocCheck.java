@@ -0,0 +1,216 @@
+package uk.ac.bristol.star.deadman;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Checks that steady-state countdown ticks do not allocate memory.
+ * Run it using <code>make allocheck</code>.
+ *
+ * <p>A {@link CountdownModel} with several listeners is driven through
+ * an unthreaded {@link TimingWheel} with a {@link VirtualClock} and
+ * a synchronous dispatcher, and the heap allocation of the current
+ * thread is read from the platform <code>ThreadMXBean</code>
+ * around each tick.  Every steady-state tick must allocate nothing,
+ * whether it leaves the displayed text unchanged, changes it,
+ * or changes the blink phase in danger status.
+ * The countdown time is within the model's state table, and in safe
+ * status the countdown is reset, between measured ticks, before it
+ * reaches danger, since a reset and the start of danger status
+ * are not steady-state ticks.
+ * Since the JVM occasionally allocates on its own account,
+ * for instance when recompiling code, each scenario is measured
+ * for up to {@link #NROUND} rounds, and passes if any round is clean.
+ * The exit status is non-zero if the check fails.
+ *
+ * <p>This covers the model, formatting and wheel code.  In the
+ * application, the shared wheel passes each batch of expired
+ * tasks to the Event Dispatch Thread, and posting that event
+ * does allocate a small amount of memory per batch.
+ *
+ * @author   Mark Taylor
+ * @since    18 Oct 2026
+ */
+public class TickAllocCheck {
+
+    private final com.sun.management.ThreadMXBean threadBean_;
+    private final long tid_;
+    private final long overhead_;
+
+    /** Number of listeners attached to the model. */
+    public static final int NLISTENER = 5;
+
+    /** Number of ticks run before measurement starts. */
+    public static final int NWARMUP = 20000;
+
+    /** Number of ticks in each measurement round. */
+    public static final int NTICK = 20000;
+
+    /** Maximum number of measurement rounds for each scenario. */
+    public static final int NROUND = 3;
+
+    /** Countdown reset time in seconds. */
+    public static final int RESET_SEC = CountdownModel.STATE_TABLE_SECONDS;
+
+    /** Remaining time in milliseconds at which safe scenarios reset. */
+    private static final long RESET_MARGIN_MILLIS = 2000;
+
+    /**
+     * Constructor.
+     */
+    public TickAllocCheck() {
+        threadBean_ = (com.sun.management.ThreadMXBean)
+                      ManagementFactory.getThreadMXBean();
+        tid_ = Thread.currentThread().getId();
+        for ( int i = 0; i < 1000; i++ ) {
+            getAllocatedBytes();
+        }
+        long b0 = getAllocatedBytes();
+        long b1 = getAllocatedBytes();
+        overhead_ = b1 - b0;
+    }
+
+    /**
+     * Runs a tick scenario and reports the results on standard output.
+     *
+     * @param  eventDriven  whether the model is event-driven or polled
+     * @param  danger   true to run in danger status, false in safe status
+     * @return  true iff no tick allocated memory
+     */
+    public boolean runScenario( boolean eventDriven, boolean danger ) {
+        VirtualClock clock = new VirtualClock();
+        Executor direct = new Executor() {
+            public void execute( Runnable task ) {
+                task.run();
+            }
+        };
+        TimingWheel wheel = new TimingWheel( clock, 10, direct, false );
+        final CountdownModel model =
+            new CountdownModel( Alerts.createMultiAlert(), wheel );
+        final Object[] sink = new Object[ 1 ];
+        for ( int i = 0; i < NLISTENER; i++ ) {
+            model.addChangeListener( new ChangeListener() {
+                public void stateChanged( ChangeEvent evt ) {
+                    sink[ 0 ] = model.getState();
+                }
+            } );
+            model.addCountdownListener( new CountdownAdapter() {
+                @Override
+                public void textChanged( CountdownModel m, String oldText,
+                                         String newText ) {
+                    sink[ 0 ] = newText;
+                }
+            } );
+        }
+        model.setEventDriven( eventDriven );
+        model.setResetSeconds( RESET_SEC );
+        model.start();
+        if ( danger ) {
+            model.resume( -1000 );
+        }
+        for ( int i = 0; i < NWARMUP; i++ ) {
+            keepSafe( model, danger );
+            tick( clock, wheel );
+        }
+        boolean ok = false;
+        for ( int ir = 0; ir < NROUND && ! ok; ir++ ) {
+            ok = runRound( model, clock, wheel,
+                           ( eventDriven ? "event-driven" : "polled" ) + ", "
+                         + ( danger ? "DANGER" : "safe" ), danger );
+        }
+        return ok;
+    }
+
+    /**
+     * Runs a round of measured ticks and reports the results
+     * on standard output.
+     *
+     * @param  model  countdown model
+     * @param  clock  clock
+     * @param  wheel  wheel
+     * @param  label  scenario label
+     * @param  danger  true for danger status, false for safe
+     * @return  true iff no tick allocated memory
+     */
+    private boolean runRound( CountdownModel model, VirtualClock clock,
+                              TimingWheel wheel, String label,
+                              boolean danger ) {
+        long nQuiet = 0;
+        long quietBytes = 0;
+        long nText = 0;
+        long textBytes = 0;
+        for ( int i = 0; i < NTICK; i++ ) {
+            keepSafe( model, danger );
+            String text0 = model.getState().getText();
+            long b0 = getAllocatedBytes();
+            tick( clock, wheel );
+            long nb = getAllocatedBytes() - b0 - overhead_;
+            if ( model.getState().getText() == text0 ) {
+                nQuiet++;
+                quietBytes += nb;
+            }
+            else {
+                nText++;
+                textBytes += nb;
+            }
+        }
+        boolean ok = quietBytes == 0 && textBytes == 0;
+        System.out.println( label + ": "
+                          + nQuiet + " unchanged-text ticks, "
+                          + quietBytes + " bytes; "
+                          + nText + " text-change ticks, "
+                          + ( nText > 0 ? textBytes / nText : 0 )
+                          + " bytes/tick"
+                          + ( ok ? "" : "  ** allocated **" ) );
+        return ok;
+    }
+
+    /**
+     * In a safe scenario, resets the countdown if it is about to
+     * reach danger status.
+     *
+     * @param  model  countdown model
+     * @param  danger  true for a danger scenario, in which case
+     *                 this does nothing
+     */
+    private static void keepSafe( CountdownModel model, boolean danger ) {
+        if ( ! danger &&
+             model.getRemainingMillis() < RESET_MARGIN_MILLIS ) {
+            model.resetZero();
+        }
+    }
+
+    /**
+     * Advances the clock to the next scheduled wakeup and runs it.
+     *
+     * @param  clock  clock
+     * @param  wheel  wheel
+     */
+    private static void tick( VirtualClock clock, TimingWheel wheel ) {
+        clock.setMillis( wheel.getNextExpiryMillis() );
+        wheel.runExpired();
+    }
+
+    /**
+     * Returns the number of bytes allocated so far by the current thread.
+     *
+     * @return  allocated bytes
+     */
+    private long getAllocatedBytes() {
+        return threadBean_.getThreadAllocatedBytes( tid_ );
+    }
+
+    public static void main( String[] args ) {
+        TickAllocCheck checker = new TickAllocCheck();
+        boolean ok = true;
+        for ( boolean danger : new boolean[] { false, true } ) {
+            for ( boolean eventDriven : new boolean[] { true, false } ) {
+                ok = checker.runScenario( eventDriven, danger ) && ok;
+            }
+        }
+        System.out.println( ok ? "OK" : "FAILED" );
+        System.exit( ok ? 0 : 1 );
+    }
+}